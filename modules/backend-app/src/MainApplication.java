@@ -7,8 +7,10 @@ import java.util.logging.Logger;
 
 import jakarta.ws.rs.core.Application;
 import scc.kube.KubeServices;
+import scc.kube.config.KubeEnv;
 import scc.rest.AuctionResource;
 import scc.rest.ControlResource;
+import scc.rest.FrontPageCache;
 import scc.rest.MediaResource;
 import scc.rest.UserResource;
 
@@ -39,7 +41,10 @@ public class MainApplication extends Application {
 		singletons.add(new MediaResource(mediaService));
 
 		var auctionService = services.getAuctionServiceFactory();
-		singletons.add(new AuctionResource(auctionService));
+		var frontPage = FrontPageCache.create(auctionService, KubeEnv.getFrontPageRefreshInterval());
+		services.subscribeAuctionEvents(frontPage::onAuctionEvent);
+		ShutdownListener.register(frontPage);
+		singletons.add(new AuctionResource(auctionService, frontPage));
 
 		var userService = services.getUserServiceFactory();
 		singletons.add(new UserResource(userService, auctionService));
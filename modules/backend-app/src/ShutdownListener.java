@@ -0,0 +1,37 @@
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.logging.Logger;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+
+/**
+ * Closes what the application started when it is undeployed or reloaded, so
+ * that its background threads do not outlive it.
+ */
+public class ShutdownListener implements ServletContextListener {
+	private static final Logger logger = Logger.getLogger(ShutdownListener.class.getName());
+
+	private static final Deque<AutoCloseable> closeables = new ArrayDeque<>();
+
+	/**
+	 * Close a resource on shutdown, resources are closed in the reverse order
+	 * they were registered.
+	 */
+	public static synchronized void register(AutoCloseable closeable) {
+		closeables.push(closeable);
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent event) {
+		synchronized (ShutdownListener.class) {
+			while (!closeables.isEmpty()) {
+				try {
+					closeables.pop().close();
+				} catch (Exception e) {
+					logger.warning("Failed to close on shutdown: " + e);
+				}
+			}
+		}
+	}
+}
@@ -1,10 +1,10 @@
 package scc.rest;
 
+import static scc.rest.ResourceUtils.NEXT_CURSOR_HEADER;
 import static scc.rest.ResourceUtils.SESSION_COOKIE;
 
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
-import java.util.List;
 import java.util.Optional;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -24,6 +24,7 @@ import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
 import jakarta.ws.rs.core.Cookie;
 import jakarta.ws.rs.core.MediaType;
+import jakarta.ws.rs.core.Response;
 import scc.AuctionService;
 import scc.PagingWindow;
 import scc.ServiceFactory;
@@ -40,9 +41,11 @@ public class AuctionResource {
     private static final String QUESTION_ID = "questionId";
 
     private final ServiceFactory<AuctionService> factory;
+    private final FrontPageCache frontPage;
 
-    public AuctionResource(ServiceFactory<AuctionService> factory) {
+    public AuctionResource(ServiceFactory<AuctionService> factory, FrontPageCache frontPage) {
         this.factory = factory;
+        this.frontPage = frontPage;
     }
 
     @GET
@@ -190,26 +193,32 @@ public class AuctionResource {
     }
 
     /**
-     * Lists all the bids associated with an auction
+     * Lists a page of the bids associated with an auction, newest first
      * 
      * @param auctionId Identifier of the auction
-     * @return All the bids that were performed on the auction
+     * @param cursor    Cursor of the page, from the previous page's
+     *                  {@value ResourceUtils#NEXT_CURSOR_HEADER} header
+     * @param limit     Maximum number of bids in the page
+     * @return The bids of the page
      */
     @GET
     @Path("/{" + AUCTION_ID + "}/bid")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<BidDTO> listBids(@PathParam(AUCTION_ID) String auctionId) throws Exception {
+    public Response listBids(
+            @PathParam(AUCTION_ID) String auctionId,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("limit") @DefaultValue("20") int limit) throws Exception {
         logger.fine("GET /auction/" + auctionId + "/bid");
 
         if (auctionId == null)
             throw new BadRequestException("Auction id must be provided");
 
         try (var service = this.factory.createService()) {
-            var bids = service.listAuctionBids(auctionId, new PagingWindow(0, 20));
-            var bidsDto = bids.stream().map(BidDTO::from).collect(Collectors.toList());
+            var bids = service.listAuctionBids(auctionId, new PagingWindow(cursor, limit));
+            var bidsDto = bids.items().stream().map(BidDTO::from).collect(Collectors.toList());
             logger.fine("Found bids: " + bidsDto);
 
-            return bidsDto;
+            return Response.ok(bidsDto).header(NEXT_CURSOR_HEADER, bids.next()).build();
         }
     }
 
@@ -300,17 +309,20 @@ public class AuctionResource {
     }
 
     /**
-     * Lists all the questions of an auction
+     * Lists a page of the questions of an auction, newest first
      * 
      * @param auctionId Identifier of the auction
-     * @return All the questions associated with the auction
+     * @param cursor    Cursor of the page, from the previous page's
+     *                  {@value ResourceUtils#NEXT_CURSOR_HEADER} header
+     * @param limit     Maximum number of questions in the page
+     * @return The questions of the page
      */
     @GET
     @Path("/{" + AUCTION_ID + "}/question")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<QuestionDTO> listQuestions(
+    public Response listQuestions(
             @PathParam(AUCTION_ID) String auctionId,
-            @QueryParam("skip") @DefaultValue("0") int skip,
+            @QueryParam("cursor") String cursor,
             @QueryParam("limit") @DefaultValue("20") int limit) throws Exception {
         logger.fine("GET /auction/" + auctionId + "/question");
 
@@ -318,11 +330,11 @@ public class AuctionResource {
             throw new BadRequestException("Auction id must be provided");
 
         try (var service = this.factory.createService()) {
-            var window = new PagingWindow(skip, limit);
+            var window = new PagingWindow(cursor, limit);
             var questions = service.listAuctionQuestions(auctionId, window);
-            var questionsDto = questions.stream().map(QuestionDTO::from).collect(Collectors.toList());
+            var questionsDto = questions.items().stream().map(QuestionDTO::from).collect(Collectors.toList());
             logger.fine("Found questions: " + questionsDto);
-            return questionsDto;
+            return Response.ok(questionsDto).header(NEXT_CURSOR_HEADER, questions.next()).build();
         }
     }
 
@@ -334,42 +346,54 @@ public class AuctionResource {
     @GET
     @Path("/any/soon-to-close")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<AuctionDTO> listAuctionsAboutToClose() throws Exception {
+    public Response listAuctionsAboutToClose() throws Exception {
         logger.fine("GET /auction/any/soon-to-close");
 
+        var cached = this.frontPage.get(FrontPageCache.Listing.SOON_TO_CLOSE);
+        if (cached != null)
+            return Response.ok(cached).build();
+
         try (var service = this.factory.createService()) {
             var auctions = service.listAuctionsAboutToClose();
             var auctionsDto = auctions.stream().map(AuctionDTO::from).collect(Collectors.toList());
             logger.fine("Found auctions: " + auctionsDto);
-            return auctionsDto;
+            return Response.ok(auctionsDto).build();
         }
     }
 
     @GET
     @Path("/any/recent")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<AuctionDTO> listRecentAuctions() throws Exception {
+    public Response listRecentAuctions() throws Exception {
         logger.fine("GET /auction/any/recent");
 
+        var cached = this.frontPage.get(FrontPageCache.Listing.RECENT);
+        if (cached != null)
+            return Response.ok(cached).build();
+
         try (var service = this.factory.createService()) {
             var auctions = service.listRecentAuctions();
             var auctionsDto = auctions.stream().map(AuctionDTO::from).collect(Collectors.toList());
             logger.fine("Found auctions: " + auctionsDto);
-            return auctionsDto;
+            return Response.ok(auctionsDto).build();
         }
     }
 
     @GET
     @Path("/any/popular")
     @Produces(MediaType.APPLICATION_JSON)
-    public List<AuctionDTO> listPopularAuctions() throws Exception {
+    public Response listPopularAuctions() throws Exception {
         logger.fine("GET /auction/any/popular");
 
+        var cached = this.frontPage.get(FrontPageCache.Listing.POPULAR);
+        if (cached != null)
+            return Response.ok(cached).build();
+
         try (var service = this.factory.createService()) {
             var auctions = service.listPopularAuctions();
             var auctionsDto = auctions.stream().map(AuctionDTO::from).collect(Collectors.toList());
             logger.fine("Found auctions: " + auctionsDto);
-            return auctionsDto;
+            return Response.ok(auctionsDto).build();
         }
     }
 
@@ -0,0 +1,122 @@
+package scc.rest;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import scc.AuctionService;
+import scc.ServiceFactory;
+import scc.item.AuctionItem;
+import scc.rest.dto.AuctionDTO;
+
+/**
+ * The front-page listings (recent, popular and soon to close auctions) kept as
+ * ready-to-send JSON, so that serving them does not depend on the request
+ * rate.
+ *
+ * Listings are rebuilt in the background at a fixed interval and shortly after
+ * any auction event, events that arrive while a rebuild is queued share it.
+ * If rebuilds keep failing the listings are dropped once they are too old and
+ * requests build them themselves.
+ */
+public class FrontPageCache implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(FrontPageCache.class.getName());
+
+    // Coalesces bursts of events into one rebuild
+    private static final long EVENT_DELAY_MILLIS = 100;
+    // Listings older than this many intervals are not served
+    private static final int MAX_AGE_INTERVALS = 10;
+
+    public enum Listing {
+        RECENT, POPULAR, SOON_TO_CLOSE
+    }
+
+    private static record Snapshot(byte[] recent, byte[] popular, byte[] soonToClose, long buildTime) {
+    }
+
+    private final ServiceFactory<AuctionService> factory;
+    private final ObjectMapper objectMapper = new ObjectMapper();
+    private final ScheduledExecutorService executor;
+    private final AtomicBoolean rebuildQueued = new AtomicBoolean();
+    private final long maxAgeNanos;
+    private volatile Snapshot snapshot;
+
+    private FrontPageCache(ServiceFactory<AuctionService> factory, Duration interval) {
+        this.factory = factory;
+        this.maxAgeNanos = interval.toNanos() * MAX_AGE_INTERVALS;
+        if (interval.isZero() || interval.isNegative()) {
+            this.executor = null;
+            return;
+        }
+        this.executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            var thread = new Thread(runnable, "front-page-cache");
+            thread.setDaemon(true);
+            return thread;
+        });
+        this.executor.scheduleWithFixedDelay(this::rebuild, 0, interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param interval How often the listings are rebuilt, zero disables the
+     *                 cache.
+     */
+    public static FrontPageCache create(ServiceFactory<AuctionService> factory, Duration interval) {
+        return new FrontPageCache(factory, interval);
+    }
+
+    /**
+     * Rebuild the listings shortly, called when an auction changed.
+     */
+    public void onAuctionEvent() {
+        if (this.executor == null || !this.rebuildQueued.compareAndSet(false, true))
+            return;
+        this.executor.schedule(this::rebuild, EVENT_DELAY_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @return the JSON array of the listing, or null if it is not available
+     */
+    public byte[] get(Listing listing) {
+        var snapshot = this.snapshot;
+        if (snapshot == null || System.nanoTime() - snapshot.buildTime() > this.maxAgeNanos)
+            return null;
+        return switch (listing) {
+            case RECENT -> snapshot.recent();
+            case POPULAR -> snapshot.popular();
+            case SOON_TO_CLOSE -> snapshot.soonToClose();
+        };
+    }
+
+    @Override
+    public void close() {
+        if (this.executor != null)
+            this.executor.shutdownNow();
+    }
+
+    private void rebuild() {
+        // Events from now on need another rebuild
+        this.rebuildQueued.set(false);
+        var buildTime = System.nanoTime();
+        try (var service = this.factory.createService()) {
+            this.snapshot = new Snapshot(
+                    this.toJson(service.listRecentAuctions()),
+                    this.toJson(service.listPopularAuctions()),
+                    this.toJson(service.listAuctionsAboutToClose()),
+                    buildTime);
+        } catch (Exception e) {
+            logger.warning("Failed to rebuild front page: " + e);
+        }
+    }
+
+    private byte[] toJson(List<AuctionItem> auctions) throws Exception {
+        var auctionsDto = auctions.stream().map(AuctionDTO::from).collect(Collectors.toList());
+        return this.objectMapper.writeValueAsBytes(auctionsDto);
+    }
+}
@@ -16,6 +16,9 @@ import scc.SessionToken;
 public class ResourceUtils {
     public static final String SESSION_COOKIE = "scc-session";
 
+    // Response header with the cursor of the next page of a listing, absent on the last page
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+
     public static NewCookie createSessionCookie(SessionToken sessionToken) {
         return new NewCookie.Builder(SESSION_COOKIE)
                 .value(sessionToken.getToken())
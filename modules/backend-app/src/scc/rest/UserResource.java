@@ -1,8 +1,8 @@
 package scc.rest;
 
+import static scc.rest.ResourceUtils.NEXT_CURSOR_HEADER;
 import static scc.rest.ResourceUtils.SESSION_COOKIE;
 
-import java.util.List;
 import java.util.Optional;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
@@ -13,6 +13,7 @@ import jakarta.ws.rs.BadRequestException;
 import jakarta.ws.rs.Consumes;
 import jakarta.ws.rs.CookieParam;
 import jakarta.ws.rs.DELETE;
+import jakarta.ws.rs.DefaultValue;
 import jakarta.ws.rs.GET;
 import jakarta.ws.rs.PATCH;
 import jakarta.ws.rs.POST;
@@ -25,6 +26,7 @@ import jakarta.ws.rs.core.MediaType;
 import jakarta.ws.rs.core.Response;
 import scc.AuctionService;
 import scc.MediaId;
+import scc.PagingWindow;
 import scc.ServiceFactory;
 import scc.UpdateUserOps;
 import scc.UserService;
@@ -214,18 +216,22 @@ public class UserResource {
     @Path("/{" + USER_NAME + "}/auctions")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public List<AuctionDTO> getUserAuctions(@PathParam(USER_NAME) String id, @QueryParam("status") String status)
-            throws Exception {
+    public Response getUserAuctions(
+            @PathParam(USER_NAME) String id,
+            @QueryParam("status") String status,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("limit") @DefaultValue("20") int limit) throws Exception {
         logger.fine("GET /user/" + id + "/auctions");
 
         if (id == null)
             throw new BadRequestException("User id cannot be null");
 
         try (var service = this.auctionFactory.createService()) {
-            var auctions = service.listUserAuctions(id, "OPEN".equals(status));
-            var auctionDtos = auctions.stream().map(AuctionDTO::from).collect(Collectors.toList());
+            var window = new PagingWindow(cursor, limit);
+            var auctions = service.listUserAuctions(id, "OPEN".equals(status), window);
+            var auctionDtos = auctions.items().stream().map(AuctionDTO::from).collect(Collectors.toList());
             logger.fine("GET /user/" + id + "/auctions -> " + auctionDtos);
-            return auctionDtos;
+            return Response.ok(auctionDtos).header(NEXT_CURSOR_HEADER, auctions.next()).build();
         }
     }
 
@@ -233,17 +239,22 @@ public class UserResource {
     @Path("/{" + USER_NAME + "}/following")
     @Consumes(MediaType.APPLICATION_JSON)
     @Produces(MediaType.APPLICATION_JSON)
-    public List<AuctionDTO> getUserFollowing(@PathParam(USER_NAME) String id) throws Exception {
+    public Response getUserFollowing(
+            @PathParam(USER_NAME) String id,
+            @QueryParam("status") String status,
+            @QueryParam("cursor") String cursor,
+            @QueryParam("limit") @DefaultValue("20") int limit) throws Exception {
         logger.fine("GET /user/" + id + "/following");
 
         if (id == null)
             throw new BadRequestException("User id cannot be null");
 
         try (var service = this.auctionFactory.createService()) {
-            var auctions = service.listAuctionsFollowedByUser(id);
-            var auctionDaos = auctions.stream().map(AuctionDTO::from).collect(Collectors.toList());
+            var window = new PagingWindow(cursor, limit);
+            var auctions = service.listAuctionsFollowedByUser(id, !"CLOSED".equals(status), window);
+            var auctionDaos = auctions.items().stream().map(AuctionDTO::from).collect(Collectors.toList());
             logger.fine("GET /user/" + id + "/following -> " + auctionDaos);
-            return auctionDaos;
+            return Response.ok(auctionDaos).header(NEXT_CURSOR_HEADER, auctions.next()).build();
         }
     }
 
@@ -0,0 +1,90 @@
+package scc.kube;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.bson.types.ObjectId;
+
+import io.opentelemetry.context.Context;
+import scc.exception.UserNotFoundException;
+import scc.kube.dao.AuctionDao;
+import scc.kube.dao.BidDao;
+import scc.kube.dao.UserDisplayNameDao;
+import scc.kube.utils.Forked;
+import scc.kube.utils.SingleFlight;
+
+/**
+ * Non-blocking variant of the {@link Mongo} reads used to assemble listings.
+ * Each call returns right away and the query runs on a pool of its own, so
+ * that independent queries overlap and the caller only waits for the slowest.
+ *
+ * Shared by every {@link KubeRepo} of a pod. Without threads every query runs
+ * on the calling thread when it is started.
+ */
+public class AsyncMongo implements AutoCloseable {
+    private final Mongo mongo;
+    private final ExecutorService executor;
+
+    private AsyncMongo(Mongo mongo, int threads) {
+        this.mongo = mongo;
+        if (threads > 0) {
+            this.executor = Context.taskWrapping(Executors.newFixedThreadPool(threads, runnable -> {
+                var thread = new Thread(runnable, "kube-mongo-async");
+                thread.setDaemon(true);
+                return thread;
+            }));
+        } else {
+            this.executor = null;
+        }
+    }
+
+    /**
+     * @param threads Queries that can run at once, at most the size of the
+     *                Mongo connection pool is useful.
+     */
+    public static AsyncMongo create(Mongo mongo, int threads) {
+        return new AsyncMongo(mongo, threads);
+    }
+
+    /**
+     * Create an instance that runs every query on the calling thread.
+     */
+    public static AsyncMongo sync(Mongo mongo) {
+        return new AsyncMongo(mongo, 0);
+    }
+
+    /**
+     * Start a load that only touches Mongo. The loader must not use the
+     * caller's Redis nodes, they may not be shared between threads.
+     */
+    public <V, E extends Exception> Forked<V, E> run(SingleFlight.Loader<V, E> loader) {
+        return Forked.run(this.executor, loader);
+    }
+
+    public Forked<HashMap<ObjectId, AuctionDao>, RuntimeException> getAuctionMany(List<ObjectId> auctionIds) {
+        return this.run(() -> this.mongo.getAuctionMany(auctionIds));
+    }
+
+    public Forked<Map<ObjectId, BidDao>, RuntimeException> getAuctionTopBidMany(Collection<ObjectId> auctionIds) {
+        return this.run(() -> this.mongo.getAuctionTopBidMany(auctionIds));
+    }
+
+    public Forked<Map<ObjectId, BidDao>, RuntimeException> findBidMany(Collection<ObjectId> bidIds) {
+        return this.run(() -> this.mongo.findBidMany(bidIds));
+    }
+
+    public Forked<Map<ObjectId, UserDisplayNameDao>, UserNotFoundException> getUserDisplayNameMany(
+            Collection<ObjectId> userIds) {
+        return this.run(() -> this.mongo.getUserDisplayNameMany(userIds));
+    }
+
+    @Override
+    public void close() {
+        if (this.executor != null)
+            this.executor.shutdown();
+    }
+}
@@ -11,4 +11,13 @@ public interface Auth extends AutoCloseable {
     String validate(SessionToken token) throws BadCredentialsException;
 
     String validate(SessionToken token, String username) throws BadCredentialsException, UnauthorizedException;
+
+    /**
+     * Revoke every session of a user, on every pod.
+     * Throws if the sessions could not be revoked, so callers revoke before
+     * applying the change that invalidates them.
+     *
+     * @param username The username of the user.
+     */
+    void revokeSessions(String username);
 }
@@ -1,10 +1,16 @@
 package scc.kube;
 
+import java.time.Duration;
+import java.util.Set;
+
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import redis.clients.jedis.Jedis;
+import redis.clients.jedis.ConnectionPoolConfig;
+import redis.clients.jedis.DefaultJedisClientConfig;
+import redis.clients.jedis.HostAndPort;
 import redis.clients.jedis.JedisPool;
 import redis.clients.jedis.JedisPoolConfig;
+import redis.clients.jedis.providers.ClusterConnectionProvider;
 import scc.AppLogic;
 import scc.MediaId;
 import scc.kube.config.RedisConfig;
@@ -13,10 +19,7 @@ import scc.kube.utils.ObjectIdModule;
 import scc.utils.Hash;
 
 public class Kube {
-    public static Jedis createJedis(RedisConfig config) {
-        var jedis = new Jedis(config.url, config.port);
-        return jedis;
-    }
+    private static final Duration POOL_MAX_WAIT = Duration.ofMillis(200);
 
     public static JedisPool createJedisPool(RedisConfig config) {
         JedisPoolConfig poolConfig = new JedisPoolConfig();
@@ -28,9 +31,33 @@ public class Kube {
         poolConfig.setTestWhileIdle(true);
         poolConfig.setNumTestsPerEvictionRun(3);
         poolConfig.setBlockWhenExhausted(true);
+        // A slow Redis must not hold request threads waiting for connections
+        poolConfig.setMaxWait(POOL_MAX_WAIT);
         return new JedisPool(poolConfig, config.url, config.port, 1000);
     }
 
+    /**
+     * Connection pools to every node of a Redis Cluster, discovered from the
+     * configured node. Pools are sized per node.
+     */
+    public static ClusterConnectionProvider createClusterConnectionProvider(RedisConfig config) {
+        var poolConfig = new ConnectionPoolConfig();
+        poolConfig.setMaxTotal(128);
+        poolConfig.setMaxIdle(128);
+        poolConfig.setMinIdle(16);
+        poolConfig.setTestOnBorrow(true);
+        poolConfig.setTestOnReturn(true);
+        poolConfig.setTestWhileIdle(true);
+        poolConfig.setNumTestsPerEvictionRun(3);
+        poolConfig.setBlockWhenExhausted(true);
+        poolConfig.setMaxWait(POOL_MAX_WAIT);
+        var clientConfig = DefaultJedisClientConfig.builder().timeoutMillis(1000).build();
+        return new ClusterConnectionProvider(
+                Set.of(new HostAndPort(config.url, config.port)),
+                clientConfig,
+                poolConfig);
+    }
+
     static String hashUserPassword(String password) {
         return Hash.of(password);
     }
@@ -43,10 +70,14 @@ public class Kube {
         return new MediaId(mediaId);
     }
 
-    static String userDisplayNameFromDao(UserDao userDao) {
-        if (userDao.status == UserDao.Status.ACTIVE)
-            return userDao.username;
+    static String userDisplayName(String username, UserDao.Status status) {
+        if (status == UserDao.Status.ACTIVE)
+            return username;
         else
             return AppLogic.DELETED_USER_ID;
     }
+
+    static long elapsedMillis(long startNanos) {
+        return (System.nanoTime() - startNanos) / 1_000_000;
+    }
 }
@@ -1,22 +1,28 @@
 package scc.kube;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 import org.bson.types.ObjectId;
 
 import io.opentelemetry.instrumentation.annotations.WithSpan;
+import scc.AppLogic;
 import scc.AuctionService;
 import scc.AuctionStatus;
+import scc.Page;
 import scc.PagingWindow;
 import scc.SessionToken;
 import scc.UpdateAuctionOps;
@@ -31,6 +37,7 @@ import scc.item.QuestionItem;
 import scc.item.ReplyItem;
 import scc.kube.dao.AuctionDao;
 import scc.kube.dao.BidDao;
+import scc.kube.dao.FollowDao;
 import scc.kube.dao.QuestionDao;
 
 public class KubeAuctionService implements AuctionService {
@@ -122,18 +129,22 @@ public class KubeAuctionService implements AuctionService {
         bidDao.createTime = LocalDateTime.now(ZoneOffset.UTC);
 
         bidDao = this.repo.createBid(auctionId, bidDao);
-        this.rabbitmq.broadcastCreatedBid(auctionId, bidDao.id);
+        this.rabbitmq.broadcastCreatedBid(auctionId, bidDao.id, bidDao.userId, bidDao.createTime);
         var bidItem = this.bidDaoToItem(bidDao);
         return bidItem;
     }
 
     @Override
     @WithSpan
-    public List<BidItem> listAuctionBids(String auctionIdStr, PagingWindow window) throws ServiceException {
+    public Page<BidItem> listAuctionBids(String auctionIdStr, PagingWindow window) throws ServiceException {
         var auctionId = this.auctionIdFromString(auctionIdStr);
-        var bidDaos = this.repo.getAuctionBids(auctionId, window);
+        var limit = pageLimit(window);
+        var bidDaos = this.repo.getAuctionBids(auctionId, amountCursor(window), limit + 1);
+        var next = nextCursor(bidDaos, limit, b -> b.amount);
+        bidDaos = bidDaos.subList(0, Math.min(limit, bidDaos.size()));
         var bidItems = this.bidDaosToItems(bidDaos);
-        return bidDaos.stream().map(b -> bidItems.get(b.id)).collect(Collectors.toCollection(ArrayList::new));
+        var items = bidDaos.stream().map(b -> bidItems.get(b.id)).collect(Collectors.toCollection(ArrayList::new));
+        return new Page<>(items, next);
     }
 
     @Override
@@ -182,31 +193,41 @@ public class KubeAuctionService implements AuctionService {
 
     @Override
     @WithSpan
-    public List<QuestionItem> listAuctionQuestions(String auctionIdStr, PagingWindow window) throws ServiceException {
+    public Page<QuestionItem> listAuctionQuestions(String auctionIdStr, PagingWindow window) throws ServiceException {
         var auctionId = this.auctionIdFromString(auctionIdStr);
-        var questionDaos = this.repo.getAuctionQuestions(auctionId, window);
+        var limit = pageLimit(window);
+        var questionDaos = this.repo.getAuctionQuestions(auctionId, idCursor(window), limit + 1);
+        var next = nextCursor(questionDaos, limit, q -> q.id);
+        questionDaos = questionDaos.subList(0, Math.min(limit, questionDaos.size()));
         var questionItems = this.questionDaosToItems(questionDaos);
-        return questionItems;
+        return new Page<>(questionItems, next);
     }
 
     @Override
     @WithSpan
-    public List<AuctionItem> listUserAuctions(String username, boolean open) throws ServiceException {
+    public Page<AuctionItem> listUserAuctions(String username, boolean open, PagingWindow window)
+            throws ServiceException {
         var userId = this.repo.getUserIdFromUsername(username);
-        var auctionDaos = this.repo.getUserAuctions(userId)
-                .stream().filter(a -> a.status == AuctionDao.Status.OPEN)
-                .collect(Collectors.toCollection(ArrayList::new));
-        var auctionItems = this.auctionDaosToItems(auctionDaos);
-        return auctionDaos.stream().map(a -> auctionItems.get(a.id)).collect(Collectors.toCollection(ArrayList::new));
+        var limit = pageLimit(window);
+        var auctionDaos = this.repo.getUserAuctions(userId, open, idCursor(window), limit + 1);
+        return this.auctionPage(auctionDaos, limit);
     }
 
     @Override
     @WithSpan
-    public List<AuctionItem> listAuctionsFollowedByUser(String username) throws ServiceException {
+    public Page<AuctionItem> listAuctionsFollowedByUser(String username, boolean open, PagingWindow window)
+            throws ServiceException {
         var userId = this.repo.getUserIdFromUsername(username);
-        var auctionDaos = this.repo.getAuctionsFollowedByUser(userId);
+        var limit = pageLimit(window);
+        var followDaos = this.repo.getAuctionsFollowedByUser(userId, open, followCursor(window), limit + 1);
+        var next = nextCursor(followDaos, limit,
+                f -> f.lastBidTime.toInstant(ZoneOffset.UTC).toEpochMilli() + ":" + f.auctionId.toHexString());
+        followDaos = followDaos.subList(0, Math.min(limit, followDaos.size()));
+        var auctionDaos = this.repo.getAuctionPage(followDaos.stream().map(f -> f.auctionId).toList());
         var auctionItems = this.auctionDaosToItems(auctionDaos);
-        return auctionDaos.stream().map(a -> auctionItems.get(a.id)).collect(Collectors.toCollection(ArrayList::new));
+        var items = auctionDaos.stream().map(a -> auctionItems.get(a.id))
+                .collect(Collectors.toCollection(ArrayList::new));
+        return new Page<>(items, next);
     }
 
     @Override
@@ -235,6 +256,79 @@ public class KubeAuctionService implements AuctionService {
     public void close() throws Exception {
     }
 
+    private Page<AuctionItem> auctionPage(List<AuctionDao> auctionDaos, int limit)
+            throws UserNotFoundException, BidNotFoundException {
+        var next = nextCursor(auctionDaos, limit, a -> a.id);
+        auctionDaos = auctionDaos.subList(0, Math.min(limit, auctionDaos.size()));
+        var auctionItems = this.auctionDaosToItems(auctionDaos);
+        var items = auctionDaos.stream().map(a -> auctionItems.get(a.id))
+                .collect(Collectors.toCollection(ArrayList::new));
+        return new Page<>(items, next);
+    }
+
+    private static int pageLimit(PagingWindow window) throws BadRequestException {
+        if (window.limit <= 0)
+            throw new BadRequestException("Invalid page limit: " + window.limit);
+        return Math.min(window.limit, AppLogic.MAX_PAGE_SIZE);
+    }
+
+    /**
+     * Cursor of the page after the first limit items, the repo is asked for
+     * one item more than the limit to tell whether there is such a page.
+     * 
+     * @param key The sort key of an item, the next page starts below it.
+     */
+    private static <T> String nextCursor(List<T> daos, int limit, Function<T, Object> key) {
+        if (daos.size() <= limit)
+            return null;
+        var last = key.apply(daos.get(limit - 1)).toString();
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(last.getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static String decodeCursor(String cursor) throws BadRequestException {
+        try {
+            return new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+        } catch (IllegalArgumentException e) {
+            throw new BadRequestException("Invalid cursor: " + cursor);
+        }
+    }
+
+    private static ObjectId idCursor(PagingWindow window) throws BadRequestException {
+        if (window.cursor == null)
+            return null;
+        var id = decodeCursor(window.cursor);
+        if (!ObjectId.isValid(id))
+            throw new BadRequestException("Invalid cursor: " + window.cursor);
+        return new ObjectId(id);
+    }
+
+    private static FollowDao followCursor(PagingWindow window) throws BadRequestException {
+        if (window.cursor == null)
+            return null;
+        var parts = decodeCursor(window.cursor).split(":");
+        if (parts.length != 2 || !ObjectId.isValid(parts[1]))
+            throw new BadRequestException("Invalid cursor: " + window.cursor);
+        var followDao = new FollowDao();
+        try {
+            followDao.lastBidTime = LocalDateTime.ofInstant(Instant.ofEpochMilli(Long.parseLong(parts[0])),
+                    ZoneOffset.UTC);
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid cursor: " + window.cursor);
+        }
+        followDao.auctionId = new ObjectId(parts[1]);
+        return followDao;
+    }
+
+    private static Double amountCursor(PagingWindow window) throws BadRequestException {
+        if (window.cursor == null)
+            return null;
+        try {
+            return Double.parseDouble(decodeCursor(window.cursor));
+        } catch (NumberFormatException e) {
+            throw new BadRequestException("Invalid cursor: " + window.cursor);
+        }
+    }
+
     private ObjectId auctionIdFromString(String auctionId) throws BadRequestException {
         if (!ObjectId.isValid(auctionId))
             throw new BadRequestException("Invalid auction ID: " + auctionId);
@@ -255,16 +349,12 @@ public class KubeAuctionService implements AuctionService {
     @WithSpan
     private Map<ObjectId, AuctionItem> auctionDaosToItems(Collection<AuctionDao> auctionDaos)
             throws UserNotFoundException, BidNotFoundException {
-        var userIds = auctionDaos.stream().map(a -> a.userId).collect(Collectors.toCollection(ArrayList::new));
-        var auctionIds = auctionDaos.stream().map(a -> a.id).collect(Collectors.toCollection(ArrayList::new));
-        var topBidDaos = this.repo.getAuctionTopBidMany(auctionIds);
+        var listing = this.repo.getAuctionListing(auctionDaos);
+        var topBidDaos = listing.topBids();
         var topBidIds = topBidDaos.keySet().stream()
-                .filter(aid -> topBidDaos.containsKey(aid))
                 .collect(Collectors.toMap(aid -> aid, aid -> topBidDaos.get(aid).id));
-        for (var bidDao : topBidDaos.values())
-            userIds.add(bidDao.userId);
-        var displayNames = this.repo.getUserDisplayNameMany(userIds);
-        var bidItems = this.bidDaosToItems(topBidDaos.values());
+        var displayNames = listing.displayNames();
+        var bidItems = this.bidDaosToItems(topBidDaos.values(), displayNames);
         var auctions = new HashMap<ObjectId, AuctionItem>();
         for (var auctionDao : auctionDaos) {
             var auctionItem = new AuctionItem(
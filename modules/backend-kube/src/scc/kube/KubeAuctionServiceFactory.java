@@ -6,21 +6,28 @@ import org.apache.commons.pool2.ObjectPool;
 
 import com.rabbitmq.client.Channel;
 import io.opentelemetry.instrumentation.annotations.WithSpan;
-import redis.clients.jedis.JedisPool;
 import scc.AuctionService;
 import scc.ServiceFactory;
+import scc.kube.utils.RoundTripCounter;
 import scc.utils.AuctionServiceWithResources;
 import scc.utils.AutoCloseableFn;
 
 public class KubeAuctionServiceFactory implements ServiceFactory<AuctionService> {
 
-    private final JedisPool jedisPool;
+    private final KubeRedis redis;
     private final Mongo mongo;
+    private final AsyncMongo asyncMongo;
+    private final KubeCache cache;
+    private final KubeRefresher refresher;
     private final ObjectPool<Channel> rabbitmqPool;
 
-    public KubeAuctionServiceFactory(JedisPool jedisPool, Mongo mongo, ObjectPool<Channel> rabbitmqConnection) {
-        this.jedisPool = jedisPool;
+    public KubeAuctionServiceFactory(KubeRedis redis, Mongo mongo, AsyncMongo asyncMongo, KubeCache cache,
+            KubeRefresher refresher, ObjectPool<Channel> rabbitmqConnection) {
+        this.redis = redis;
         this.mongo = mongo;
+        this.asyncMongo = asyncMongo;
+        this.cache = cache;
+        this.refresher = refresher;
         this.rabbitmqPool = rabbitmqConnection;
     }
 
@@ -28,15 +35,16 @@ public class KubeAuctionServiceFactory implements ServiceFactory<AuctionService>
     @WithSpan
     public AuctionService createService() {
         try {
-            var jedis = jedisPool.getResource();
-            var auth = new RedisAuth(jedis, mongo);
-            var repo = new KubeRepo(jedis, mongo);
+            var roundTrips = RoundTripCounter.request("auction_request");
+            var redis = this.redis.acquire();
+            var auth = new RedisAuth(redis, mongo, cache);
+            var repo = new KubeRepo(redis, mongo, cache, refresher, asyncMongo);
             var channel = this.rabbitmqPool.borrowObject();
             var channelResource = new AutoCloseableFn(() -> this.rabbitmqPool.returnObject(channel));
             assert channel.isOpen();
             var rabbitmq = new Rabbitmq(channel);
             var service = new KubeAuctionService(auth, repo, rabbitmq);
-            return new AuctionServiceWithResources(service, List.of(jedis, rabbitmq, channelResource));
+            return new AuctionServiceWithResources(service, List.of(roundTrips, redis, rabbitmq, channelResource));
         } catch (Exception e) {
             throw new RuntimeException("Failed to create auction service", e);
         }
@@ -0,0 +1,255 @@
+package scc.kube;
+
+import java.io.IOException;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+import org.bson.types.ObjectId;
+
+import com.rabbitmq.client.Connection;
+
+import scc.kube.config.NearCacheConfig;
+import scc.kube.config.SessionCacheConfig;
+import scc.kube.dao.AuctionDao;
+import scc.kube.dao.UserDao;
+import scc.kube.utils.NearCache;
+
+/**
+ * In-process cache shared by every {@link KubeRepo} of a pod.
+ * Sits in front of Redis for the hottest DAOs and is kept coherent across pods
+ * by broadcasting invalidations on
+ * {@link Rabbitmq#EXCHANGE_BROADCAST_INVALIDATIONS}.
+ *
+ * Also caches validated sessions for a short trust window. Sessions are
+ * revoked by user on {@link Rabbitmq#EXCHANGE_BROADCAST_SESSION_REVOCATIONS},
+ * a lost revocation is bounded by the trust window.
+ *
+ * Cached DAOs are shared between requests and must not be modified.
+ */
+public class KubeCache {
+    private static final Logger logger = Logger.getLogger(KubeCache.class.getName());
+
+    // Rough per-object overhead of a DAO and its boxed fields
+    private static final long DAO_BASE_WEIGHT = 160;
+    // Entry, map node and the 36 character token
+    private static final long SESSION_BASE_WEIGHT = 200;
+
+    private final NearCache<ObjectId, AuctionDao> auctions;
+    private final NearCache<ObjectId, UserDao> users;
+    // Token to username
+    private final NearCache<String, String> sessions;
+    private final Rabbitmq rabbitmq;
+
+    private KubeCache(NearCacheConfig config, SessionCacheConfig sessionConfig, Rabbitmq rabbitmq) {
+        if (config != null) {
+            this.auctions = new NearCache<>("auction", config.maxBytes / 2, config.maxAge, KubeCache::auctionWeight);
+            this.users = new NearCache<>("user", config.maxBytes / 2, config.maxAge, KubeCache::userWeight);
+        } else {
+            this.auctions = null;
+            this.users = null;
+        }
+        if (sessionConfig != null && !sessionConfig.trustWindow.isZero() && !sessionConfig.trustWindow.isNegative()) {
+            this.sessions = new NearCache<>("session", sessionConfig.maxBytes, sessionConfig.trustWindow,
+                    username -> SESSION_BASE_WEIGHT + stringWeight(username));
+        } else {
+            this.sessions = null;
+        }
+        this.rabbitmq = rabbitmq;
+    }
+
+    /**
+     * Create a cache that stores DAOs and sessions locally and subscribes to
+     * invalidations and revocations broadcast by other pods.
+     */
+    public static KubeCache create(Connection connection, NearCacheConfig config, SessionCacheConfig sessionConfig)
+            throws IOException, TimeoutException {
+        var cache = new KubeCache(config, sessionConfig, new Rabbitmq(connection));
+
+        var channel = connection.createChannel();
+        Rabbitmq.declareBroadcastInvalidationsExchange(channel);
+        var queue = channel.queueDeclare("", false, true, true, null).getQueue();
+        channel.queueBind(queue, Rabbitmq.EXCHANGE_BROADCAST_INVALIDATIONS, "");
+        channel.basicConsume(queue, true, (consumerTag, message) -> {
+            try {
+                var invalidation = KubeSerde.fromJson(message.getBody(), Rabbitmq.Invalidation.class);
+                cache.invalidateLocal(invalidation.kind(), invalidation.id());
+            } catch (Exception e) {
+                logger.warning("Failed to handle invalidation: " + e);
+                cache.invalidateLocalAll();
+            }
+        }, consumerTag -> {
+        });
+
+        Rabbitmq.declareBroadcastSessionRevocationsExchange(channel);
+        var revocationQueue = channel.queueDeclare("", false, true, true, null).getQueue();
+        channel.queueBind(revocationQueue, Rabbitmq.EXCHANGE_BROADCAST_SESSION_REVOCATIONS, "");
+        channel.basicConsume(revocationQueue, true, (consumerTag, message) -> {
+            try {
+                var revocation = KubeSerde.fromJson(message.getBody(), Rabbitmq.SessionRevocation.class);
+                cache.revokeSessionsLocal(revocation.username());
+            } catch (Exception e) {
+                logger.warning("Failed to handle session revocation: " + e);
+                if (cache.sessions != null)
+                    cache.sessions.invalidateAll();
+            }
+        }, consumerTag -> {
+        });
+
+        return cache;
+    }
+
+    /**
+     * Create a cache that does not store anything locally but still broadcasts
+     * invalidations. Used by workers that modify DAOs cached by the backend.
+     */
+    public static KubeCache broadcastOnly(Connection connection) throws IOException, TimeoutException {
+        return new KubeCache(null, null, new Rabbitmq(connection));
+    }
+
+    /**
+     * Create a cache that neither stores nor broadcasts anything.
+     */
+    public static KubeCache disabled() {
+        return new KubeCache(null, null, null);
+    }
+
+    /* ------------------------- Auction ------------------------- */
+
+    public AuctionDao getAuction(ObjectId auctionId) {
+        if (this.auctions == null)
+            return null;
+        return this.auctions.get(auctionId);
+    }
+
+    public long beginAuctionLoad() {
+        if (this.auctions == null)
+            return 0;
+        return this.auctions.beginLoad();
+    }
+
+    public void putAuction(AuctionDao auctionDao, long token) {
+        if (this.auctions != null)
+            this.auctions.put(auctionDao.id, auctionDao, token);
+    }
+
+    public void invalidateAuction(ObjectId auctionId) {
+        this.invalidate(Rabbitmq.InvalidationKind.AUCTION, auctionId);
+    }
+
+    /* ------------------------- User ------------------------- */
+
+    public UserDao getUser(ObjectId userId) {
+        if (this.users == null)
+            return null;
+        return this.users.get(userId);
+    }
+
+    public long beginUserLoad() {
+        if (this.users == null)
+            return 0;
+        return this.users.beginLoad();
+    }
+
+    public void putUser(UserDao userDao, long token) {
+        if (this.users != null)
+            this.users.put(userDao.id, userDao, token);
+    }
+
+    public void invalidateUser(ObjectId userId) {
+        this.invalidate(Rabbitmq.InvalidationKind.USER, userId);
+    }
+
+    /* ------------------------- Session ------------------------- */
+
+    /**
+     * @param token The session token.
+     * @return the username of a session validated within the trust window, or
+     *         null
+     */
+    public String getSession(String token) {
+        if (this.sessions == null)
+            return null;
+        return this.sessions.get(token);
+    }
+
+    public long beginSessionLoad() {
+        if (this.sessions == null)
+            return 0;
+        return this.sessions.beginLoad();
+    }
+
+    public void putSession(String token, String username, long loadToken) {
+        if (this.sessions != null)
+            this.sessions.put(token, username, loadToken);
+    }
+
+    /**
+     * Drop every session of a user from the caches of all pods.
+     */
+    public void revokeSessions(String username) {
+        this.revokeSessionsLocal(username);
+        if (this.rabbitmq == null)
+            return;
+        synchronized (this.rabbitmq) {
+            this.rabbitmq.broadcastSessionRevocation(username);
+        }
+    }
+
+    /* ------------------------- Internal ------------------------- */
+
+    private void invalidate(Rabbitmq.InvalidationKind kind, ObjectId id) {
+        this.invalidateLocal(kind, id);
+        if (this.rabbitmq == null)
+            return;
+        // Channels must not be used concurrently for publishing
+        synchronized (this.rabbitmq) {
+            this.rabbitmq.broadcastInvalidation(kind, id);
+        }
+    }
+
+    private void invalidateLocal(Rabbitmq.InvalidationKind kind, ObjectId id) {
+        switch (kind) {
+            case AUCTION -> {
+                if (this.auctions != null)
+                    this.auctions.invalidate(id);
+            }
+            case USER -> {
+                if (this.users != null)
+                    this.users.invalidate(id);
+            }
+        }
+    }
+
+    private void revokeSessionsLocal(String username) {
+        if (this.sessions != null)
+            this.sessions.invalidateIf((token, sessionUsername) -> sessionUsername.equals(username));
+    }
+
+    private void invalidateLocalAll() {
+        if (this.auctions != null)
+            this.auctions.invalidateAll();
+        if (this.users != null)
+            this.users.invalidateAll();
+    }
+
+    private static long auctionWeight(AuctionDao auctionDao) {
+        return DAO_BASE_WEIGHT
+                + stringWeight(auctionDao.title)
+                + stringWeight(auctionDao.description)
+                + stringWeight(auctionDao.imageId);
+    }
+
+    private static long userWeight(UserDao userDao) {
+        return DAO_BASE_WEIGHT
+                + stringWeight(userDao.username)
+                + stringWeight(userDao.name)
+                + stringWeight(userDao.hashedPassword)
+                + stringWeight(userDao.profileImageId);
+    }
+
+    private static long stringWeight(String value) {
+        if (value == null)
+            return 0;
+        return 40 + 2L * value.length();
+    }
+}
@@ -0,0 +1,442 @@
+package scc.kube;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import redis.clients.jedis.HostAndPort;
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.JedisPool;
+import redis.clients.jedis.Pipeline;
+import redis.clients.jedis.exceptions.JedisRedirectionException;
+import redis.clients.jedis.providers.ClusterConnectionProvider;
+import redis.clients.jedis.util.JedisClusterCRC16;
+import scc.kube.config.RedisConfig;
+import scc.kube.utils.RoundTripCounter;
+
+/**
+ * Connections to Redis, shared by every request of a pod.
+ *
+ * With a single node every request holds one pooled connection until it is
+ * closed, unless auto-pipelining is enabled: pipelines of every request are
+ * then sent over a few shared connections. With a cluster the nodes are
+ * discovered from the configured seed node and connections are only held for
+ * the duration of a command. Auto-pipelined and cluster nodes are shared by
+ * every request.
+ */
+public class KubeRedis implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(KubeRedis.class.getName());
+
+    private final JedisPool jedisPool;
+    private final SharedNodes sharedNodes;
+    private final RedisBreaker breaker;
+
+    private KubeRedis(JedisPool jedisPool, SharedNodes sharedNodes, RedisBreaker breaker) {
+        this.jedisPool = jedisPool;
+        this.sharedNodes = sharedNodes;
+        this.breaker = breaker;
+    }
+
+    public static KubeRedis create(RedisConfig config) {
+        return create(config, RedisBreaker.disabled());
+    }
+
+    /**
+     * @param breaker Guards every call made through the acquired nodes.
+     */
+    public static KubeRedis create(RedisConfig config, RedisBreaker breaker) {
+        if (config.cluster) {
+            logger.info("Using Redis Cluster with seed node " + config.url + ":" + config.port);
+            if (config.autoPipelineConnections > 0)
+                logger.warning("Auto-pipelining is not supported with Redis Cluster, ignoring it");
+            return new KubeRedis(null, new ClusterNodes(Kube.createClusterConnectionProvider(config)), breaker);
+        }
+        if (config.autoPipelineConnections > 0) {
+            logger.info("Auto-pipelining Redis commands over " + config.autoPipelineConnections + " connections");
+            return new KubeRedis(null, new AutoPipelinedNode(config, Kube.createJedisPool(config)), breaker);
+        }
+        return new KubeRedis(Kube.createJedisPool(config), null, breaker);
+    }
+
+    /**
+     * @return the nodes to use for a request, must be closed once the request
+     *         ends
+     */
+    public RedisNodes acquire() {
+        if (this.sharedNodes != null)
+            return this.breaker.guard(this.sharedNodes);
+        return this.breaker.guard(new SingleNode(this.jedisPool));
+    }
+
+    /**
+     * Run a function on every master node, for tools that inspect the whole
+     * keyspace.
+     */
+    public void forEachMaster(Consumer<Jedis> function) {
+        if (this.sharedNodes != null) {
+            this.sharedNodes.forEachMaster(function);
+            return;
+        }
+        try (var jedis = this.jedisPool.getResource()) {
+            function.accept(jedis);
+        }
+    }
+
+    @Override
+    public void close() {
+        if (this.sharedNodes != null)
+            this.sharedNodes.shutdown();
+        else
+            this.jedisPool.close();
+    }
+
+    /**
+     * Nodes shared by every request, closing them as {@link RedisNodes} does
+     * nothing.
+     */
+    private interface SharedNodes extends RedisNodes {
+        void forEachMaster(Consumer<Jedis> function);
+
+        void shutdown();
+    }
+
+    /**
+     * Borrows its connection on first use, requests served from the near cache
+     * never take one from the pool.
+     */
+    private static class SingleNode implements RedisNodes {
+        private final JedisPool jedisPool;
+        private Jedis jedis;
+
+        SingleNode(JedisPool jedisPool) {
+            this.jedisPool = jedisPool;
+        }
+
+        @Override
+        public <T, E extends Exception> T withKey(String key, NodeFunction<T, E> function) throws E {
+            return function.apply(this.jedis());
+        }
+
+        @Override
+        public void pipelined(Consumer<RoutedPipeline> commands) {
+            var used = new boolean[1];
+            try (var pipeline = this.jedis().pipelined()) {
+                commands.accept(key -> {
+                    used[0] = true;
+                    return pipeline;
+                });
+            }
+            if (used[0])
+                RoundTripCounter.increment();
+        }
+
+        @Override
+        public <K> Collection<List<K>> groupBySlot(Map<K, String> keys) {
+            if (keys.isEmpty())
+                return List.of();
+            return List.of(new ArrayList<>(keys.keySet()));
+        }
+
+        @Override
+        public boolean supportsConcurrentUse() {
+            return false;
+        }
+
+        @Override
+        public void close() {
+            if (this.jedis != null)
+                this.jedis.close();
+        }
+
+        private Jedis jedis() {
+            if (this.jedis == null)
+                this.jedis = this.jedisPool.getResource();
+            return this.jedis;
+        }
+    }
+
+    /**
+     * Sends the pipelines of every request over a few shared connections. Each
+     * connection has a thread that takes the pipelines queued while its
+     * previous flush was in flight and sends them as one, so concurrent
+     * requests share round trips. Functions passed to {@link #withKey} may hold
+     * the connection (WATCH, MULTI, scripts), they borrow one of their own.
+     */
+    private static class AutoPipelinedNode implements SharedNodes {
+        private final JedisPool jedisPool;
+        private final List<SharedConnection> connections = new ArrayList<>();
+        private final AtomicInteger next = new AtomicInteger();
+
+        AutoPipelinedNode(RedisConfig config, JedisPool jedisPool) {
+            this.jedisPool = jedisPool;
+            for (var i = 0; i < config.autoPipelineConnections; ++i) {
+                var connection = new SharedConnection(config);
+                var thread = new Thread(connection, "kube-redis-auto-pipeline-" + i);
+                thread.setDaemon(true);
+                thread.start();
+                connection.thread = thread;
+                this.connections.add(connection);
+            }
+        }
+
+        @Override
+        public <T, E extends Exception> T withKey(String key, NodeFunction<T, E> function) throws E {
+            try (var jedis = this.jedisPool.getResource()) {
+                return function.apply(jedis);
+            }
+        }
+
+        @Override
+        public void pipelined(Consumer<RoutedPipeline> commands) {
+            var connection = this.connections.get(Math.floorMod(this.next.getAndIncrement(), this.connections.size()));
+            var batch = new Batch(commands, new CompletableFuture<>());
+            connection.queue.add(batch);
+            try {
+                batch.done().join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException)
+                    throw runtimeException;
+                if (e.getCause() instanceof Error error)
+                    throw error;
+                throw e;
+            }
+            RoundTripCounter.increment();
+        }
+
+        @Override
+        public <K> Collection<List<K>> groupBySlot(Map<K, String> keys) {
+            if (keys.isEmpty())
+                return List.of();
+            return List.of(new ArrayList<>(keys.keySet()));
+        }
+
+        @Override
+        public boolean supportsConcurrentUse() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // Connections are shared by every request
+        }
+
+        @Override
+        public void forEachMaster(Consumer<Jedis> function) {
+            try (var jedis = this.jedisPool.getResource()) {
+                function.accept(jedis);
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            for (var connection : this.connections)
+                connection.thread.interrupt();
+            this.jedisPool.close();
+        }
+    }
+
+    private static record Batch(Consumer<RoutedPipeline> commands, CompletableFuture<Void> done) {
+    }
+
+    private static class SharedConnection implements Runnable {
+        // Bounds the size of a single flush
+        private static final int MAX_BATCHES = 256;
+
+        private final RedisConfig config;
+        private final LinkedBlockingQueue<Batch> queue = new LinkedBlockingQueue<>();
+        private Thread thread;
+        private Jedis jedis;
+
+        SharedConnection(RedisConfig config) {
+            this.config = config;
+        }
+
+        @Override
+        public void run() {
+            var batches = new ArrayList<Batch>(MAX_BATCHES);
+            while (true) {
+                try {
+                    batches.add(this.queue.take());
+                } catch (InterruptedException e) {
+                    break;
+                }
+                this.queue.drainTo(batches, MAX_BATCHES - 1);
+                this.flush(batches);
+                batches.clear();
+            }
+            if (this.jedis != null)
+                this.jedis.close();
+        }
+
+        private void flush(List<Batch> batches) {
+            var failures = new RuntimeException[batches.size()];
+            try {
+                if (this.jedis == null)
+                    this.jedis = new Jedis(this.config.url, this.config.port, 1000);
+                try (var pipeline = this.jedis.pipelined()) {
+                    for (var i = 0; i < batches.size(); ++i) {
+                        try {
+                            batches.get(i).commands().accept(key -> pipeline);
+                        } catch (RuntimeException e) {
+                            failures[i] = e;
+                        }
+                    }
+                }
+            } catch (RuntimeException e) {
+                // The connection is broken, reconnect on the next flush
+                if (this.jedis != null)
+                    this.jedis.disconnect();
+                this.jedis = null;
+                for (var batch : batches)
+                    batch.done().completeExceptionally(e);
+                return;
+            }
+
+            for (var i = 0; i < batches.size(); ++i) {
+                if (failures[i] != null)
+                    batches.get(i).done().completeExceptionally(failures[i]);
+                else
+                    batches.get(i).done().complete(null);
+            }
+        }
+    }
+
+    private static class ClusterNodes implements SharedNodes {
+        private final ClusterConnectionProvider provider;
+        private final ExecutorService executor;
+
+        ClusterNodes(ClusterConnectionProvider provider) {
+            this.provider = provider;
+            this.executor = Executors.newCachedThreadPool(runnable -> {
+                var thread = new Thread(runnable, "kube-redis-pipeline");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+
+        @Override
+        public <T, E extends Exception> T withKey(String key, NodeFunction<T, E> function) throws E {
+            var slot = JedisClusterCRC16.getSlot(key);
+            try (var jedis = new Jedis(this.provider.getConnectionFromSlot(slot))) {
+                return function.apply(jedis);
+            } catch (JedisRedirectionException e) {
+                // The slot moved, every command of the function was rejected
+                this.provider.renewSlotCache();
+            }
+            try (var jedis = new Jedis(this.provider.getConnectionFromSlot(slot))) {
+                return function.apply(jedis);
+            }
+        }
+
+        @Override
+        public void pipelined(Consumer<RoutedPipeline> commands) {
+            var connections = new ArrayList<Jedis>();
+            var pipelines = new LinkedHashMap<HostAndPort, Pipeline>();
+            try {
+                commands.accept(key -> pipelines.computeIfAbsent(this.nodeOf(key), node -> {
+                    var jedis = new Jedis(this.provider.getConnection(node));
+                    connections.add(jedis);
+                    return jedis.pipelined();
+                }));
+                this.sync(new ArrayList<>(pipelines.values()));
+            } finally {
+                // Reads what is left of pipelines that failed before the sync
+                for (var pipeline : pipelines.values())
+                    pipeline.close();
+                for (var jedis : connections)
+                    jedis.close();
+            }
+        }
+
+        @Override
+        public <K> Collection<List<K>> groupBySlot(Map<K, String> keys) {
+            var groups = new HashMap<Integer, List<K>>();
+            for (var entry : keys.entrySet()) {
+                var slot = JedisClusterCRC16.getSlot(entry.getValue());
+                groups.computeIfAbsent(slot, s -> new ArrayList<>()).add(entry.getKey());
+            }
+            return groups.values();
+        }
+
+        @Override
+        public boolean supportsConcurrentUse() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+            // Connections are only held while commands run
+        }
+
+        @Override
+        public void forEachMaster(Consumer<Jedis> function) {
+            for (var pool : this.provider.getNodes().values()) {
+                try (var jedis = new Jedis(pool.getResource())) {
+                    if ("master".equals(jedis.role().get(0)))
+                        function.accept(jedis);
+                }
+            }
+        }
+
+        @Override
+        public void shutdown() {
+            this.executor.shutdown();
+            this.provider.close();
+        }
+
+        private HostAndPort nodeOf(String key) {
+            var slot = JedisClusterCRC16.getSlot(key);
+            var node = this.provider.getNode(slot);
+            if (node == null) {
+                this.provider.renewSlotCache();
+                node = this.provider.getNode(slot);
+            }
+            return node;
+        }
+
+        /**
+         * Flush the pipelines in parallel. Commands rejected because their slot
+         * moved fail when their response is read, the slot cache is renewed so
+         * that the next requests reach the right node.
+         */
+        private void sync(List<Pipeline> pipelines) {
+            if (pipelines.isEmpty())
+                return;
+            for (var i = 0; i < pipelines.size(); ++i)
+                RoundTripCounter.increment();
+
+            var futures = new ArrayList<CompletableFuture<List<Object>>>(pipelines.size() - 1);
+            for (var pipeline : pipelines.subList(1, pipelines.size()))
+                futures.add(CompletableFuture.supplyAsync(pipeline::syncAndReturnAll, this.executor));
+
+            var results = new ArrayList<List<Object>>(pipelines.size());
+            results.add(pipelines.get(0).syncAndReturnAll());
+            try {
+                for (var future : futures)
+                    results.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException runtimeException)
+                    throw runtimeException;
+                throw e;
+            }
+
+            for (var result : results) {
+                if (result.stream().anyMatch(JedisRedirectionException.class::isInstance)) {
+                    this.provider.renewSlotCache();
+                    break;
+                }
+            }
+        }
+    }
+}
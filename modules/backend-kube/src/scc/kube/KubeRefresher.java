@@ -0,0 +1,128 @@
+package scc.kube;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.bson.types.ObjectId;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import scc.kube.config.EarlyRefreshConfig;
+
+/**
+ * Refreshes cached DAOs in the background before they expire.
+ * Shared by every {@link KubeRepo} of a pod, repos hand over the ids that
+ * {@link Redis} flagged as due for an early refresh.
+ *
+ * Refreshes are best effort: ids already being refreshed are skipped and
+ * refreshes are dropped when the queue is full. A refresh never overwrites a
+ * DAO that was written after the refresh started.
+ */
+public class KubeRefresher {
+    private static final Logger logger = Logger.getLogger(KubeRefresher.class.getName());
+
+    private static final int QUEUE_SIZE = 1024;
+
+    private static final AttributeKey<String> ATTR_KIND = AttributeKey.stringKey("kind");
+    private static final AttributeKey<String> ATTR_OUTCOME = AttributeKey.stringKey("outcome");
+
+    private static final LongCounter refreshCounter = GlobalOpenTelemetry.getMeter("scc.kube")
+            .counterBuilder("redis.early_refreshes")
+            .setDescription("DAOs refreshed before their expiry")
+            .build();
+
+    private interface Refresh {
+        boolean run(RedisNodes redis, List<ObjectId> ids) throws Exception;
+    }
+
+    private final KubeRedis redis;
+    private final Mongo mongo;
+    private final ThreadPoolExecutor executor;
+    private final Set<String> inFlight = ConcurrentHashMap.newKeySet();
+
+    private KubeRefresher(KubeRedis redis, Mongo mongo, int threads) {
+        this.redis = redis;
+        this.mongo = mongo;
+        if (threads > 0) {
+            this.executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+                    new ArrayBlockingQueue<>(QUEUE_SIZE), runnable -> {
+                        var thread = new Thread(runnable, "kube-refresher");
+                        thread.setDaemon(true);
+                        return thread;
+                    });
+        } else {
+            this.executor = null;
+        }
+    }
+
+    public static KubeRefresher create(KubeRedis redis, Mongo mongo, EarlyRefreshConfig config) {
+        if (config.beta <= 0)
+            return disabled();
+        return new KubeRefresher(redis, mongo, config.threads);
+    }
+
+    /**
+     * Create a refresher that drops every refresh.
+     */
+    public static KubeRefresher disabled() {
+        return new KubeRefresher(null, null, 0);
+    }
+
+    public void refreshAuctions(Collection<ObjectId> auctionIds) {
+        this.submit("auction", auctionIds, (redis, ids) -> Redis.refreshAuctionMany(redis, ids,
+                group -> this.mongo.getAuctionMany(group).values()));
+    }
+
+    public void refreshUsers(Collection<ObjectId> userIds) {
+        this.submit("user", userIds, (redis, ids) -> Redis.refreshUserMany(redis, ids,
+                group -> this.mongo.getUserMany(group).values()));
+    }
+
+    private void submit(String kind, Collection<ObjectId> ids, Refresh refresh) {
+        if (this.executor == null || ids.isEmpty())
+            return;
+
+        var claimed = new ArrayList<ObjectId>(ids.size());
+        for (var id : ids) {
+            if (this.inFlight.add(kind + id))
+                claimed.add(id);
+        }
+        if (claimed.isEmpty())
+            return;
+
+        try {
+            this.executor.execute(() -> this.run(kind, claimed, refresh));
+        } catch (RejectedExecutionException e) {
+            this.release(kind, claimed);
+            refreshCounter.add(claimed.size(), Attributes.of(ATTR_KIND, kind, ATTR_OUTCOME, "dropped"));
+        }
+    }
+
+    private void run(String kind, List<ObjectId> ids, Refresh refresh) {
+        try (var redis = this.redis.acquire()) {
+            var stored = refresh.run(redis, ids);
+            refreshCounter.add(ids.size(),
+                    Attributes.of(ATTR_KIND, kind, ATTR_OUTCOME, stored ? "refreshed" : "conflict"));
+        } catch (Exception e) {
+            logger.warning("Failed to refresh " + kind + " " + ids + ": " + e);
+            refreshCounter.add(ids.size(), Attributes.of(ATTR_KIND, kind, ATTR_OUTCOME, "failed"));
+        } finally {
+            this.release(kind, ids);
+        }
+    }
+
+    private void release(String kind, Collection<ObjectId> ids) {
+        for (var id : ids)
+            this.inFlight.remove(kind + id);
+    }
+}
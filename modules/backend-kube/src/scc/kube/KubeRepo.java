@@ -4,16 +4,20 @@ import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.function.Consumer;
+import java.util.function.Function;
 
+import org.bson.BsonTimestamp;
 import org.bson.types.ObjectId;
 
 import io.opentelemetry.instrumentation.annotations.WithSpan;
-import redis.clients.jedis.Jedis;
-import scc.PagingWindow;
+import scc.AppLogic;
 import scc.UserService.CreateUserParams;
 import scc.exception.AuctionNotFoundException;
 import scc.exception.BidConflictException;
@@ -24,22 +28,63 @@ import scc.exception.UserAlreadyExistsException;
 import scc.exception.UserNotFoundException;
 import scc.kube.dao.AuctionDao;
 import scc.kube.dao.BidDao;
+import scc.kube.dao.FollowDao;
 import scc.kube.dao.QuestionDao;
 import scc.kube.dao.UserDao;
+import scc.kube.utils.Forked;
+import scc.kube.utils.RoundTripCounter;
+import scc.kube.utils.SingleFlight;
 
 public class KubeRepo implements AutoCloseable {
-    private final Jedis jedis;
+    // Shared by every repo of the pod so that concurrent misses on the same key
+    // load it from Mongo only once
+    private static final SingleFlight<ObjectId, AuctionDao> auctionFlight = new SingleFlight<>("auction");
+    private static final SingleFlight<ObjectId, BidDao> topBidFlight = new SingleFlight<>("top_bid");
+    private static final SingleFlight<ObjectId, String> displayNameFlight = new SingleFlight<>("display_name");
+
+    private final RedisNodes redis;
     private final Mongo mongo;
+    private final AsyncMongo asyncMongo;
+    private final KubeCache cache;
+    private final KubeRefresher refresher;
+
+    /**
+     * What a listing of auctions shows besides the auctions themselves.
+     *
+     * @param topBids      The top bid of each auction that has one, by auction
+     *                     id.
+     * @param displayNames The display name of the owners and top bidders, by
+     *                     user id.
+     */
+    public static record AuctionListing(Map<ObjectId, BidDao> topBids, Map<ObjectId, String> displayNames) {
+    }
+
+    public KubeRepo(RedisNodes redis, Mongo mongo) {
+        this(redis, mongo, KubeCache.disabled());
+    }
 
-    public KubeRepo(Jedis jedis, Mongo mongo) {
-        this.jedis = jedis;
+    public KubeRepo(RedisNodes redis, Mongo mongo, KubeCache cache) {
+        this(redis, mongo, cache, KubeRefresher.disabled());
+    }
+
+    public KubeRepo(RedisNodes redis, Mongo mongo, KubeCache cache, KubeRefresher refresher) {
+        this(redis, mongo, cache, refresher, AsyncMongo.sync(mongo));
+    }
+
+    public KubeRepo(RedisNodes redis, Mongo mongo, KubeCache cache, KubeRefresher refresher,
+            AsyncMongo asyncMongo) {
+        this.redis = redis;
         this.mongo = mongo;
+        this.asyncMongo = asyncMongo;
+        this.cache = cache;
+        this.refresher = refresher;
     }
 
     /* ------------------------- User ------------------------- */
 
     @WithSpan
     public UserDao createUser(CreateUserParams params) throws UserAlreadyExistsException {
+        var roundTrips = RoundTripCounter.current();
         var userDao = new UserDao();
         userDao.username = params.username();
         userDao.name = params.name();
@@ -47,114 +92,204 @@ public class KubeRepo implements AutoCloseable {
         userDao.status = UserDao.Status.ACTIVE;
         userDao.createTime = LocalDateTime.now(ZoneOffset.UTC);
 
-        userDao = this.mongo.createUser(userDao);
-        Redis.setUser(this.jedis, userDao);
+        var createdDao = this.mongo.createUser(userDao);
+        this.redisWrite(redis -> Redis.createUser(redis, createdDao));
+        RoundTripCounter.record("create_user", roundTrips);
 
-        return userDao;
+        return createdDao;
     }
 
+    @WithSpan
     public ObjectId getUserIdFromUsername(String username) throws UserNotFoundException {
-        var userId = Redis.getUserIdFromUsername(this.jedis, username);
-        if (userId == null) {
+        var lookup = this.redisRead(redis -> Redis.lookupUsername(redis, username),
+                new Redis.UsernameLookup(null, false));
+        if (lookup.userId() != null)
+            return lookup.userId();
+        if (lookup.absent())
+            throw new UserNotFoundException(username);
+
+        try {
             var userDao = this.mongo.getUserByUsername(username);
-            Redis.setUser(this.jedis, userDao);
-            userId = userDao.id;
+            this.redisWrite(redis -> Redis.setUser(redis, userDao));
+            return userDao.id;
+        } catch (UserNotFoundException e) {
+            this.redisWrite(redis -> Redis.setUsernameMissing(redis, username));
+            throw e;
         }
-        return userId;
     }
 
     @WithSpan
     public UserDao getUser(ObjectId userId) throws UserNotFoundException {
-        var userDao = Redis.getUser(this.jedis, userId);
+        var userDao = this.cache.getUser(userId);
+        if (userDao != null)
+            return userDao;
+
+        var token = this.cache.beginUserLoad();
+        var refreshDue = new ArrayList<ObjectId>(1);
+        userDao = this.redisRead(redis -> Redis.getUser(redis, userId, refreshDue), null);
         if (userDao == null) {
-            userDao = this.mongo.getUser(userId);
-            Redis.setUser(this.jedis, userDao);
+            if (this.redisRead(redis -> Redis.isUserMissing(redis, userId), false))
+                throw new UserNotFoundException();
+            try {
+                var start = System.nanoTime();
+                var loaded = this.mongo.getUser(userId);
+                this.redisWrite(redis -> Redis.setUser(redis, loaded, Kube.elapsedMillis(start)));
+                userDao = loaded;
+            } catch (UserNotFoundException e) {
+                this.redisWrite(redis -> Redis.setUserMissing(redis, userId));
+                throw e;
+            }
         }
+        this.refresher.refreshUsers(refreshDue);
+        this.cache.putUser(userDao, token);
         return userDao;
     }
 
     @WithSpan
     public Map<ObjectId, UserDao> getUserMany(Iterable<ObjectId> userIds) throws UserNotFoundException {
+        var userDaoMap = new HashMap<ObjectId, UserDao>();
         var userIdsSet = new HashSet<ObjectId>();
-        userIds.forEach(userIdsSet::add);
+        for (var userId : userIds) {
+            var userDao = this.cache.getUser(userId);
+            if (userDao != null)
+                userDaoMap.put(userId, userDao);
+            else
+                userIdsSet.add(userId);
+        }
+        if (userIdsSet.isEmpty())
+            return userDaoMap;
 
-        var userDaoMap = Redis.getUserMany(this.jedis, userIdsSet);
-        var userDaoIdsSet = new HashSet<ObjectId>();
-        userDaoMap.values().forEach(userDao -> userDaoIdsSet.add(userDao.id));
+        var token = this.cache.beginUserLoad();
+        var refreshDue = new ArrayList<ObjectId>();
+        var cachedUserDaoMap = this.redisRead(redis -> Redis.getUserMany(redis, userIdsSet, refreshDue),
+                Map.<ObjectId, UserDao>of());
+        userDaoMap.putAll(cachedUserDaoMap);
+        this.refresher.refreshUsers(refreshDue);
 
         var userDaoIdsSetDiff = new HashSet<ObjectId>(userIdsSet);
-        userDaoIdsSetDiff.removeAll(userDaoIdsSet);
+        userDaoIdsSetDiff.removeAll(cachedUserDaoMap.keySet());
 
         if (!userDaoIdsSetDiff.isEmpty()) {
+            var start = System.nanoTime();
             var userDaoMap2 = this.mongo.getUserMany(userDaoIdsSetDiff);
             userDaoMap.putAll(userDaoMap2);
-            Redis.setUserMany(this.jedis, userDaoMap2.values());
+            this.redisWrite(redis -> Redis.setUserMany(redis, userDaoMap2.values(), Kube.elapsedMillis(start)));
         }
 
+        for (var userId : userIdsSet)
+            this.cache.putUser(userDaoMap.get(userId), token);
+
         return userDaoMap;
     }
 
     @WithSpan
     public UserDao updateUser(ObjectId userId, UserDao userDao) throws UserNotFoundException {
+        var roundTrips = RoundTripCounter.current();
         var updatedDao = this.mongo.updateUser(userId, userDao);
-        Redis.setUser(this.jedis, updatedDao);
+        this.redisWrite(redis -> Redis.setUser(redis, updatedDao));
+        this.cache.invalidateUser(userId);
+        RoundTripCounter.record("update_user", roundTrips);
         return updatedDao;
     }
 
     @WithSpan
     public UserDao deactivateUser(ObjectId userId) throws UserNotFoundException {
         var userDao = this.mongo.deactivateUser(userId);
-        Redis.setUser(this.jedis, userDao);
+        this.redisWrite(redis -> Redis.setUser(redis, userDao));
+        this.cache.invalidateUser(userId);
         return userDao;
     }
 
+    /**
+     * Get a page of the auctions created by a user, newest first.
+     * The cached list of the user's auction ids is paged in memory, only open
+     * auctions are read from Mongo since the list does not track status.
+     * 
+     * @param before Only return auctions older than this one, null to start
+     *               from the newest auction.
+     */
     @WithSpan
-    public List<AuctionDao> getUserAuctions(ObjectId userId) {
-        var auctionIds = Redis.getUserAuctions(this.jedis, userId);
-        if (auctionIds != null)
-            return List.copyOf(this.getAuctionMany(auctionIds).values());
-
-        var auctionDaos = this.mongo.getUserAuctions(userId);
-        Redis.setAuctionMany(jedis, auctionDaos);
-        Redis.setUserAuctions(this.jedis, userId, auctionDaos.stream().map(a -> a.id).toList());
+    public List<AuctionDao> getUserAuctions(ObjectId userId, boolean open, ObjectId before, int limit) {
+        if (open)
+            return this.mongo.getUserAuctions(userId, true, before, limit, this.writeTime(userId));
+
+        var auctionIds = this.redisRead(redis -> Redis.getUserAuctions(redis, userId), null);
+        if (auctionIds == null) {
+            var loaded = this.mongo.getUserAuctionIds(userId);
+            this.redisWrite(redis -> Redis.setUserAuctions(redis, userId, loaded));
+            auctionIds = loaded;
+        }
 
-        return auctionDaos;
+        return this.getAuctionPage(idPage(auctionIds, before, limit));
     }
 
+    /**
+     * Get a page of the open or closed auctions a user has bid on, latest bid
+     * first.
+     * The first page is served from the user's cached followed auctions, which
+     * hold the {@link Redis#MAX_USER_FOLLOWED_AUCTIONS} latest ones and are
+     * rebuilt from Mongo in one query when missing. Later pages seek in Mongo
+     * from the cursor.
+     * 
+     * @param before The last follow of the previous page, null to start from
+     *               the latest bid.
+     */
     @WithSpan
-    public List<AuctionDao> getAuctionsFollowedByUser(ObjectId userId) throws BidNotFoundException {
-        // Redis either stores all user followed auctions or none of them
-        var auctionIds = Redis.getUserFollowedAuctions(this.jedis, userId);
-        if (!auctionIds.isEmpty())
-            return List.copyOf(this.getAuctionMany(auctionIds).values());
+    public List<FollowDao> getAuctionsFollowedByUser(ObjectId userId, boolean open, FollowDao before, int limit) {
+        if (before != null || limit > Redis.MAX_USER_FOLLOWED_AUCTIONS)
+            return this.mongo.getFollowedAuctions(userId, open, before, limit, this.writeTime(userId));
 
-        var auctionDaos = this.mongo.getAuctionsFollowedByUser(userId);
-        Redis.setAuctionMany(jedis, auctionDaos);
-        Redis.addUserFollowedAuctionMany(this.jedis, userId, auctionDaos.stream().map(a -> a.id).toList());
+        var follows = this.redisRead(redis -> Redis.getUserFollowedAuctions(redis, userId, open, limit), null);
+        if (follows != null)
+            return follows;
 
-        return auctionDaos;
+        var recentFollows = this.mongo.getFollowedAuctions(userId, open, null, Redis.MAX_USER_FOLLOWED_AUCTIONS);
+        this.redisWrite(redis -> Redis.setUserFollowedAuctions(redis, userId, open, recentFollows));
+        return recentFollows.subList(0, Math.min(limit, recentFollows.size()));
+    }
+
+    /**
+     * Record that a user has bid on an auction, called for every created bid.
+     * The follow is recorded as open, the auction took the bid. The auction is
+     * checked afterwards: if it closed in the meantime its follows may already
+     * have been closed without this one, which is then closed here.
+     */
+    @WithSpan
+    public void recordFollow(ObjectId userId, ObjectId auctionId, LocalDateTime bidTime) {
+        this.mongo.recordFollow(userId, auctionId, bidTime);
+        this.redisWrite(redis -> Redis.recordUserFollowedAuction(redis, userId, auctionId, bidTime));
+        if (this.mongo.getAuctionStatus(auctionId) == AuctionDao.Status.CLOSED) {
+            this.mongo.closeFollow(userId, auctionId);
+            this.redisWrite(redis -> Redis.invalidateUserFollowedAuctionsMany(redis, List.of(userId)));
+        }
+        this.recordWriteTime(userId);
     }
 
     @WithSpan
     public Map<ObjectId, String> getUserDisplayNameMany(Iterable<ObjectId> userIds) throws UserNotFoundException {
-        var userIdsList = new ArrayList<ObjectId>();
-        userIds.forEach(userIdsList::add);
+        // Ids repeat when the same user owns several items
+        var userIdsSet = new HashSet<ObjectId>();
+        userIds.forEach(userIdsSet::add);
 
-        var displayNames = Redis.getUserDisplayNameMany(this.jedis, userIdsList);
-        if (displayNames.size() == userIdsList.size())
+        var displayNames = this.redisRead(redis -> Redis.getUserDisplayNameMany(redis, userIdsSet),
+                new HashMap<ObjectId, String>());
+        if (displayNames.size() == userIdsSet.size())
             return displayNames;
 
         var missingUserIds = new HashSet<ObjectId>();
-        for (var userId : userIdsList) {
+        for (var userId : userIdsSet) {
             if (!displayNames.containsKey(userId))
                 missingUserIds.add(userId);
         }
 
-        var missingUserDaos = this.mongo.getUserMany(missingUserIds);
-        var missingUserDisplayNames = new HashMap<ObjectId, String>();
-        for (var userDao : missingUserDaos.values())
-            missingUserDisplayNames.put(userDao.id, Kube.userDisplayNameFromDao(userDao));
-        Redis.setUserDisplayNameMany(this.jedis, missingUserDisplayNames);
+        var missingUserDisplayNames = displayNameFlight.runMany(missingUserIds, ids -> {
+            var userDaos = this.mongo.getUserDisplayNameMany(ids);
+            var loaded = new HashMap<ObjectId, String>();
+            for (var userDao : userDaos.values())
+                loaded.put(userDao.id, Kube.userDisplayName(userDao.username, userDao.status));
+            this.redisWrite(redis -> Redis.setUserDisplayNameMany(redis, loaded));
+            return loaded;
+        });
 
         displayNames.putAll(missingUserDisplayNames);
         return displayNames;
@@ -164,126 +299,372 @@ public class KubeRepo implements AutoCloseable {
 
     @WithSpan
     public AuctionDao getAuction(ObjectId auctionId) throws AuctionNotFoundException {
-        var auctionDao = Redis.getAuction(this.jedis, auctionId);
+        var auctionDao = this.cache.getAuction(auctionId);
         if (auctionDao != null)
             return auctionDao;
-        auctionDao = this.mongo.getAuction(auctionId);
-        Redis.setAuction(this.jedis, auctionDao);
+
+        var token = this.cache.beginAuctionLoad();
+        var refreshDue = new ArrayList<ObjectId>(1);
+        auctionDao = this.redisRead(redis -> Redis.getAuction(redis, auctionId, refreshDue), null);
+        if (auctionDao == null) {
+            auctionDao = auctionFlight.run(auctionId, () -> {
+                if (this.redisRead(redis -> Redis.isAuctionMissing(redis, auctionId), false))
+                    throw new AuctionNotFoundException(auctionId.toHexString());
+                try {
+                    var start = System.nanoTime();
+                    var loaded = this.mongo.getAuction(auctionId);
+                    this.redisWrite(redis -> Redis.setAuction(redis, loaded, Kube.elapsedMillis(start)));
+                    return loaded;
+                } catch (AuctionNotFoundException e) {
+                    this.redisWrite(redis -> Redis.setAuctionMissing(redis, auctionId));
+                    throw e;
+                }
+            });
+        }
+        this.refresher.refreshAuctions(refreshDue);
+        this.cache.putAuction(auctionDao, token);
         return auctionDao;
     }
 
     @WithSpan
     public Map<ObjectId, AuctionDao> getAuctionMany(List<ObjectId> auctionIds) {
         var auctionDaos = new HashMap<ObjectId, AuctionDao>();
-        var missingAuctionIds = new HashSet<>(auctionIds);
-        var auctionDaoMap = Redis.getAuctionMany(this.jedis, auctionIds);
+        var uncachedAuctionIds = new ArrayList<ObjectId>();
+        for (var auctionId : auctionIds) {
+            var auctionDao = this.cache.getAuction(auctionId);
+            if (auctionDao != null)
+                auctionDaos.put(auctionId, auctionDao);
+            else
+                uncachedAuctionIds.add(auctionId);
+        }
+        if (uncachedAuctionIds.isEmpty())
+            return auctionDaos;
+
+        var token = this.cache.beginAuctionLoad();
+        var missingAuctionIds = new HashSet<>(uncachedAuctionIds);
+        var refreshDue = new ArrayList<ObjectId>();
+        var auctionDaoMap = this.redisRead(redis -> Redis.getAuctionMany(redis, uncachedAuctionIds, refreshDue),
+                Map.<ObjectId, AuctionDao>of());
         auctionDaos.putAll(auctionDaoMap);
+        this.refresher.refreshAuctions(refreshDue);
         for (var auctionId : auctionDaoMap.keySet())
             missingAuctionIds.remove(auctionId);
 
-        if (missingAuctionIds.isEmpty())
-            return auctionDaos;
+        if (!missingAuctionIds.isEmpty()) {
+            var missingAuctionDaos = auctionFlight.runMany(missingAuctionIds, ids -> {
+                var start = System.nanoTime();
+                var loaded = this.mongo.getAuctionMany(new ArrayList<>(ids));
+                this.redisWrite(redis -> Redis.setAuctionMany(redis, loaded.values(), Kube.elapsedMillis(start)));
+                return loaded;
+            });
+            auctionDaos.putAll(missingAuctionDaos);
+        }
 
-        var missingAuctionDaos = this.mongo.getAuctionMany(new ArrayList<>(missingAuctionIds));
-        auctionDaos.putAll(missingAuctionDaos);
-        Redis.setAuctionMany(this.jedis, new ArrayList<>(missingAuctionDaos.values()));
+        for (var auctionId : uncachedAuctionIds) {
+            var auctionDao = auctionDaos.get(auctionId);
+            if (auctionDao != null)
+                this.cache.putAuction(auctionDao, token);
+        }
 
         return auctionDaos;
     }
 
+    /**
+     * Get auctions in the order of their ids, skipping the ones that no longer
+     * exist.
+     */
+    @WithSpan
+    public List<AuctionDao> getAuctionPage(List<ObjectId> auctionIds) {
+        var auctionDaos = this.getAuctionMany(auctionIds);
+        return auctionIds.stream().map(auctionDaos::get).filter(Objects::nonNull).toList();
+    }
+
     @WithSpan
     public AuctionDao createAuction(AuctionDao auctionDao) {
-        auctionDao = this.mongo.createAuction(auctionDao);
-        Redis.setAuction(this.jedis, auctionDao);
-        Redis.pushUserAuction(jedis, auctionDao.userId, auctionDao.id);
-        Redis.pushRecentAuction(jedis, auctionDao.id);
-        return auctionDao;
+        var roundTrips = RoundTripCounter.current();
+        var createdDao = this.mongo.createAuction(auctionDao);
+        this.redisWrite(redis -> Redis.createAuction(redis, createdDao));
+        this.recordWriteTime(createdDao.userId);
+        RoundTripCounter.record("create_auction", roundTrips);
+        return createdDao;
     }
 
     @WithSpan
     public AuctionDao updateAuction(ObjectId auctionId, AuctionDao auctionDao) throws AuctionNotFoundException {
         var updatedDao = this.mongo.updateAuction(auctionId, auctionDao);
-        Redis.setAuction(this.jedis, updatedDao);
+        this.redisWrite(redis -> Redis.setAuction(redis, updatedDao));
+        this.cache.invalidateAuction(auctionId);
         return updatedDao;
     }
 
     public AuctionDao closeAuction(ObjectId auctionId) throws AuctionNotFoundException {
         var auctionDao = this.mongo.closeAuction(auctionId);
-        Redis.setAuction(this.jedis, auctionDao);
+        var followerIds = this.mongo.closeFollows(auctionId);
+        this.redisWrite(redis -> {
+            Redis.closeAuction(redis, auctionDao);
+            Redis.invalidateUserFollowedAuctionsMany(redis, followerIds);
+        });
+        this.cache.invalidateAuction(auctionId);
         return auctionDao;
     }
 
+    /**
+     * Get a page of the bids of an auction, newest first.
+     * The first page is served from the Redis bid index, which holds the most
+     * recent {@link Redis#MAX_AUCTION_BIDS} bids and is rebuilt from Mongo in
+     * one query when missing. Later pages seek in Mongo from the cursor.
+     * 
+     * @param before Only return bids lower than this amount, null to start
+     *               from the top bid.
+     */
     @WithSpan
-    public List<BidDao> getAuctionBids(ObjectId auctionId, PagingWindow window) {
-        // TODO: this could be cached
-        return this.mongo.getAuctionBids(auctionId, window);
+    public List<BidDao> getAuctionBids(ObjectId auctionId, Double before, int limit) throws BidNotFoundException {
+        if (before != null || limit > Redis.MAX_AUCTION_BIDS)
+            return this.mongo.getAuctionBids(auctionId, before, limit, this.writeTime(auctionId));
+
+        var page = this.redisRead(redis -> Redis.getAuctionBids(redis, auctionId, 0, limit),
+                new Redis.IndexPage(Redis.IndexPage.Status.COLD, List.of()));
+        if (page.status() == Redis.IndexPage.Status.HIT) {
+            var bidDaos = this.getBidMany(page.ids());
+            return page.ids().stream().map(bidDaos::get).toList();
+        }
+        if (page.status() == Redis.IndexPage.Status.OUT_OF_WINDOW)
+            return this.mongo.getAuctionBids(auctionId, null, limit, this.writeTime(auctionId));
+
+        var recentBids = this.mongo.getAuctionBids(auctionId, null, Redis.MAX_AUCTION_BIDS);
+        var complete = recentBids.size() < Redis.MAX_AUCTION_BIDS;
+        this.redisWrite(redis -> Redis.setAuctionBids(redis, auctionId, recentBids, complete));
+        return recentBids.subList(0, Math.min(limit, recentBids.size()));
     }
 
+    /**
+     * Get the top bids of many auctions. A cached top bid that cannot be found
+     * is read from its auction instead.
+     */
     @WithSpan
-    public Map<ObjectId, BidDao> getAuctionTopBidMany(Collection<ObjectId> auctionIds) throws BidNotFoundException {
+    public Map<ObjectId, BidDao> getAuctionTopBidMany(Collection<ObjectId> auctionIds) {
         var auctionIdsSet = new HashSet<>(auctionIds);
-        var cachedTopBidIds = Redis.getAuctionTopBidMany(this.jedis, auctionIds);
-        var cachedTopBids = this.getBidMany(cachedTopBidIds.values());
+        var cachedTopBidIds = this.redisRead(redis -> Redis.getAuctionTopBidMany(redis, auctionIds),
+                Map.<ObjectId, ObjectId>of());
+        var cachedTopBids = this.findBidMany(cachedTopBidIds.values());
 
         for (var bidDao : cachedTopBids.values())
             auctionIdsSet.remove(bidDao.auctionId);
 
-        var missingTopBids = this.mongo.getAuctionTopBidMany(auctionIdsSet);
-        for (var entry : missingTopBids.entrySet())
-            Redis.setAuctionTopBid(this.jedis, entry.getKey(), entry.getValue().id);
-        Redis.setBidMany(this.jedis, new ArrayList<>(missingTopBids.values()));
+        var missingTopBids = topBidFlight.runMany(auctionIdsSet, ids -> {
+            var loaded = this.mongo.getAuctionTopBidMany(ids);
+            this.redisWrite(redis -> Redis.setAuctionTopBidMany(redis, loaded));
+            return loaded;
+        });
 
         var topBids = new HashMap<ObjectId, BidDao>();
         for (var auctionId : auctionIds) {
-            if (cachedTopBidIds.containsKey(auctionId))
-                topBids.put(auctionId, cachedTopBids.get(cachedTopBidIds.get(auctionId)));
-            else if (missingTopBids.containsKey(auctionId))
-                topBids.put(auctionId, missingTopBids.get(auctionId));
+            var topBid = cachedTopBids.get(cachedTopBidIds.get(auctionId));
+            if (topBid == null)
+                topBid = missingTopBids.get(auctionId);
+            if (topBid != null)
+                topBids.put(auctionId, topBid);
         }
 
         return topBids;
     }
 
+    /**
+     * Load the top bids and the owner and bidder display names of a listing of
+     * auctions.
+     * Redis is read first, then the misses are loaded from Mongo. The misses
+     * that do not depend on each other are loaded at once, only the names of
+     * top bidders loaded from Mongo wait for their bids. A cached top bid that
+     * cannot be found is read from its auction instead.
+     */
+    @WithSpan
+    public AuctionListing getAuctionListing(Collection<AuctionDao> auctionDaos) throws UserNotFoundException {
+        var auctionIds = new HashSet<ObjectId>();
+        var ownerIds = new HashSet<ObjectId>();
+        for (var auctionDao : auctionDaos) {
+            auctionIds.add(auctionDao.id);
+            ownerIds.add(auctionDao.userId);
+        }
+
+        var cachedTopBidIds = this.redisRead(redis -> Redis.getAuctionTopBidMany(redis, auctionIds),
+                Map.<ObjectId, ObjectId>of());
+        var cachedTopBids = this.redisRead(redis -> Redis.getBidMany(redis, cachedTopBidIds.values()),
+                new HashMap<ObjectId, BidDao>());
+        var displayNames = this.redisRead(redis -> Redis.getUserDisplayNameMany(redis, ownerIds),
+                new HashMap<ObjectId, String>());
+
+        var missingBidIds = new HashSet<ObjectId>(cachedTopBidIds.values());
+        missingBidIds.removeAll(cachedTopBids.keySet());
+        var missingAuctionIds = new HashSet<ObjectId>(auctionIds);
+        missingAuctionIds.removeAll(cachedTopBidIds.keySet());
+        var missingOwnerIds = new HashSet<ObjectId>(ownerIds);
+        missingOwnerIds.removeAll(displayNames.keySet());
+
+        var bidLoad = missingBidIds.isEmpty()
+                ? Forked.<Map<ObjectId, BidDao>, RuntimeException>done(Map.of())
+                : this.asyncMongo.findBidMany(missingBidIds);
+        var topBidLoad = missingAuctionIds.isEmpty()
+                ? Forked.<Map<ObjectId, BidDao>, RuntimeException>done(Map.of())
+                : this.asyncMongo.run(() -> topBidFlight.runMany(missingAuctionIds, this.mongo::getAuctionTopBidMany));
+        var ownerLoad = this.loadUserDisplayNameMany(missingOwnerIds);
+
+        cachedTopBids.putAll(bidLoad.join());
+        var loadedTopBids = new HashMap<>(topBidLoad.join());
+        var lostAuctionIds = new HashSet<ObjectId>();
+        for (var entry : cachedTopBidIds.entrySet()) {
+            if (!cachedTopBids.containsKey(entry.getValue()))
+                lostAuctionIds.add(entry.getKey());
+        }
+        if (!lostAuctionIds.isEmpty())
+            loadedTopBids.putAll(topBidFlight.runMany(lostAuctionIds, this.mongo::getAuctionTopBidMany));
+        if (!loadedTopBids.isEmpty())
+            this.redisWrite(redis -> Redis.setAuctionTopBidMany(redis, loadedTopBids));
+
+        var topBids = new HashMap<ObjectId, BidDao>();
+        for (var auctionId : auctionIds) {
+            var topBid = cachedTopBids.get(cachedTopBidIds.get(auctionId));
+            if (topBid == null)
+                topBid = loadedTopBids.get(auctionId);
+            if (topBid != null)
+                topBids.put(auctionId, topBid);
+        }
+
+        // Owners that are also top bidders are already known
+        var bidderIds = new HashSet<ObjectId>();
+        for (var bidDao : topBids.values()) {
+            if (!ownerIds.contains(bidDao.userId))
+                bidderIds.add(bidDao.userId);
+        }
+        if (!bidderIds.isEmpty()) {
+            var bidderNames = this.redisRead(redis -> Redis.getUserDisplayNameMany(redis, bidderIds),
+                    new HashMap<ObjectId, String>());
+            bidderIds.removeAll(bidderNames.keySet());
+            displayNames.putAll(bidderNames);
+            this.saveUserDisplayNameMany(displayNames, this.loadUserDisplayNameMany(bidderIds).join());
+        }
+        this.saveUserDisplayNameMany(displayNames, ownerLoad.join());
+
+        return new AuctionListing(topBids, displayNames);
+    }
+
+    /**
+     * Get a page of the questions of an auction, newest first.
+     * The first page is served from the Redis question index, which holds the
+     * most recent {@link Redis#MAX_AUCTION_QUESTIONS} questions and is rebuilt
+     * from Mongo in one query when missing. Later pages seek in Mongo from the
+     * cursor.
+     * 
+     * @param before Only return questions older than this one, null to start
+     *               from the newest question.
+     */
     @WithSpan
-    public List<QuestionDao> getAuctionQuestions(ObjectId auctionId, PagingWindow window) {
-        // TODO: this could be cached
-        return this.mongo.getAuctionQuestions(auctionId, window);
+    public List<QuestionDao> getAuctionQuestions(ObjectId auctionId, ObjectId before, int limit)
+            throws QuestionNotFoundException {
+        if (before != null || limit > Redis.MAX_AUCTION_QUESTIONS)
+            return this.mongo.getAuctionQuestions(auctionId, before, limit, this.writeTime(auctionId));
+
+        var page = this.redisRead(redis -> Redis.getAuctionQuestions(redis, auctionId, 0, limit),
+                new Redis.IndexPage(Redis.IndexPage.Status.COLD, List.of()));
+        if (page.status() == Redis.IndexPage.Status.HIT) {
+            var questionDaos = this.getQuestionMany(page.ids());
+            return page.ids().stream().map(questionDaos::get).toList();
+        }
+        if (page.status() == Redis.IndexPage.Status.OUT_OF_WINDOW)
+            return this.mongo.getAuctionQuestions(auctionId, null, limit, this.writeTime(auctionId));
+
+        var version = this.redisRead(redis -> Redis.getAuctionQuestionsVersion(redis, auctionId), null);
+        var recentQuestions = this.mongo.getAuctionQuestions(auctionId, null, Redis.MAX_AUCTION_QUESTIONS);
+        var complete = recentQuestions.size() < Redis.MAX_AUCTION_QUESTIONS;
+        this.redisWrite(redis -> Redis.setAuctionQuestions(redis, auctionId, recentQuestions, complete, version));
+        return recentQuestions.subList(0, Math.min(limit, recentQuestions.size()));
     }
 
     @WithSpan
     public List<AuctionDao> getAuctionsSoonToClose() {
-        var auctionIds = Redis.getSoonToCloseAuctionIds(this.jedis);
+        var auctionIds = this.redisRead(Redis::getSoonToCloseAuctionIds, null);
+        if (auctionIds == null) {
+            var auctionDaos = this.mongo.getAuctionsClosingFirst(AppLogic.MAX_ABOUT_TO_CLOSE_AUCTIONS);
+            this.redisWrite(redis -> Redis.setSoonToCloseAuctions(redis, idsOf(auctionDaos)));
+            return auctionDaos;
+        }
         var auctionDaos = this.getAuctionMany(auctionIds);
         return List.copyOf(auctionDaos.values());
     }
 
     @WithSpan
     public List<AuctionDao> getRecentAuctions() {
-        var auctionIds = Redis.getRecentAuctionIds(this.jedis);
+        var auctionIds = this.redisRead(Redis::getRecentAuctionIds, null);
+        if (auctionIds == null) {
+            var auctionDaos = this.mongo.getRecentAuctions(AppLogic.MAX_RECENT_AUCTIONS);
+            this.redisWrite(redis -> Redis.initRecentAuctions(redis, idsOf(auctionDaos)));
+            return auctionDaos;
+        }
         var auctionDaos = this.getAuctionMany(auctionIds);
         return List.copyOf(auctionDaos.values());
     }
 
     @WithSpan
     public List<AuctionDao> getPopularAuctions() {
-        var auctionIds = Redis.getPopularAuctions(this.jedis);
+        var auctionIds = this.redisRead(Redis::getPopularAuctions, null);
+        if (auctionIds == null) {
+            var auctionDaos = this.mongo.getMostBidAuctions(AppLogic.MAX_MOST_POPULAR_AUCTIONS);
+            this.redisWrite(redis -> Redis.initPopularAuctions(redis, idsOf(auctionDaos)));
+            return auctionDaos;
+        }
         var auctionDaos = this.getAuctionMany(auctionIds);
         return List.copyOf(auctionDaos.values());
     }
 
     /* ------------------------- Bid ------------------------- */
 
+    /**
+     * Create a bid.
+     * Bids that cannot beat the cached top bid, or that target a closed
+     * auction, are rejected by Redis without going to Mongo.
+     */
     @WithSpan
     public BidDao createBid(ObjectId auctionId, BidDao bidDao) throws BidConflictException {
-        bidDao = this.mongo.createBid(auctionId, bidDao);
-        Redis.setBid(this.jedis, bidDao);
-        Redis.setAuctionTopBid(this.jedis, auctionId, bidDao.id);
-        return bidDao;
+        var roundTrips = RoundTripCounter.current();
+        var amount = bidDao.amount;
+        var admission = this.redisRead(redis -> Redis.admitBid(redis, auctionId, amount), Redis.BidAdmission.UNKNOWN);
+        if (admission == Redis.BidAdmission.REJECTED) {
+            RoundTripCounter.record("create_bid", roundTrips);
+            throw new BidConflictException();
+        }
+
+        try {
+            bidDao = this.mongo.createBid(auctionId, bidDao);
+        } catch (BidConflictException e) {
+            // Redis is missing the auction or is behind Mongo, a higher bid
+            // or the close may have come from another node
+            this.seedBidAdmission(auctionId);
+            throw e;
+        }
+        var createdDao = bidDao;
+        this.redisWrite(redis -> Redis.createBid(redis, createdDao));
+        this.recordWriteTime(auctionId);
+        RoundTripCounter.record("create_bid", roundTrips);
+        return createdDao;
+    }
+
+    /**
+     * Get many bids, leaving out the ones that do not exist.
+     */
+    @WithSpan
+    public Map<ObjectId, BidDao> findBidMany(Collection<ObjectId> bidIds) {
+        var bidDaos = this.redisRead(redis -> Redis.getBidMany(redis, bidIds), new HashMap<ObjectId, BidDao>());
+        if (bidDaos.size() == bidIds.size())
+            return bidDaos;
+
+        var missingBidIds = new HashSet<ObjectId>(bidIds);
+        missingBidIds.removeAll(bidDaos.keySet());
+        bidDaos.putAll(this.mongo.findBidMany(missingBidIds));
+        return bidDaos;
     }
 
     @WithSpan
     public Map<ObjectId, BidDao> getBidMany(Collection<ObjectId> bidIds) throws BidNotFoundException {
-        var bidDaos = Redis.getBidMany(this.jedis, bidIds);
+        var bidDaos = this.redisRead(redis -> Redis.getBidMany(redis, bidIds), new HashMap<ObjectId, BidDao>());
         if (bidDaos.size() == bidIds.size())
             return bidDaos;
 
@@ -300,23 +681,150 @@ public class KubeRepo implements AutoCloseable {
 
     @WithSpan
     public QuestionDao createQuestion(QuestionDao questionDao) {
-        questionDao = this.mongo.createQuestion(questionDao);
-        Redis.setQuestion(this.jedis, questionDao);
-        return questionDao;
+        var createdDao = this.mongo.createQuestion(questionDao);
+        this.redisWrite(redis -> Redis.createQuestion(redis, createdDao));
+        this.recordWriteTime(createdDao.auctionId);
+        return createdDao;
     }
 
     @WithSpan
     public QuestionDao createReply(ObjectId questionId, QuestionDao.Reply reply)
             throws QuestionNotFoundException, QuestionAlreadyRepliedException {
         var questionDao = this.mongo.createReply(questionId, reply);
-        Redis.setQuestion(this.jedis, questionDao);
+        this.redisWrite(redis -> Redis.setQuestion(redis, questionDao));
+        this.recordWriteTime(questionDao.auctionId);
         return questionDao;
     }
 
+    @WithSpan
+    public Map<ObjectId, QuestionDao> getQuestionMany(Collection<ObjectId> questionIds)
+            throws QuestionNotFoundException {
+        var questionDaos = this.redisRead(redis -> Redis.getQuestionMany(redis, questionIds),
+                new HashMap<ObjectId, QuestionDao>());
+        if (questionDaos.size() == questionIds.size())
+            return questionDaos;
+
+        var missingQuestionIds = new HashSet<ObjectId>(questionIds);
+        missingQuestionIds.removeAll(questionDaos.keySet());
+
+        var missingQuestionDaos = this.mongo.getQuestionMany(missingQuestionIds);
+        this.redisWrite(redis -> Redis.setQuestionMany(redis, missingQuestionDaos.values()));
+        questionDaos.putAll(missingQuestionDaos);
+
+        return questionDaos;
+    }
+
     @Override
     public void close() throws Exception {
     }
 
     /* ------------------------- Internal ------------------------- */
 
+    /**
+     * Read from Redis, the read is a miss while Redis is unavailable.
+     */
+    private <T> T redisRead(Function<RedisNodes, T> read, T miss) {
+        try {
+            return read.apply(this.redis);
+        } catch (RedisBreaker.UnavailableException e) {
+            return miss;
+        }
+    }
+
+    /**
+     * Write to Redis, the write is skipped while Redis is unavailable.
+     */
+    private void redisWrite(Consumer<RedisNodes> write) {
+        try {
+            write.accept(this.redis);
+        } catch (RedisBreaker.UnavailableException e) {
+            // Entries written before expire on their own
+        }
+    }
+
+    /**
+     * Record the operation time of the write Mongo just made, so that listing
+     * reads of the auction or user it changed see it when they read from a
+     * secondary.
+     */
+    private void recordWriteTime(ObjectId id) {
+        var time = this.mongo.takeWriteTime();
+        if (time != null)
+            this.redisWrite(redis -> Redis.recordWriteTime(redis, id, time));
+    }
+
+    /**
+     * @return the operation time that listing reads of an auction or user must
+     *         wait for, null if it was not written recently
+     */
+    private BsonTimestamp writeTime(ObjectId id) {
+        return this.redisRead(redis -> Redis.getWriteTime(redis, id), null);
+    }
+
+    /**
+     * Start loading the display names of users from Mongo.
+     */
+    private Forked<Map<ObjectId, String>, UserNotFoundException> loadUserDisplayNameMany(Collection<ObjectId> userIds) {
+        if (userIds.isEmpty())
+            return Forked.done(Map.of());
+        return this.asyncMongo.run(() -> displayNameFlight.runMany(userIds, ids -> {
+            var loaded = new HashMap<ObjectId, String>();
+            for (var userDao : this.mongo.getUserDisplayNameMany(ids).values())
+                loaded.put(userDao.id, Kube.userDisplayName(userDao.username, userDao.status));
+            return loaded;
+        }));
+    }
+
+    /**
+     * Add display names loaded from Mongo to the ones read from Redis and cache
+     * them.
+     */
+    private void saveUserDisplayNameMany(Map<ObjectId, String> displayNames, Map<ObjectId, String> loaded) {
+        if (loaded.isEmpty())
+            return;
+        this.redisWrite(redis -> Redis.setUserDisplayNameMany(redis, loaded));
+        displayNames.putAll(loaded);
+    }
+
+    /**
+     * Record the status and top bid of an auction, as Mongo has them, so that
+     * the next losing bids are rejected by Redis. The admission state is
+     * dropped if Mongo cannot be read.
+     */
+    private void seedBidAdmission(ObjectId auctionId) {
+        Mongo.BidState state;
+        try {
+            state = this.mongo.getAuctionBidState(auctionId);
+        } catch (RuntimeException e) {
+            state = null;
+        }
+        var seed = state;
+        this.redisWrite(redis -> {
+            if (seed == null)
+                Redis.resetBidAdmission(redis, auctionId);
+            else
+                Redis.seedBidAdmission(redis, auctionId, seed.status(), seed.topBidAmount());
+        });
+    }
+
+    private static List<ObjectId> idsOf(List<AuctionDao> auctionDaos) {
+        return auctionDaos.stream().map(auctionDao -> auctionDao.id).toList();
+    }
+
+    /**
+     * Cut a page out of a complete list of ids.
+     * 
+     * @param ids    Every id of the listing, in any order.
+     * @param before Only return ids older than this one, null to start from
+     *               the newest id.
+     * @param limit  The maximum number of ids to return.
+     * @return the page, newest first
+     */
+    private static List<ObjectId> idPage(Collection<ObjectId> ids, ObjectId before, int limit) {
+        return ids.stream()
+                .filter(id -> before == null || id.compareTo(before) < 0)
+                .sorted(Comparator.reverseOrder())
+                .limit(limit)
+                .toList();
+    }
 }
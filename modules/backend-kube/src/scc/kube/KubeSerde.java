@@ -16,6 +16,14 @@ public class KubeSerde {
         }
     }
 
+    public static byte[] toJsonBytes(Object object) {
+        try {
+            return objectMapper.writer().writeValueAsBytes(object);
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     public static <T> T fromJson(String json, Class<T> clazz) {
         try {
             return objectMapper.readerFor(clazz).readValue(json);
@@ -13,7 +13,6 @@ import org.apache.commons.pool2.impl.GenericObjectPoolConfig;
 import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.Connection;
 
-import redis.clients.jedis.JedisPool;
 import scc.AuctionService;
 import scc.MediaService;
 import scc.ServiceFactory;
@@ -21,16 +20,26 @@ import scc.UserService;
 import scc.kube.config.KubeEnv;
 
 public class KubeServices {
-    private final JedisPool jedisPool;
+    private final KubeRedis redis;
     private final Mongo mongo;
+    private final AsyncMongo asyncMongo;
     private final Connection rabbitmqConnection;
     private final ObjectPool<Channel> channelPool;
+    private final KubeCache cache;
+    private final KubeRefresher refresher;
 
     public KubeServices() throws IOException, TimeoutException {
         var config = KubeEnv.getKubeConfig();
-        this.jedisPool = Kube.createJedisPool(config.getRedisConfig());
-        this.mongo = new Mongo(config.getMongoConfig());
+        this.redis = KubeRedis.create(config.getRedisConfig(),
+                RedisBreaker.create(KubeEnv.getRedisBreakerConfig()));
+        this.mongo = new Mongo(config.getMongoConfig(), KubeEnv.getInsertBatchConfig());
+        this.asyncMongo = AsyncMongo.create(this.mongo, KubeEnv.getMongoAsyncThreads());
         this.rabbitmqConnection = Rabbitmq.createConnectionFromConfig(config.getRabbitmqConfig());
+        this.cache = KubeCache.create(this.rabbitmqConnection, config.getNearCacheConfig(),
+                KubeEnv.getSessionCacheConfig());
+        this.refresher = KubeRefresher.create(this.redis, this.mongo, KubeEnv.getEarlyRefreshConfig());
+        if (KubeEnv.getEnableWarmup())
+            KubeWarmup.run(this.redis, this.mongo);
 
         var poolConfig = new GenericObjectPoolConfig<Channel>();
         poolConfig.setMinIdle(16);
@@ -64,11 +73,31 @@ public class KubeServices {
     }
 
     public ServiceFactory<UserService> getUserServiceFactory() {
-        return new KubeUserServiceFactory(this.jedisPool, this.mongo);
+        return new KubeUserServiceFactory(this.redis, this.mongo, this.asyncMongo, this.cache, this.refresher);
     }
 
     public ServiceFactory<AuctionService> getAuctionServiceFactory() {
-        return new KubeAuctionServiceFactory(this.jedisPool, this.mongo, this.channelPool);
+        return new KubeAuctionServiceFactory(this.redis, this.mongo, this.asyncMongo, this.cache,
+                this.refresher, this.channelPool);
+    }
+
+    /**
+     * Call a listener whenever an auction is created, bid on, updated or
+     * closed, or a user is updated, on any pod. Events carry no data and may
+     * be delivered more than once, the listener is called on a RabbitMQ
+     * thread and must not block.
+     */
+    public void subscribeAuctionEvents(Runnable listener) throws IOException {
+        var channel = this.rabbitmqConnection.createChannel();
+        Rabbitmq.declareBroadcastBidsExchange(channel);
+        Rabbitmq.declareBroadcastAuctionsExchange(channel);
+        Rabbitmq.declareBroadcastInvalidationsExchange(channel);
+        var queue = channel.queueDeclare("", false, true, true, null).getQueue();
+        channel.queueBind(queue, Rabbitmq.EXCHANGE_BROADCAST_BIDS, "");
+        channel.queueBind(queue, Rabbitmq.EXCHANGE_BROADCAST_AUCTIONS, "");
+        channel.queueBind(queue, Rabbitmq.EXCHANGE_BROADCAST_INVALIDATIONS, "");
+        channel.basicConsume(queue, true, (consumerTag, message) -> listener.run(), consumerTag -> {
+        });
     }
 
     public ServiceFactory<MediaService> getMediaServiceFactory() {
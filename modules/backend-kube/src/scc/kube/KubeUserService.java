@@ -3,6 +3,7 @@ package scc.kube;
 import java.time.LocalDateTime;
 import java.time.ZoneOffset;
 import java.util.Optional;
+import java.util.logging.Logger;
 
 import io.opentelemetry.instrumentation.annotations.WithSpan;
 import scc.SessionToken;
@@ -14,6 +15,7 @@ import scc.item.UserItem;
 import scc.kube.dao.UserDao;
 
 public class KubeUserService implements UserService {
+    private static final Logger logger = Logger.getLogger(KubeUserService.class.getName());
 
     private final Auth auth;
     private final KubeRepo repo;
@@ -57,7 +59,9 @@ public class KubeUserService implements UserService {
         this.auth.validate(token, username);
 
         var userId = this.repo.getUserIdFromUsername(username);
+        this.auth.revokeSessions(username);
         var userDao = this.repo.deactivateUser(userId);
+        this.revokeSessionsAfterChange(username);
         // TODO: rabbit send deactivate user
 
         return this.userDaoToItem(userDao);
@@ -80,7 +84,11 @@ public class KubeUserService implements UserService {
         if (ops.shouldUpdateImage())
             userDao.profileImageId = Kube.mediaIdToString(ops.getImageId());
 
+        if (ops.shouldUpdatePassword())
+            this.auth.revokeSessions(username);
         userDao = this.repo.updateUser(userId, userDao);
+        if (ops.shouldUpdatePassword())
+            this.revokeSessionsAfterChange(username);
         var userItem = this.userDaoToItem(userDao);
 
         return userItem;
@@ -95,6 +103,19 @@ public class KubeUserService implements UserService {
     public void close() throws Exception {
     }
 
+    /**
+     * Revoke the sessions created between the revocation that preceded a
+     * change and the change itself. The change is already stored, a failure
+     * is only logged.
+     */
+    private void revokeSessionsAfterChange(String username) {
+        try {
+            this.auth.revokeSessions(username);
+        } catch (RuntimeException e) {
+            logger.severe("Failed to revoke sessions of " + username + " after the change: " + e);
+        }
+    }
+
     private void validateCreateUserParams(CreateUserParams params) throws BadRequestException {
         if (params.username().isBlank() || params.name().isBlank() || params.password().isBlank())
             throw new BadRequestException();
@@ -3,29 +3,37 @@ package scc.kube;
 import java.util.List;
 
 import io.opentelemetry.instrumentation.annotations.WithSpan;
-import redis.clients.jedis.JedisPool;
 import scc.ServiceFactory;
 import scc.UserService;
+import scc.kube.utils.RoundTripCounter;
 import scc.utils.UserServiceWithResources;
 
 public class KubeUserServiceFactory implements ServiceFactory<UserService> {
 
-    private final JedisPool jedisPool;
+    private final KubeRedis redis;
     private final Mongo mongo;
+    private final AsyncMongo asyncMongo;
+    private final KubeCache cache;
+    private final KubeRefresher refresher;
 
-    public KubeUserServiceFactory(JedisPool jedisPool, Mongo mongo) {
-        this.jedisPool = jedisPool;
+    public KubeUserServiceFactory(KubeRedis redis, Mongo mongo, AsyncMongo asyncMongo, KubeCache cache,
+            KubeRefresher refresher) {
+        this.redis = redis;
         this.mongo = mongo;
+        this.asyncMongo = asyncMongo;
+        this.cache = cache;
+        this.refresher = refresher;
     }
 
     @Override
     @WithSpan
     public UserService createService() {
-        var jedis = this.jedisPool.getResource();
-        var auth = new RedisAuth(jedis, mongo);
-        var repo = new KubeRepo(jedis, mongo);
+        var roundTrips = RoundTripCounter.request("user_request");
+        var redis = this.redis.acquire();
+        var auth = new RedisAuth(redis, mongo, cache);
+        var repo = new KubeRepo(redis, mongo, cache, refresher, asyncMongo);
         var service = new KubeUserService(auth, repo);
-        return new UserServiceWithResources(service, List.of(jedis));
+        return new UserServiceWithResources(service, List.of(roundTrips, redis));
     }
 
 }
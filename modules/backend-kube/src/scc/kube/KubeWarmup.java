@@ -0,0 +1,102 @@
+package scc.kube;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.logging.Logger;
+
+import org.bson.types.ObjectId;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+import scc.AppLogic;
+import scc.exception.UserNotFoundException;
+import scc.kube.dao.AuctionDao;
+
+/**
+ * Loads the front-page listings, and the auctions, top bids and users they
+ * show, from Mongo into Redis. Run before a pod reports ready so that the
+ * first requests after a deploy or a Redis restart do not all miss at once.
+ *
+ * Listings that already exist in Redis are kept, everything they show is
+ * written again with a fresh TTL.
+ */
+public class KubeWarmup {
+    private static final Logger logger = Logger.getLogger(KubeWarmup.class.getName());
+
+    private static final DoubleHistogram durationHistogram = GlobalOpenTelemetry.getMeter("scc.kube")
+            .histogramBuilder("warmup.duration")
+            .setUnit("ms")
+            .build();
+    private static final LongCounter keysCounter = GlobalOpenTelemetry.getMeter("scc.kube")
+            .counterBuilder("warmup.keys")
+            .setDescription("Keys and hash fields written by warm-ups")
+            .build();
+
+    /**
+     * Failures are logged, a pod that could not warm up still starts.
+     */
+    public static void run(KubeRedis kubeRedis, Mongo mongo) {
+        var start = System.nanoTime();
+        try (var redis = kubeRedis.acquire()) {
+            var keys = 0L;
+
+            var recent = mongo.getRecentAuctions(AppLogic.MAX_RECENT_AUCTIONS);
+            if (Redis.initRecentAuctions(redis, idsOf(recent)))
+                keys++;
+            var popular = mongo.getMostBidAuctions(AppLogic.MAX_MOST_POPULAR_AUCTIONS);
+            if (Redis.initPopularAuctions(redis, idsOf(popular)))
+                keys++;
+            var soonToClose = mongo.getAuctionsClosingFirst(AppLogic.MAX_ABOUT_TO_CLOSE_AUCTIONS);
+            Redis.setSoonToCloseAuctions(redis, idsOf(soonToClose));
+            keys++;
+
+            // Load what the listings in Redis show, they may predate this
+            // warm-up
+            var auctionIds = new LinkedHashSet<ObjectId>();
+            for (var listing : Arrays.asList(
+                    Redis.getRecentAuctionIds(redis),
+                    Redis.getPopularAuctions(redis),
+                    Redis.getSoonToCloseAuctionIds(redis))) {
+                if (listing != null)
+                    auctionIds.addAll(listing);
+            }
+            var auctions = mongo.getAuctionMany(new ArrayList<>(auctionIds));
+            Redis.setAuctionMany(redis, auctions.values());
+            keys += auctions.size();
+
+            var topBids = mongo.getAuctionTopBidMany(auctionIds);
+            Redis.setAuctionTopBidMany(redis, topBids);
+            keys += 2 * topBids.size();
+
+            var userIds = new HashSet<ObjectId>();
+            for (var auctionDao : auctions.values())
+                userIds.add(auctionDao.userId);
+            for (var bidDao : topBids.values())
+                userIds.add(bidDao.userId);
+            try {
+                var users = mongo.getUserMany(userIds);
+                Redis.setUserMany(redis, users.values());
+                keys += 3 * users.size();
+            } catch (UserNotFoundException e) {
+                // A user was deleted since, the names are loaded on demand
+                logger.warning("Warm-up skipped users: " + e);
+            }
+
+            var tookMillis = (System.nanoTime() - start) / 1_000_000.0;
+            durationHistogram.record(tookMillis);
+            keysCounter.add(keys);
+            logger.info(String.format("Warm-up loaded %d keys (%d auctions) in %.0f ms",
+                    keys, auctions.size(), tookMillis));
+        } catch (Exception e) {
+            logger.warning("Warm-up failed: " + e);
+        }
+    }
+
+    private static List<ObjectId> idsOf(List<AuctionDao> auctionDaos) {
+        return auctionDaos.stream().map(auctionDao -> auctionDao.id).toList();
+    }
+}
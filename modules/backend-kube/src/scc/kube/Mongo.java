@@ -1,37 +1,59 @@
 package scc.kube;
 
 import java.io.Closeable;
+import java.time.Duration;
 import java.time.LocalDateTime;
+import java.time.ZoneOffset;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+import java.util.function.Consumer;
+import java.util.function.Function;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
+import org.bson.BsonTimestamp;
 import org.bson.Document;
 import org.bson.codecs.configuration.CodecRegistries;
 import org.bson.codecs.pojo.PojoCodecProvider;
 import org.bson.conversions.Bson;
 import org.bson.types.ObjectId;
 
+import com.mongodb.ClientSessionOptions;
 import com.mongodb.ConnectionString;
+import com.mongodb.ErrorCategory;
 import com.mongodb.MongoWriteException;
+import com.mongodb.ReadPreference;
+import com.mongodb.client.ClientSession;
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoClients;
 import com.mongodb.client.MongoCollection;
 import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Accumulators;
 import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.CountOptions;
+import com.mongodb.client.model.FindOneAndUpdateOptions;
 import com.mongodb.client.model.Filters;
 import com.mongodb.client.model.IndexOptions;
 import com.mongodb.client.model.Indexes;
 import com.mongodb.client.model.Projections;
+import com.mongodb.client.model.PushOptions;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.ReplaceOptions;
+import com.mongodb.client.model.ReturnDocument;
+import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.UpdateOptions;
 import com.mongodb.client.model.Updates;
+import com.mongodb.connection.ClusterType;
 
 import io.opentelemetry.instrumentation.annotations.WithSpan;
-import scc.PagingWindow;
 import scc.Result;
 import scc.ServiceError;
 import scc.exception.AuctionNotFoundException;
@@ -41,23 +63,73 @@ import scc.exception.QuestionAlreadyRepliedException;
 import scc.exception.QuestionNotFoundException;
 import scc.exception.UserAlreadyExistsException;
 import scc.exception.UserNotFoundException;
+import scc.kube.config.InsertBatchConfig;
 import scc.kube.config.MongoConfig;
 import scc.kube.dao.AuctionDao;
 import scc.kube.dao.AuctionIdWithBidDao;
+import scc.kube.dao.BidBucketDao;
 import scc.kube.dao.BidDao;
+import scc.kube.dao.FollowDao;
 import scc.kube.dao.QuestionDao;
 import scc.kube.dao.UserDao;
+import scc.kube.dao.UserDisplayNameDao;
+import scc.kube.utils.InsertBatcher;
 
 public class Mongo implements Closeable {
     private static final Logger logger = Logger.getLogger(Mongo.class.getName());
 
+    /**
+     * Bids per bid history bucket.
+     */
+    public static final int BID_BUCKET_SIZE = 200;
+
+    /**
+     * Listings that may be read from secondaries, each with its own read
+     * preference. Reads that rebuild a cached listing always go to the
+     * primary, a stale copy would stay cached.
+     */
+    public static enum Listing {
+        SOON_TO_CLOSE, USER_AUCTIONS, FOLLOWED_AUCTIONS, AUCTION_QUESTIONS, AUCTION_BIDS
+    }
+
+    private static final ClientSessionOptions CAUSAL_SESSION = ClientSessionOptions.builder()
+            .causallyConsistent(true)
+            .build();
+
+    // Operation time of the last tracked write of each thread
+    private static final ThreadLocal<BsonTimestamp> writeTime = new ThreadLocal<>();
+
     public final MongoClient client;
     public final MongoDatabase database;
     public final MongoCollection<AuctionDao> auctionCollection;
+    public final MongoCollection<BidBucketDao> bidCollection;
+    // Every bid by its id, for lookups that do not know the bid's bucket
+    public final MongoCollection<BidDao> bidLookupCollection;
     public final MongoCollection<QuestionDao> questionCollection;
+    public final MongoCollection<FollowDao> followCollection;
+
+    /**
+     * What decides whether an auction takes a bid.
+     * 
+     * @param topBidAmount The amount of the top bid, null if there is none.
+     */
+    public static record BidState(AuctionDao.Status status, Double topBidAmount) {
+    }
     public final MongoCollection<UserDao> userCollection;
+    private final EnumMap<Listing, ReadPreference> listingReadPreferences;
+    // Null unless inserts are batched
+    private final InsertBatcher<AuctionDao> auctionBatcher;
+    private final InsertBatcher<QuestionDao> questionBatcher;
 
     public Mongo(MongoConfig config) {
+        this(config, new InsertBatchConfig(0, Duration.ZERO));
+    }
+
+    /**
+     * @param batchConfig How auction and question inserts are grouped into
+     *                    batches, for pods that take bursts of them.
+     */
+    public Mongo(MongoConfig config, InsertBatchConfig batchConfig) {
         var pojoCodecRegistry = CodecRegistries.fromProviders(PojoCodecProvider.builder().automatic(true).build());
         var codecRegistry = CodecRegistries.fromRegistries(
                 com.mongodb.MongoClientSettings.getDefaultCodecRegistry(),
@@ -71,31 +143,92 @@ public class Mongo implements Closeable {
 
         this.client = client;
         this.database = database;
+        this.listingReadPreferences = parseListingReadPreferences(config.listingReadPreference,
+                config.maxStalenessSeconds);
 
         // Auctions
         this.auctionCollection = database.getCollection(config.auctionCollection, AuctionDao.class);
         this.auctionCollection.createIndex(Indexes.hashed("user_id"));
+        this.auctionCollection.createIndex(Indexes.compoundIndex(
+                Indexes.ascending("user_id"),
+                Indexes.descending("_id")));
         this.auctionCollection.createIndex(Indexes.descending("create_time"));
         this.auctionCollection.createIndex(Indexes.descending("close_time"));
-        this.auctionCollection.createIndex(Indexes.descending("bids._id"));
-        this.auctionCollection.createIndex(Indexes.descending("bids.user_id"));
+        this.auctionCollection.createIndex(Indexes.descending("top_bid_amount"));
+        this.auctionCollection.createIndex(Indexes.descending("bid_count"));
+
+        // Bids, the history of each auction in buckets
+        this.bidCollection = database.getCollection(config.bidCollection, BidBucketDao.class);
+        this.bidCollection.createIndex(Indexes.compoundIndex(
+                Indexes.ascending("auction_id"),
+                Indexes.descending("seq")),
+                new IndexOptions().unique(true));
+        this.bidCollection.createIndex(Indexes.compoundIndex(
+                Indexes.ascending("auction_id"),
+                Indexes.descending("min_amount")));
+        this.bidCollection.createIndex(Indexes.descending("bids._id"));
+        this.bidLookupCollection = database.getCollection(config.bidLookupCollection, BidDao.class);
 
         // Questions
         this.questionCollection = database.getCollection(config.questionCollection, QuestionDao.class);
         this.questionCollection.createIndex(Indexes.hashed("auction_id"));
+        this.questionCollection.createIndex(Indexes.compoundIndex(
+                Indexes.ascending("auction_id"),
+                Indexes.descending("_id")));
         this.questionCollection.createIndex(Indexes.hashed("user_id"));
         this.questionCollection.createIndex(Indexes.descending("create_time"));
 
+        // Follows, the auctions each user has bid on
+        this.followCollection = database.getCollection(config.followCollection, FollowDao.class);
+        this.followCollection.createIndex(Indexes.compoundIndex(
+                Indexes.ascending("user_id"),
+                Indexes.ascending("auction_id")),
+                new IndexOptions().unique(true));
+        this.followCollection.createIndex(Indexes.compoundIndex(
+                Indexes.ascending("user_id"),
+                Indexes.ascending("status"),
+                Indexes.descending("last_bid_time"),
+                Indexes.descending("auction_id")));
+        this.followCollection.createIndex(Indexes.hashed("auction_id"));
+
         // Users
         this.userCollection = database.getCollection(config.userCollection, UserDao.class);
         this.userCollection.createIndex(Indexes.text("username"), new IndexOptions().unique(true));
+
+        if (batchConfig.maxDocuments > 1) {
+            this.auctionBatcher = new InsertBatcher<>(client, this.auctionCollection, batchConfig.maxDocuments,
+                    batchConfig.window);
+            this.questionBatcher = new InsertBatcher<>(client, this.questionCollection, batchConfig.maxDocuments,
+                    batchConfig.window);
+        } else {
+            this.auctionBatcher = null;
+            this.questionBatcher = null;
+        }
     }
 
     @Override
     public void close() {
+        if (this.auctionBatcher != null) {
+            this.auctionBatcher.close();
+            this.questionBatcher.close();
+        }
         this.client.close();
     }
 
+    /**
+     * Take the operation time of the last bid, auction, question, reply or
+     * follow written by the calling thread. Listing reads given this time see
+     * that write, even when they read from a secondary.
+     *
+     * @return the operation time, null if there was no such write since the
+     *         last call or the server does not report operation times
+     */
+    public BsonTimestamp takeWriteTime() {
+        var time = writeTime.get();
+        writeTime.remove();
+        return time;
+    }
+
     /* ------------------------- Auction ------------------------- */
 
     @WithSpan
@@ -108,6 +241,36 @@ public class Mongo implements Closeable {
         return auctionDao;
     }
 
+    /**
+     * Get the status and top bid amount of an auction, read from the primary.
+     * 
+     * @return the state, or null if the auction does not exist
+     */
+    @WithSpan
+    public BidState getAuctionBidState(ObjectId auctionId) {
+        var filter = Filters.eq("_id", auctionId);
+        var document = this.auctionCollection.withDocumentClass(Document.class).find(filter)
+                .projection(Projections.include("status", "top_bid_amount"))
+                .first();
+        if (document == null)
+            return null;
+        var status = AuctionDao.Status.valueOf(document.getString("status"));
+        var topAmount = document.get("top_bid_amount", Number.class);
+        return new BidState(status, topAmount != null ? topAmount.doubleValue() : null);
+    }
+
+    /**
+     * Get the status of an auction, read from the primary.
+     * 
+     * @return the status, or null if the auction does not exist
+     */
+    @WithSpan
+    public AuctionDao.Status getAuctionStatus(ObjectId auctionId) {
+        var filter = Filters.eq("_id", auctionId);
+        var auctionDao = this.auctionCollection.find(filter).projection(Projections.include("status")).first();
+        return auctionDao != null ? auctionDao.status : null;
+    }
+
     @WithSpan
     public HashMap<ObjectId, AuctionDao> getAuctionMany(List<ObjectId> auctionIds) {
         var filter = Filters.in("_id", auctionIds);
@@ -138,7 +301,14 @@ public class Mongo implements Closeable {
         assert auctionDao.initialPrice >= 0 : "Auction initial price must be non-negative";
         assert auctionDao.status == AuctionDao.Status.OPEN : "Auction status must be open";
 
-        this.auctionCollection.insertOne(auctionDao);
+        if (this.auctionBatcher != null) {
+            writeTime.set(this.auctionBatcher.insert(auctionDao));
+        } else {
+            this.trackedWrite(session -> {
+                this.auctionCollection.insertOne(session, auctionDao);
+                return null;
+            });
+        }
         assert auctionDao.id != null;
 
         return auctionDao;
@@ -162,7 +332,8 @@ public class Mongo implements Closeable {
         if (auctionDao.imageId != null)
             updates.add(Updates.set("image_id", auctionDao.imageId));
 
-        var updated = this.auctionCollection.findOneAndUpdate(Filters.eq("_id", auctionId), updates);
+        var updated = this.auctionCollection.findOneAndUpdate(Filters.eq("_id", auctionId), updates,
+                new FindOneAndUpdateOptions().projection(auctionDaoProjection()));
         if (updated == null)
             throw new AuctionNotFoundException(auctionId.toHexString());
 
@@ -175,7 +346,7 @@ public class Mongo implements Closeable {
         var filter = Filters.in("_id", auctionIds);
         var projection = Projections.fields(
                 Projections.include("_id"),
-                new Document("bid", new Document("$first", "$bids")));
+                Projections.computed("bid", "$top_bid"));
         var daos = this.auctionCollection.find(filter, AuctionIdWithBidDao.class).projection(projection);
         var map = new HashMap<ObjectId, BidDao>();
         for (var dao : daos) {
@@ -190,7 +361,8 @@ public class Mongo implements Closeable {
         logger.fine("closeAuction: trying to close" + auctionId);
         var updated = this.auctionCollection.findOneAndUpdate(
                 Filters.eq("_id", auctionId),
-                Updates.set("status", AuctionDao.Status.CLOSED.toString()));
+                Updates.set("status", AuctionDao.Status.CLOSED.toString()),
+                new FindOneAndUpdateOptions().projection(auctionDaoProjection()));
         if (updated == null)
             throw new AuctionNotFoundException(auctionId.toHexString());
         updated.status = AuctionDao.Status.CLOSED;
@@ -210,42 +382,116 @@ public class Mongo implements Closeable {
                 Filters.eq("status", AuctionDao.Status.OPEN.toString()),
                 Filters.lt("close_time", before));
         var projection = auctionDaoProjection();
-        return this.auctionCollection.find(filter).projection(projection).into(new ArrayList<AuctionDao>());
+        return this.read(Listing.SOON_TO_CLOSE, null, (session, preference) -> this.auctionCollection
+                .withReadPreference(preference)
+                .find(session, filter).projection(projection).into(new ArrayList<AuctionDao>()));
+    }
+
+    @WithSpan
+    public List<AuctionDao> getRecentAuctions(int limit) {
+        var projection = auctionDaoProjection();
+        return this.auctionCollection.find()
+                .projection(projection)
+                .sort(Sorts.descending("create_time"))
+                .limit(limit)
+                .into(new ArrayList<AuctionDao>());
+    }
+
+    /**
+     * Open auctions that close first, in closing order.
+     */
+    @WithSpan
+    public List<AuctionDao> getAuctionsClosingFirst(int limit) {
+        var filter = Filters.eq("status", AuctionDao.Status.OPEN.toString());
+        var projection = auctionDaoProjection();
+        return this.read(Listing.SOON_TO_CLOSE, null, (session, preference) -> this.auctionCollection
+                .withReadPreference(preference)
+                .find(session, filter)
+                .projection(projection)
+                .sort(Sorts.ascending("close_time"))
+                .limit(limit)
+                .into(new ArrayList<AuctionDao>()));
+    }
+
+    /**
+     * Open auctions with the most bids, most bids first.
+     */
+    @WithSpan
+    public List<AuctionDao> getMostBidAuctions(int limit) {
+        var filter = Filters.eq("status", AuctionDao.Status.OPEN.toString());
+        var projection = auctionDaoProjection();
+        return this.auctionCollection.find(filter)
+                .projection(projection)
+                .sort(Sorts.descending("bid_count"))
+                .limit(limit)
+                .into(new ArrayList<AuctionDao>());
     }
 
     /* ------------------------- Bid ------------------------- */
 
     @WithSpan
     public Result<BidDao, ServiceError> getBid(ObjectId auctionId, ObjectId bidId) {
-        var pipeline = Arrays.asList(
-                Aggregates.match(Filters.eq("_id", auctionId)),
-                Aggregates.unwind("$bids"),
-                Aggregates.match(Filters.eq("bids._id", bidId)),
-                Aggregates.replaceRoot("$bids"));
-        var bidDao = this.auctionCollection.aggregate(pipeline, BidDao.class).first();
-        if (bidDao == null)
+        var bidDao = this.bidLookupCollection.find(Filters.eq("_id", bidId)).first();
+        if (bidDao != null) {
+            if (!bidDao.auctionId.equals(auctionId))
+                return Result.err(ServiceError.BID_NOT_FOUND);
+            return Result.ok(bidDao);
+        }
+
+        // Bids placed before the lookup collection existed are only in their bucket
+        var filter = Filters.and(
+                Filters.eq("auction_id", auctionId),
+                Filters.eq("bids._id", bidId));
+        var projection = Projections.elemMatch("bids", Filters.eq("_id", bidId));
+        var bucketDao = this.bidCollection.find(filter).projection(projection).first();
+        if (bucketDao == null || bucketDao.bids == null || bucketDao.bids.isEmpty())
             return Result.err(ServiceError.BID_NOT_FOUND);
-        return Result.ok(bidDao);
+        return Result.ok(bucketDao.bids.get(0));
     }
 
+    /**
+     * Get bids by their ids in a single query on the bid lookup collection.
+     * Bids placed before the lookup collection existed are read from their
+     * buckets instead.
+     */
     @WithSpan
     public Map<ObjectId, BidDao> getBidMany(Collection<ObjectId> bidIds) throws BidNotFoundException {
-        var pipeline = Arrays.asList(
-                Aggregates.match(Filters.in("bids._id", bidIds)),
-                Aggregates.unwind("$bids"),
-                Aggregates.replaceRoot("$bids"),
-                Aggregates.match(Filters.in("_id", bidIds)));
-        var bidDaos = this.auctionCollection.aggregate(pipeline, BidDao.class).into(new ArrayList<BidDao>());
-        var bidMap = new HashMap<ObjectId, BidDao>();
-        for (var bidDao : bidDaos)
-            bidMap.put(bidDao.id, bidDao);
+        var bidMap = this.findBidMany(bidIds);
         if (bidMap.size() != bidIds.size())
             throw new BidNotFoundException();
         return bidMap;
     }
 
+    /**
+     * Get bids by their ids like {@link #getBidMany}, leaving out the ones
+     * that do not exist.
+     */
+    @WithSpan
+    public Map<ObjectId, BidDao> findBidMany(Collection<ObjectId> bidIds) {
+        var bidMap = new HashMap<ObjectId, BidDao>();
+        for (var bidDao : this.bidLookupCollection.find(Filters.in("_id", bidIds)))
+            bidMap.put(bidDao.id, bidDao);
+
+        if (bidMap.size() != bidIds.size()) {
+            var missingBidIds = bidIds.stream().filter(id -> !bidMap.containsKey(id)).toList();
+            var pipeline = Arrays.asList(
+                    Aggregates.match(Filters.in("bids._id", missingBidIds)),
+                    Aggregates.unwind("$bids"),
+                    Aggregates.replaceRoot("$bids"),
+                    Aggregates.match(Filters.in("_id", missingBidIds)));
+            for (var bidDao : this.bidCollection.aggregate(pipeline, BidDao.class))
+                bidMap.put(bidDao.id, bidDao);
+        }
+        return bidMap;
+    }
+
     /**
      * Create a new bid.
+     * The bid must beat the top bid recorded on the auction, which is then
+     * replaced in a single conditional update. The bid is then added to the
+     * bid lookup collection and appended to the history bucket given by its
+     * position. The three writes are one transaction where the deployment
+     * supports them, see {@link #trackedTransaction}.
      * Required fields: userId, userIdDisplay, amount, createTime.
      * 
      * @param auctionId ID of the auction to bid on
@@ -262,33 +508,171 @@ public class Mongo implements Closeable {
 
         bidDao.id = new ObjectId();
         bidDao.auctionId = auctionId;
-        var filterLess = new Document().append("$expr", new Document("$lt", Arrays.asList(
-                new Document().append("$getField", new Document("field", "amount").append("input", new Document(
-                        "$arrayElemAt", Arrays.asList("$bids", -1)))),
-                bidDao.amount)));
 
         var filter = Filters.and(
                 Filters.eq("_id", auctionId),
-                Filters.or(filterLess, Filters.exists("bids", false)),
-                Filters.eq("status", AuctionDao.Status.OPEN.toString()));
+                Filters.eq("status", AuctionDao.Status.OPEN.toString()),
+                Filters.or(
+                        Filters.lt("top_bid_amount", bidDao.amount),
+                        // First bid, auctions that still hold their bids inline
+                        // are migrated below before they take one
+                        Filters.and(Filters.exists("top_bid_amount", false), Filters.exists("bids", false))));
+        var updates = Updates.combine(
+                Updates.set("top_bid_amount", bidDao.amount),
+                Updates.set("top_bid_id", bidDao.id),
+                Updates.set("top_bid", bidDao),
+                Updates.inc("bid_count", 1));
+        var options = new FindOneAndUpdateOptions()
+                .projection(Projections.include("bid_count"))
+                .returnDocument(ReturnDocument.AFTER);
 
-        var updated = this.auctionCollection.findOneAndUpdate(filter, Updates.push("bids", bidDao));
-        if (updated == null)
+        var created = this.placeBid(filter, updates, options, bidDao);
+        // Not migrated yet, or written to by a pod that predates the buckets
+        if (!created && this.hasInlineBids(auctionId) && this.migrateInlineBids(auctionId) >= 0)
+            created = this.placeBid(filter, updates, options, bidDao);
+        if (!created)
             throw new BidConflictException();
-
-        // db.auctions.find({$expr: {$gt: [{$getField: {field:"amount", input:
-        // {$arrayElemAt: ["$bids", -1]}}}, 10]}})
         return bidDao;
     }
 
-    public List<BidDao> getAuctionBids(ObjectId auctionId, PagingWindow window) {
-        var aggregation = List.of(
-                Aggregates.match(Filters.eq("_id", auctionId)),
-                Aggregates.unwind("$bids"),
-                Aggregates.skip(window.skip),
-                Aggregates.limit(window.limit));
-        var bids = this.auctionCollection.aggregate(aggregation, BidDao.class).into(new ArrayList<BidDao>());
-        return bids;
+    private boolean placeBid(Bson filter, Bson updates, FindOneAndUpdateOptions options, BidDao bidDao) {
+        return this.trackedTransaction(session -> {
+            var updated = this.auctionCollection.withDocumentClass(Document.class)
+                    .findOneAndUpdate(session, filter, updates, options);
+            if (updated == null)
+                return false;
+            this.bidLookupCollection.insertOne(session, bidDao);
+            this.appendBid(session, bidDao, updated.getInteger("bid_count") - 1);
+            return true;
+        });
+    }
+
+    private boolean hasInlineBids(ObjectId auctionId) {
+        var filter = Filters.and(Filters.eq("_id", auctionId), Filters.exists("bids", true));
+        return this.auctionCollection.countDocuments(filter, new CountOptions().limit(1)) > 0;
+    }
+
+    /**
+     * Get a page of the bids of an auction, newest first.
+     * Amounts increase from one bucket to the next, so the page starts in the
+     * newest bucket whose lowest amount is below the cursor and only the
+     * buckets that can hold the page are unwound.
+     * 
+     * @param auctionId The ID of the auction.
+     * @param before    Only return bids lower than this amount, null to start
+     *                  from the top bid.
+     * @param limit     The maximum number of bids to return.
+     * @return the bids of the page
+     */
+    @WithSpan
+    public List<BidDao> getAuctionBids(ObjectId auctionId, Double before, int limit) {
+        return this.getAuctionBids(null, auctionId, before, limit, null);
+    }
+
+    /**
+     * Get a page of the bids of an auction as a listing read, see
+     * {@link #getAuctionBids(ObjectId, Double, int)}.
+     * 
+     * @param after Operation time of a write the page must reflect, null if
+     *              none.
+     */
+    @WithSpan
+    public List<BidDao> getAuctionBids(ObjectId auctionId, Double before, int limit, BsonTimestamp after) {
+        return this.getAuctionBids(Listing.AUCTION_BIDS, auctionId, before, limit, after);
+    }
+
+    private List<BidDao> getAuctionBids(Listing listing, ObjectId auctionId, Double before, int limit,
+            BsonTimestamp after) {
+        if (limit <= 0)
+            return List.of();
+        // The first bucket holds at least one bid of the page, the older ones are full
+        var buckets = limit / BID_BUCKET_SIZE + 2;
+        var aggregation = new ArrayList<Bson>();
+        if (before == null) {
+            aggregation.add(Aggregates.match(Filters.eq("auction_id", auctionId)));
+            aggregation.add(Aggregates.sort(Sorts.descending("seq")));
+        } else {
+            aggregation.add(Aggregates.match(Filters.and(
+                    Filters.eq("auction_id", auctionId),
+                    Filters.lt("min_amount", before))));
+            aggregation.add(Aggregates.sort(Sorts.descending("min_amount")));
+        }
+        aggregation.add(Aggregates.limit(buckets));
+        aggregation.add(Aggregates.project(new Document("bids", new Document("$reverseArray", "$bids"))));
+        aggregation.add(Aggregates.unwind("$bids"));
+        if (before != null)
+            aggregation.add(Aggregates.match(Filters.lt("bids.amount", before)));
+        aggregation.add(Aggregates.limit(limit));
+        aggregation.add(Aggregates.replaceRoot("$bids"));
+        return this.read(listing, after, (session, preference) -> this.bidCollection
+                .withReadPreference(preference)
+                .aggregate(session, aggregation, BidDao.class).into(new ArrayList<BidDao>()));
+    }
+
+    /**
+     * Call a consumer with the id of every auction that still holds its bids
+     * inline, in the schema before bid buckets.
+     */
+    public void forEachAuctionWithInlineBids(Consumer<ObjectId> consumer) {
+        var filter = Filters.exists("bids", true);
+        var projection = Projections.include("_id");
+        for (var auctionDao : this.auctionCollection.find(filter).projection(projection).batchSize(1000))
+            consumer.accept(auctionDao.id);
+    }
+
+    /**
+     * Move the inline bids of an auction to bid buckets and the bid lookup
+     * collection and record its top bid. Can be run again on an auction that
+     * failed halfway.
+     *
+     * @return the number of bids moved, or -1 if a bid was placed meanwhile
+     */
+    public int migrateInlineBids(ObjectId auctionId) {
+        var auctionDocument = this.auctionCollection.withDocumentClass(Document.class)
+                .find(Filters.eq("_id", auctionId))
+                .projection(Projections.include("bids"))
+                .first();
+        if (auctionDocument == null || !auctionDocument.containsKey("bids"))
+            return 0;
+
+        // Bids were pushed in increasing amount
+        var bids = auctionDocument.getList("bids", Document.class);
+        var buckets = this.bidCollection.withDocumentClass(Document.class);
+        for (var from = 0; from < bids.size(); from += BID_BUCKET_SIZE) {
+            var seq = from / BID_BUCKET_SIZE;
+            var slice = bids.subList(from, Math.min(from + BID_BUCKET_SIZE, bids.size()));
+            var bucket = new Document("auction_id", auctionId)
+                    .append("seq", seq)
+                    .append("count", slice.size())
+                    .append("min_amount", slice.get(0).get("amount"))
+                    .append("bids", slice);
+            buckets.replaceOne(
+                    Filters.and(Filters.eq("auction_id", auctionId), Filters.eq("seq", seq)),
+                    bucket,
+                    new ReplaceOptions().upsert(true));
+        }
+        var lookups = new ArrayList<ReplaceOneModel<Document>>(bids.size());
+        for (var bid : bids)
+            lookups.add(new ReplaceOneModel<>(
+                    Filters.eq("_id", bid.get("_id")),
+                    new Document(bid).append("auction_id", auctionId),
+                    new ReplaceOptions().upsert(true)));
+        if (!lookups.isEmpty())
+            this.bidLookupCollection.withDocumentClass(Document.class)
+                    .bulkWrite(lookups, new BulkWriteOptions().ordered(false));
+
+        var updates = new ArrayList<Bson>();
+        updates.add(Updates.unset("bids"));
+        updates.add(Updates.set("bid_count", bids.size()));
+        if (!bids.isEmpty()) {
+            var topBid = bids.get(bids.size() - 1);
+            updates.add(Updates.set("top_bid_amount", topBid.get("amount")));
+            updates.add(Updates.set("top_bid_id", topBid.get("_id")));
+            updates.add(Updates.set("top_bid", topBid));
+        }
+        var filter = Filters.and(Filters.eq("_id", auctionId), Filters.size("bids", bids.size()));
+        var result = this.auctionCollection.updateOne(filter, Updates.combine(updates));
+        return result.getModifiedCount() == 1 ? bids.size() : -1;
     }
 
     /* ------------------------- Question ------------------------- */
@@ -308,6 +692,17 @@ public class Mongo implements Closeable {
         return question;
     }
 
+    @WithSpan
+    public Map<ObjectId, QuestionDao> getQuestionMany(Collection<ObjectId> questionIds)
+            throws QuestionNotFoundException {
+        var filter = Filters.in("_id", questionIds);
+        var questionDaos = this.questionCollection.find(filter).into(new ArrayList<>());
+        var map = questionDaos.stream().collect(Collectors.toMap(q -> q.id, q -> q));
+        if (map.size() != questionIds.size())
+            throw new QuestionNotFoundException();
+        return map;
+    }
+
     /**
      * Create a new question.
      * Required fields: auctionId, userId, userIdDisplay, question, createTime.
@@ -323,7 +718,14 @@ public class Mongo implements Closeable {
         assert questionDao.question != null : "Question question must not be null";
         assert questionDao.createTime != null : "Question create time must not be null";
 
-        this.questionCollection.insertOne(questionDao);
+        if (this.questionBatcher != null) {
+            writeTime.set(this.questionBatcher.insert(questionDao));
+        } else {
+            this.trackedWrite(session -> {
+                this.questionCollection.insertOne(session, questionDao);
+                return null;
+            });
+        }
         assert questionDao.id != null;
         return questionDao;
     }
@@ -337,18 +739,52 @@ public class Mongo implements Closeable {
 
         var filter = Filters.and(Filters.eq("_id", questionId), Filters.eq("reply", null));
         var update = Updates.set("reply", reply);
-        var updated = this.questionCollection.findOneAndUpdate(filter, update);
+        var updated = this.trackedWrite(session -> this.questionCollection.findOneAndUpdate(session, filter, update));
         if (updated == null)
             throw new QuestionAlreadyRepliedException();
 
         return this.getQuestion(questionId);
     }
 
+    /**
+     * Get a page of the questions of an auction, newest first.
+     * 
+     * @param auctionId The ID of the auction.
+     * @param before    Only return questions older than this one, null to
+     *                  start from the newest question.
+     * @param limit     The maximum number of questions to return.
+     * @return the questions of the page
+     */
+    @WithSpan
+    public List<QuestionDao> getAuctionQuestions(ObjectId auctionId, ObjectId before, int limit) {
+        return this.getAuctionQuestions(null, auctionId, before, limit, null);
+    }
+
+    /**
+     * Get a page of the questions of an auction as a listing read, see
+     * {@link #getAuctionQuestions(ObjectId, ObjectId, int)}.
+     * 
+     * @param after Operation time of a write the page must reflect, null if
+     *              none.
+     */
     @WithSpan
-    public List<QuestionDao> getAuctionQuestions(ObjectId auctionId, PagingWindow window) {
-        var questions = this.questionCollection.find(Filters.eq("auction_id", auctionId))
-                .skip(window.skip).limit(window.limit).into(new ArrayList<>());
-        return questions;
+    public List<QuestionDao> getAuctionQuestions(ObjectId auctionId, ObjectId before, int limit,
+            BsonTimestamp after) {
+        return this.getAuctionQuestions(Listing.AUCTION_QUESTIONS, auctionId, before, limit, after);
+    }
+
+    private List<QuestionDao> getAuctionQuestions(Listing listing, ObjectId auctionId, ObjectId before, int limit,
+            BsonTimestamp after) {
+        if (limit <= 0)
+            return List.of();
+        var filter = before == null
+                ? Filters.eq("auction_id", auctionId)
+                : Filters.and(Filters.eq("auction_id", auctionId), Filters.lt("_id", before));
+        return this.read(listing, after, (session, preference) -> this.questionCollection
+                .withReadPreference(preference)
+                .find(session, filter)
+                .sort(Sorts.descending("_id"))
+                .limit(limit).into(new ArrayList<>()));
     }
 
     /* ------------------------- User ------------------------- */
@@ -374,6 +810,24 @@ public class Mongo implements Closeable {
         return map;
     }
 
+    /**
+     * Get the display name fields of many users, for listings that only show
+     * their names.
+     */
+    @WithSpan
+    public Map<ObjectId, UserDisplayNameDao> getUserDisplayNameMany(Collection<ObjectId> userIds)
+            throws UserNotFoundException {
+        var filter = Filters.in("_id", userIds);
+        var projection = Projections.include("username", "status");
+        var userDaos = this.userCollection.find(filter, UserDisplayNameDao.class)
+                .projection(projection)
+                .into(new ArrayList<>());
+        var map = userDaos.stream().collect(Collectors.toMap(u -> u.id, u -> u));
+        if (map.size() != userIds.size())
+            throw new UserNotFoundException();
+        return map;
+    }
+
     @WithSpan
     public UserDao getUserByUsername(String username)
             throws UserNotFoundException {
@@ -385,6 +839,18 @@ public class Mongo implements Closeable {
         return userDao;
     }
 
+    /**
+     * Visit the username of every user.
+     * 
+     * @param consumer Receives each username.
+     */
+    @WithSpan
+    public void forEachUsername(Consumer<String> consumer) {
+        var projection = Projections.include("username");
+        for (var userDao : this.userCollection.find().projection(projection).batchSize(1000))
+            consumer.accept(userDao.username);
+    }
+
     /**
      * Create a new user.
      * Required fields: username, hashedPassword, status, createTime.
@@ -451,10 +917,49 @@ public class Mongo implements Closeable {
         return updated;
     }
 
+    /**
+     * Get a page of the auctions created by a user, newest first.
+     * 
+     * @param userId The ID of the user.
+     * @param open   Whether to return only open auctions.
+     * @param before Only return auctions older than this one, null to start
+     *               from the newest auction.
+     * @param limit  The maximum number of auctions to return.
+     * @param after  Operation time of a write the page must reflect, null if
+     *               none.
+     * @return the auctions of the page
+     */
+    @WithSpan
+    public List<AuctionDao> getUserAuctions(ObjectId userId, boolean open, ObjectId before, int limit,
+            BsonTimestamp after) {
+        if (limit <= 0)
+            return List.of();
+        var filters = new ArrayList<Bson>();
+        filters.add(Filters.eq("user_id", userId));
+        if (open)
+            filters.add(Filters.eq("status", AuctionDao.Status.OPEN.toString()));
+        if (before != null)
+            filters.add(Filters.lt("_id", before));
+        var projection = auctionDaoProjection();
+        return this.read(Listing.USER_AUCTIONS, after, (session, preference) -> this.auctionCollection
+                .withReadPreference(preference)
+                .find(session, Filters.and(filters))
+                .projection(projection)
+                .sort(Sorts.descending("_id"))
+                .limit(limit).into(new ArrayList<>()));
+    }
+
+    /**
+     * Get the ids of every auction created by a user, newest first.
+     */
     @WithSpan
-    public List<AuctionDao> getUserAuctions(ObjectId userId) {
-        var auctions = this.auctionCollection.find(Filters.eq("user_id", userId)).into(new ArrayList<>());
-        return auctions;
+    public List<ObjectId> getUserAuctionIds(ObjectId userId) {
+        var auctionIds = this.auctionCollection.find(Filters.eq("user_id", userId))
+                .projection(Projections.include("_id"))
+                .sort(Sorts.descending("_id"))
+                .map(a -> a.id)
+                .into(new ArrayList<ObjectId>());
+        return auctionIds;
     }
 
     @WithSpan
@@ -468,22 +973,253 @@ public class Mongo implements Closeable {
         return bidIds;
     }
 
+    /* ------------------------- Follow ------------------------- */
+
+    /**
+     * Record that a user has bid on an auction.
+     * The follow keeps the time of the user's latest bid. It is created open,
+     * the auction took the bid, and only closed by {@link #closeFollows} or
+     * {@link #closeFollow}.
+     */
+    @WithSpan
+    public void recordFollow(ObjectId userId, ObjectId auctionId, LocalDateTime bidTime) {
+        var filter = Filters.and(
+                Filters.eq("user_id", userId),
+                Filters.eq("auction_id", auctionId));
+        var update = Updates.combine(
+                Updates.max("last_bid_time", bidTime),
+                Updates.setOnInsert("status", AuctionDao.Status.OPEN.toString()));
+        this.trackedWrite(session -> {
+            try {
+                return this.followCollection.updateOne(session, filter, update, new UpdateOptions().upsert(true));
+            } catch (MongoWriteException e) {
+                // Another bid of the user created the follow at the same time
+                if (e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY)
+                    throw e;
+                return this.followCollection.updateOne(session, filter, update);
+            }
+        });
+    }
+
+    /**
+     * Mark the follows of a closed auction as closed.
+     * The auction must be closed first: a follow created after the update is
+     * closed by whoever created it, see {@link #closeFollow}.
+     * 
+     * @return the ids of the users that followed the auction
+     */
     @WithSpan
-    public List<AuctionDao> getAuctionsFollowedByUser(ObjectId userId) {
+    public List<ObjectId> closeFollows(ObjectId auctionId) {
+        var filter = Filters.eq("auction_id", auctionId);
+        this.followCollection.updateMany(filter, Updates.set("status", AuctionDao.Status.CLOSED.toString()));
+        return this.followCollection.find(filter)
+                .projection(Projections.include("user_id"))
+                .map(f -> f.userId)
+                .into(new ArrayList<ObjectId>());
+    }
+
+    /**
+     * Mark the follow of a user on a closed auction as closed, for a follow
+     * recorded after {@link #closeFollows} ran.
+     */
+    @WithSpan
+    public void closeFollow(ObjectId userId, ObjectId auctionId) {
+        var filter = Filters.and(
+                Filters.eq("user_id", userId),
+                Filters.eq("auction_id", auctionId));
+        this.trackedWrite(session -> this.followCollection.updateOne(session, filter,
+                Updates.set("status", AuctionDao.Status.CLOSED.toString())));
+    }
+
+    /**
+     * Get a page of the auctions a user has bid on, latest bid first.
+     * 
+     * @param open   Whether to return open or closed auctions.
+     * @param before Only return follows after this one: with an older latest
+     *               bid, or as old and a lower auction id. Null to start from
+     *               the latest bid.
+     * @param limit  The maximum number of follows to return.
+     * @return the follows of the page
+     */
+    @WithSpan
+    public List<FollowDao> getFollowedAuctions(ObjectId userId, boolean open, FollowDao before, int limit) {
+        return this.getFollowedAuctions(null, userId, open, before, limit, null);
+    }
+
+    /**
+     * Get a page of the auctions a user has bid on as a listing read, see
+     * {@link #getFollowedAuctions(ObjectId, boolean, FollowDao, int)}.
+     * 
+     * @param after Operation time of a write the page must reflect, null if
+     *              none.
+     */
+    @WithSpan
+    public List<FollowDao> getFollowedAuctions(ObjectId userId, boolean open, FollowDao before, int limit,
+            BsonTimestamp after) {
+        return this.getFollowedAuctions(Listing.FOLLOWED_AUCTIONS, userId, open, before, limit, after);
+    }
+
+    private List<FollowDao> getFollowedAuctions(Listing listing, ObjectId userId, boolean open, FollowDao before,
+            int limit, BsonTimestamp after) {
+        if (limit <= 0)
+            return List.of();
+        var status = open ? AuctionDao.Status.OPEN : AuctionDao.Status.CLOSED;
+        var filters = new ArrayList<Bson>();
+        filters.add(Filters.eq("user_id", userId));
+        filters.add(Filters.eq("status", status.toString()));
+        if (before != null)
+            filters.add(Filters.or(
+                    Filters.lt("last_bid_time", before.lastBidTime),
+                    Filters.and(
+                            Filters.eq("last_bid_time", before.lastBidTime),
+                            Filters.lt("auction_id", before.auctionId))));
+        return this.read(listing, after, (session, preference) -> this.followCollection
+                .withReadPreference(preference)
+                .find(session, Filters.and(filters))
+                .sort(Sorts.descending("last_bid_time", "auction_id"))
+                .limit(limit).into(new ArrayList<>()));
+    }
+
+    /**
+     * Call a consumer with the latest bid of every user on every auction found
+     * in the bid buckets, as a follow without status. Scans every bucket.
+     */
+    public void forEachFollowInBids(Consumer<FollowDao> consumer) {
         var pipeline = Arrays.asList(
-                Aggregates.match(Filters.in("bids.user_id", userId)),
-                Aggregates.project(auctionDaoProjection()));
-        var auctions = this.auctionCollection.aggregate(pipeline, AuctionDao.class).into(new ArrayList<>());
-        return auctions;
+                Aggregates.unwind("$bids"),
+                Aggregates.group(
+                        new Document("user_id", "$bids.user_id").append("auction_id", "$auction_id"),
+                        Accumulators.max("last_bid_time", "$bids.create_time")));
+        for (var group : this.bidCollection.withDocumentClass(Document.class)
+                .aggregate(pipeline).allowDiskUse(true).batchSize(1000)) {
+            var key = group.get("_id", Document.class);
+            var followDao = new FollowDao();
+            followDao.userId = key.getObjectId("user_id");
+            followDao.auctionId = key.getObjectId("auction_id");
+            followDao.lastBidTime = LocalDateTime.ofInstant(group.getDate("last_bid_time").toInstant(),
+                    ZoneOffset.UTC);
+            consumer.accept(followDao);
+        }
     }
 
     /* ------------------------- Internal ------------------------- */
 
+    /**
+     * Run the last write of an operation in a causally consistent session and
+     * keep its operation time for {@link #takeWriteTime}. The earlier writes of
+     * the operation precede it in the oplog, they are covered by the same time.
+     */
+    private <T> T trackedWrite(Function<ClientSession, T> write) {
+        try (var session = this.client.startSession(CAUSAL_SESSION)) {
+            var result = write.apply(session);
+            writeTime.set(session.getOperationTime());
+            return result;
+        }
+    }
+
+    /**
+     * Run the writes of an operation in a transaction, tracked like
+     * {@link #trackedWrite}. The writes are retried as a whole on transient
+     * errors, they must not depend on state outside the session.
+     * Standalone servers have no transactions, there the writes run one after
+     * another in a single session and a failure can leave the earlier ones
+     * applied.
+     */
+    private <T> T trackedTransaction(Function<ClientSession, T> write) {
+        var type = this.client.getClusterDescription().getType();
+        if (type != ClusterType.REPLICA_SET && type != ClusterType.SHARDED)
+            return this.trackedWrite(write);
+        return this.trackedWrite(session -> session.withTransaction(() -> write.apply(session)));
+    }
+
+    /**
+     * Run a read in a causally consistent session. Given the operation time of
+     * a write, the member the read goes to waits until it applied that write.
+     *
+     * @param listing The listing whose read preference to use, null to read
+     *                from the primary.
+     */
+    private <T> T read(Listing listing, BsonTimestamp after, BiFunction<ClientSession, ReadPreference, T> read) {
+        var preference = listing == null ? ReadPreference.primary() : this.listingReadPreferences.get(listing);
+        try (var session = this.client.startSession(CAUSAL_SESSION)) {
+            if (after != null)
+                session.advanceOperationTime(after);
+            return read.apply(session, preference);
+        }
+    }
+
+    /**
+     * Parse the read preferences of listings: a comma separated list of read
+     * preference names, either alone to apply to every listing or as
+     * listing=name for one listing, e.g.
+     * "secondaryPreferred,auction_bids=primary".
+     */
+    private static EnumMap<Listing, ReadPreference> parseListingReadPreferences(String spec,
+            long maxStalenessSeconds) {
+        var fallback = ReadPreference.primary();
+        var preferences = new EnumMap<Listing, ReadPreference>(Listing.class);
+        for (var entry : spec.split(",")) {
+            if (entry.isBlank())
+                continue;
+            var parts = entry.split("=", 2);
+            var preference = ReadPreference.valueOf(parts[parts.length - 1].trim());
+            if (maxStalenessSeconds > 0 && !preference.equals(ReadPreference.primary()))
+                preference = ReadPreference.valueOf(preference.getName(), List.of(), maxStalenessSeconds,
+                        TimeUnit.SECONDS);
+            if (parts.length == 1)
+                fallback = preference;
+            else
+                preferences.put(Listing.valueOf(parts[0].trim().toUpperCase()), preference);
+        }
+        for (var listing : Listing.values())
+            preferences.putIfAbsent(listing, fallback);
+        logger.info("Listing read preferences: " + preferences);
+        return preferences;
+    }
+
+    /**
+     * Append a bid to the bucket of its position, the first bid of a bucket
+     * creates it.
+     *
+     * @param index Position of the bid in the auction's history.
+     */
+    private void appendBid(ClientSession session, BidDao bidDao, int index) {
+        var filter = Filters.and(
+                Filters.eq("auction_id", bidDao.auctionId),
+                Filters.eq("seq", index / BID_BUCKET_SIZE));
+        var update = Updates.combine(
+                // Concurrent bids can arrive out of order, keep the bucket sorted
+                Updates.pushEach("bids", List.of(bidDao), new PushOptions().sortDocument(new Document("amount", 1))),
+                Updates.inc("count", 1),
+                Updates.min("min_amount", bidDao.amount));
+        try {
+            this.bidCollection.updateOne(session, filter, update, new UpdateOptions().upsert(true));
+        } catch (MongoWriteException e) {
+            // Another bid created the bucket at the same time. Not retried
+            // in a transaction, the error aborted it: there the race shows
+            // up as a write conflict and withTransaction reruns the bid.
+            if (session.hasActiveTransaction() || e.getError().getCategory() != ErrorCategory.DUPLICATE_KEY)
+                throw e;
+            this.bidCollection.updateOne(session, filter, update);
+        }
+    }
+
+    /**
+     * The auction header, only the fields of {@link AuctionDao}. Leaves out the
+     * top bid and bid counters kept for queries, and the bids of auctions that
+     * still hold them inline.
+     */
     private static Bson auctionDaoProjection() {
-        return Projections.exclude("bids");
+        return Projections.include("title", "description", "image_id", "user_id", "create_time", "close_time",
+                "initial_price", "status");
     }
 
+    /**
+     * The fields of {@link UserDao}, a full user as cached and used to
+     * authenticate. Leaves out the ids of the bids kept on the user.
+     */
     private static Bson userDaoProjection() {
-        return Projections.exclude();
+        return Projections.include("username", "name", "hashed_password", "profile_image_id", "status",
+                "create_time");
     }
 }
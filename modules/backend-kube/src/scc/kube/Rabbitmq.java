@@ -1,6 +1,8 @@
 package scc.kube;
 
 import java.io.IOException;
+import java.time.LocalDateTime;
+import java.util.Map;
 import java.util.concurrent.TimeoutException;
 
 import org.bson.types.ObjectId;
@@ -15,20 +17,48 @@ import scc.kube.config.RabbitmqConfig;
 public class Rabbitmq implements AutoCloseable {
     public static record CreatedBid(
             ObjectId auctionId,
-            ObjectId bidId) {
+            ObjectId bidId,
+            ObjectId userId,
+            LocalDateTime createTime) {
     }
 
     public static record CreatedAuction(
             ObjectId auctionId) {
     }
 
+    public static enum InvalidationKind {
+        AUCTION, USER
+    }
+
+    public static record Invalidation(
+            InvalidationKind kind,
+            ObjectId id) {
+    }
+
+    public static record SessionRevocation(
+            String username) {
+    }
+
     public static final String ROUTING_KEY_USER_DELETE = "user-delete";
     public static final String ROUTING_KEY_AUCTION_CLOSE = "auction-close";
+    // Created bids, consumed by the worker that maintains the followed auctions of each user
+    public static final String QUEUE_FOLLOWED_AUCTIONS = "followed-auctions";
+    // Created bids that failed to be recorded, dead lettered back to the
+    // followed auctions queue once they expire
+    public static final String QUEUE_FOLLOWED_AUCTIONS_RETRY = "followed-auctions-retry";
+    // How long a created bid waits in the retry queue
+    public static final int FOLLOWED_AUCTIONS_RETRY_DELAY_MILLIS = 1000;
+    // Header with the number of times a message was already attempted
+    public static final String HEADER_ATTEMPTS = "attempts";
 
     // Broadcast creation of bids
     public static final String EXCHANGE_BROADCAST_BIDS = "broadcast-bids";
     // Broadcast creation of auctions
     public static final String EXCHANGE_BROADCAST_AUCTIONS = "broadcast-auctions";
+    // Broadcast invalidation of entries cached in-process by the backend pods
+    public static final String EXCHANGE_BROADCAST_INVALIDATIONS = "broadcast-invalidations";
+    // Broadcast revocation of the sessions of a user
+    public static final String EXCHANGE_BROADCAST_SESSION_REVOCATIONS = "broadcast-session-revocations";
 
     private final Channel channel;
     private final boolean shouldClose;
@@ -69,9 +99,9 @@ public class Rabbitmq implements AutoCloseable {
         }
     }
 
-    public void broadcastCreatedBid(ObjectId auctionId, ObjectId bidId) {
+    public void broadcastCreatedBid(ObjectId auctionId, ObjectId bidId, ObjectId userId, LocalDateTime createTime) {
         try {
-            var createdBid = new CreatedBid(auctionId, bidId);
+            var createdBid = new CreatedBid(auctionId, bidId, userId, createTime);
             var messageContent = KubeSerde.toJson(createdBid);
             channel.basicPublish(EXCHANGE_BROADCAST_BIDS, "", null, messageContent.getBytes());
         } catch (IOException e) {
@@ -89,6 +119,26 @@ public class Rabbitmq implements AutoCloseable {
         }
     }
 
+    public void broadcastInvalidation(InvalidationKind kind, ObjectId id) {
+        try {
+            var invalidation = new Invalidation(kind, id);
+            var messageContent = KubeSerde.toJson(invalidation);
+            channel.basicPublish(EXCHANGE_BROADCAST_INVALIDATIONS, "", null, messageContent.getBytes());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    public void broadcastSessionRevocation(String username) {
+        try {
+            var revocation = new SessionRevocation(username);
+            var messageContent = KubeSerde.toJson(revocation);
+            channel.basicPublish(EXCHANGE_BROADCAST_SESSION_REVOCATIONS, "", null, messageContent.getBytes());
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
     @Override
     public void close() throws Exception {
         if (this.shouldClose)
@@ -122,14 +172,40 @@ public class Rabbitmq implements AutoCloseable {
         channel.exchangeDeclare(EXCHANGE_BROADCAST_BIDS, "fanout");
     }
 
+    /**
+     * Declare the durable queue of created bids for followed auctions, bids
+     * created while its consumer is down are kept until it comes back.
+     * Also declares its retry queue, messages published to it go back to the
+     * followed auctions queue after {@link #FOLLOWED_AUCTIONS_RETRY_DELAY_MILLIS}.
+     */
+    public static void declareFollowedAuctionsQueue(Channel channel) throws IOException {
+        declareBroadcastBidsExchange(channel);
+        channel.queueDeclare(QUEUE_FOLLOWED_AUCTIONS, true, false, false, null);
+        channel.queueBind(QUEUE_FOLLOWED_AUCTIONS, EXCHANGE_BROADCAST_BIDS, "");
+        channel.queueDeclare(QUEUE_FOLLOWED_AUCTIONS_RETRY, true, false, false, Map.of(
+                "x-message-ttl", FOLLOWED_AUCTIONS_RETRY_DELAY_MILLIS,
+                "x-dead-letter-exchange", "",
+                "x-dead-letter-routing-key", QUEUE_FOLLOWED_AUCTIONS));
+    }
+
     public static void declareBroadcastAuctionsExchange(Channel channel) throws IOException {
         channel.exchangeDeclare(EXCHANGE_BROADCAST_AUCTIONS, "fanout");
     }
 
+    public static void declareBroadcastInvalidationsExchange(Channel channel) throws IOException {
+        channel.exchangeDeclare(EXCHANGE_BROADCAST_INVALIDATIONS, "fanout");
+    }
+
+    public static void declareBroadcastSessionRevocationsExchange(Channel channel) throws IOException {
+        channel.exchangeDeclare(EXCHANGE_BROADCAST_SESSION_REVOCATIONS, "fanout");
+    }
+
     public static void declare(Channel channel) throws IOException {
         declareUserDeleteQueue(channel);
         declareAuctionCloseQueue(channel);
         declareBroadcastBidsExchange(channel);
         declareBroadcastAuctionsExchange(channel);
+        declareBroadcastInvalidationsExchange(channel);
+        declareBroadcastSessionRevocationsExchange(channel);
     }
 }
@@ -1,354 +1,1173 @@
 package scc.kube;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.HexFormat;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
 
+import org.bson.BsonTimestamp;
 import org.bson.types.ObjectId;
 
 import io.opentelemetry.instrumentation.annotations.WithSpan;
 import redis.clients.jedis.Jedis;
 import redis.clients.jedis.Pipeline;
 import redis.clients.jedis.Response;
+import redis.clients.jedis.args.BitOP;
+import redis.clients.jedis.exceptions.JedisNoScriptException;
+import redis.clients.jedis.params.SetParams;
+import redis.clients.jedis.util.SafeEncoder;
 import scc.AppLogic;
+import scc.kube.RedisNodes.RoutedPipeline;
+import scc.kube.codec.CacheCodec;
+import scc.kube.config.EarlyRefreshConfig;
+import scc.kube.config.KubeEnv;
 import scc.kube.dao.AuctionDao;
 import scc.kube.dao.BidDao;
+import scc.kube.dao.FollowDao;
 import scc.kube.dao.QuestionDao;
 import scc.kube.dao.UserDao;
-
+import scc.kube.utils.BloomFilter;
+import scc.kube.utils.RoundTripCounter;
+
+/**
+ * Helpers to store and retrieve cached data in Redis.
+ * 
+ * Every helper costs exactly one round trip unless stated otherwise, writes
+ * that touch more than one key are sent as a single pipeline or transaction.
+ * Helpers that take many ids (*Many) are batches: reads are one MGET per
+ * cluster slot and writes one command per key, all sent as a single pipeline.
+ * Round trips are counted with {@link RoundTripCounter}. In a Redis Cluster a
+ * pipeline costs one round trip per node it touches, nodes are sent their
+ * part of the pipeline in parallel. With auto-pipelining, single commands and
+ * pipelines share their round trip with those of concurrent requests.
+ * 
+ * Keys are a short prefix followed by an id in braces, the id is the hash tag
+ * of the key. Object ids in keys and in stored lists, sets and values are
+ * written with {@link #compactId(ObjectId)}, 16 characters instead of 24.
+ * Every key of an auction (its DAO, top bid, bid and question indexes, bid
+ * admission state) or of a user lands on the same cluster slot, so their
+ * pipelines, transactions and scripts stay on one node. Display names and
+ * username mappings are fields of bucketed hashes instead, see
+ * {@link #NAME_BUCKETS}.
+ * 
+ * DAOs are stored in an envelope that records how long the DAO took to load
+ * and when it logically expires. Readers that pass a refreshDue collection
+ * get the ids of DAOs that should be refreshed early, each read of a DAO
+ * close to its expiry has a chance to flag it (XFetch), that chance grows as
+ * the expiry gets closer and with the cost of loading it.
+ */
 public class Redis {
     public static final int TTL_DAO = 60 * 60;
     public static final int TTL_SESSION = 30 * 60;
-
-    public static final String PREFIX_AUCTION = "auction:";
-    public static final String PREFIX_BID = "bid:";
-    public static final String PREFIX_QUESTION = "question:";
-    public static final String PREFIX_USER = "user:";
+    public static final int TTL_MISSING = 30;
+    // Longer than the 90 seconds a secondary may lag at most when reads
+    // bound their staleness
+    public static final int TTL_WRITE_TIME = 2 * 60;
+
+    public static final String PREFIX_AUCTION = "a:";
+    public static final String PREFIX_BID = "b:";
+    public static final String PREFIX_QUESTION = "q:";
+    public static final String PREFIX_USER = "u:";
+    // Session keys keep their long names, renaming them would end every session
     public static final String PREFIX_USER_TOKEN = "user-token:";
-    public static final String PREFIX_TOP_BID = "top-bid:";
-    public static final String PREFIX_AUCTION_BIDS = "auction-bids:";
-    public static final String PREFIX_AUCTION_QUESTIONS = "auction-questions:";
-    public static final String PREFIX_USER_AUCTIONS = "user-auctions:";
-    public static final String PREFIX_USER_FOLLOWED_AUCTIONS = "user-followed-auctions:";
-    public static final String PREFIX_USER_DISPLAY_NAME = "user-display-name:";
-    public static final String PREFIX_USERNAME_TO_ID = "username-to-id:";
+    public static final String PREFIX_USER_SESSIONS = "user-sessions:";
+    public static final String PREFIX_TOP_BID = "tb:";
+    public static final String PREFIX_BID_ADMISSION = "ba:";
+    public static final String PREFIX_AUCTION_BIDS = "ab:";
+    public static final String PREFIX_AUCTION_QUESTIONS = "aq:";
+    public static final String PREFIX_AUCTION_QUESTIONS_VERSION = "aqv:";
+    public static final String PREFIX_USER_AUCTIONS = "ua:";
+    // Sorted sets of followed auctions scored by latest bid time, open and closed apart
+    public static final String PREFIX_USER_FOLLOWED_OPEN = "fo:";
+    public static final String PREFIX_USER_FOLLOWED_CLOSED = "fc:";
+    // Bucketed hashes, see NAME_BUCKETS
+    public static final String PREFIX_USER_DISPLAY_NAMES = "dn:";
+    public static final String PREFIX_USERNAME_IDS = "un:";
+    public static final String PREFIX_MISSING = "m:";
+    public static final String PREFIX_MISSING_USERNAME = "m:un:";
+    public static final String PREFIX_WRITE_TIME = "wt:";
 
     public static final String KEY_AUCTIONS_ABOUNT_TO_CLOSE = "auctions-about-to-close";
     public static final String KEY_RECENT_AUCTIONS = "recent-auctions";
     public static final String KEY_POPULAR_AUCTIONS = "popular-auctions";
     public static final String KEY_POPULAR_AUCTIONS_RANKING = "popular-auctions-ranking";
+    // The filter keys share a hash tag, they are combined in one transaction
+    public static final String KEY_USERNAME_FILTER = "{username-filter}";
+    // Receives the usernames created while the filter is being rebuilt
+    public static final String KEY_USERNAME_FILTER_NEXT = "{username-filter}-next";
+    private static final String KEY_USERNAME_FILTER_SCAN = "{username-filter}-scan";
+
+    /**
+     * Display names and username to id mappings are small, they are spread
+     * over this many hashes so that each hash holds well under
+     * hash-max-listpack-entries (128) fields for a few million users and is
+     * stored as a listpack instead of one key per user.
+     */
+    public static final int NAME_BUCKETS = 1 << 15;
 
-    private static final int MAX_AUCTION_BIDS = 256;
+    public static final int MAX_AUCTION_BIDS = 256;
+    public static final int MAX_AUCTION_QUESTIONS = 256;
+    public static final int MAX_USER_FOLLOWED_AUCTIONS = 256;
+
+    /**
+     * Marks the end of a cached index list. A list that ends with this entry
+     * holds the complete history, otherwise older entries were trimmed and
+     * only exist in Mongo.
+     */
+    public static final String INDEX_END = "end";
+
+    /**
+     * Page of ids read from a cached index list.
+     * 
+     * @param status HIT if the ids are the complete page, COLD if the index is
+     *               not cached (or is stale) and must be rebuilt, OUT_OF_WINDOW
+     *               if the page reaches past the cached part of the index.
+     * @param ids    The ids of the page, only set on a HIT.
+     */
+    public static record IndexPage(IndexPage.Status status, List<ObjectId> ids) {
+        public static enum Status {
+            HIT, COLD, OUT_OF_WINDOW
+        }
+    }
+
+    /**
+     * Loads the DAOs of a cache refresh.
+     */
+    @FunctionalInterface
+    public interface DaoLoader<T, E extends Exception> {
+        /**
+         * @param ids The ids to load.
+         * @return the loaded DAOs, deleted ids may be left out
+         */
+        Collection<T> load(List<ObjectId> ids) throws E;
+    }
+
+    /**
+     * Admit a bid against the cached status and top amount of its auction.
+     * KEYS[1] = ba:{auctionId}, ARGV[1] = amount.
+     * Returns 1 if the bid can win, -1 if it cannot and 0 if the auction is
+     * not cached. Only compares: the amount is raised by
+     * {@link #SCRIPT_RECORD_BID} once Mongo accepted a bid, so a bid is only
+     * rejected by one Mongo confirmed.
+     */
+    private static final LuaScript SCRIPT_ADMIT_BID = new LuaScript(""
+            + "local status = redis.call('HGET', KEYS[1], 'status')\n"
+            + "if not status then return 0 end\n"
+            + "if status ~= 'OPEN' then return -1 end\n"
+            + "local top = redis.call('HGET', KEYS[1], 'amount')\n"
+            + "if top and tonumber(ARGV[1]) <= tonumber(top) then return -1 end\n"
+            + "return 1\n");
+
+    /**
+     * Record a bid accepted by Mongo.
+     * KEYS[1] = ba:{auctionId}, ARGV[1] = amount, ARGV[2] = status of the
+     * auction when it took the bid, ARGV[3] = ttl.
+     * A closed auction is never reopened, it may have closed since.
+     */
+    private static final LuaScript SCRIPT_RECORD_BID = new LuaScript(""
+            + "local top = redis.call('HGET', KEYS[1], 'amount')\n"
+            + "if not top or tonumber(ARGV[1]) > tonumber(top) then\n"
+            + "  redis.call('HSET', KEYS[1], 'amount', ARGV[1])\n"
+            + "end\n"
+            + "if redis.call('HGET', KEYS[1], 'status') ~= 'CLOSED' then\n"
+            + "  redis.call('HSET', KEYS[1], 'status', ARGV[2])\n"
+            + "end\n"
+            + "redis.call('EXPIRE', KEYS[1], ARGV[3])\n"
+            + "return 1\n");
+
+    /**
+     * Replace the bid admission state of an auction with the one read from
+     * its document.
+     * KEYS[1] = ba:{auctionId}, ARGV[1] = status, ARGV[2] = top amount or
+     * empty if there is no bid, ARGV[3] = ttl.
+     * A closed auction is never reopened, the document may be older.
+     */
+    private static final LuaScript SCRIPT_SEED_BID_ADMISSION = new LuaScript(""
+            + "if redis.call('HGET', KEYS[1], 'status') ~= 'CLOSED' then\n"
+            + "  redis.call('HSET', KEYS[1], 'status', ARGV[1])\n"
+            + "end\n"
+            + "if ARGV[2] == '' then\n"
+            + "  redis.call('HDEL', KEYS[1], 'amount')\n"
+            + "else\n"
+            + "  redis.call('HSET', KEYS[1], 'amount', ARGV[2])\n"
+            + "end\n"
+            + "redis.call('EXPIRE', KEYS[1], ARGV[3])\n"
+            + "return 1\n");
+
+    /**
+     * Record a bid of a user in the user's cached followed open auctions.
+     * KEYS[1] = fo:{userId}, ARGV[1] = bid time in epoch millis, ARGV[2] =
+     * auction id, ARGV[3] = max entries, ARGV[4] = ttl.
+     * Nothing is done if the set is not cached, it would otherwise be missing
+     * the older follows. The entries with the oldest bids are dropped past the
+     * max entries, the set keeps the latest ones. The end marker of an empty
+     * set is dropped.
+     */
+    private static final LuaScript SCRIPT_RECORD_FOLLOW = new LuaScript(""
+            + "if redis.call('EXISTS', KEYS[1]) == 0 then return 0 end\n"
+            + "redis.call('ZREM', KEYS[1], 'end')\n"
+            + "local score = redis.call('ZSCORE', KEYS[1], ARGV[2])\n"
+            + "if not score or tonumber(ARGV[1]) > tonumber(score) then\n"
+            + "  redis.call('ZADD', KEYS[1], ARGV[1], ARGV[2])\n"
+            + "end\n"
+            + "redis.call('ZREMRANGEBYRANK', KEYS[1], 0, -tonumber(ARGV[3]) - 1)\n"
+            + "redis.call('EXPIRE', KEYS[1], ARGV[4])\n"
+            + "return 1\n");
+
+    /**
+     * Set a field of a bucket hash.
+     * KEYS[1] = bucket, ARGV[1] = field, ARGV[2] = value, ARGV[3] = ttl.
+     * The expiry is only set when the bucket has none, every write would
+     * otherwise push it back and a busy bucket would never expire.
+     */
+    private static final LuaScript SCRIPT_SET_BUCKET_FIELD = new LuaScript(""
+            + "redis.call('HSET', KEYS[1], ARGV[1], ARGV[2])\n"
+            + "if redis.call('TTL', KEYS[1]) == -1 then\n"
+            + "  redis.call('EXPIRE', KEYS[1], ARGV[3])\n"
+            + "end\n"
+            + "return 1\n");
+
+    /**
+     * Keep the later of two Mongo operation times.
+     * KEYS[1] = wt:{id}, ARGV[1] = seconds, ARGV[2] = increment, ARGV[3] = ttl.
+     * Times are stored as seconds:increment, each part is exact as a Lua
+     * number unlike the 64 bit timestamp.
+     */
+    private static final LuaScript SCRIPT_RECORD_WRITE_TIME = new LuaScript(""
+            + "local current = redis.call('GET', KEYS[1])\n"
+            + "if current then\n"
+            + "  local seconds, increment = string.match(current, '(%d+):(%d+)')\n"
+            + "  seconds = tonumber(seconds)\n"
+            + "  if seconds > tonumber(ARGV[1])\n"
+            + "      or (seconds == tonumber(ARGV[1]) and tonumber(increment) >= tonumber(ARGV[2])) then\n"
+            + "    return 0\n"
+            + "  end\n"
+            + "end\n"
+            + "redis.call('SET', KEYS[1], ARGV[1] .. ':' .. ARGV[2], 'EX', ARGV[3])\n"
+            + "return 1\n");
+
+    private static final CacheCodec codec = CacheCodec.fromConfig(KubeEnv.getCacheCodecConfig());
+    private static final EarlyRefreshConfig earlyRefresh = KubeEnv.getEarlyRefreshConfig();
+
+    // Magic byte, recompute time in millis, logical expiry in epoch millis
+    private static final byte ENVELOPE_MAGIC = (byte) 0xE7;
+    private static final int ENVELOPE_SIZE = 1 + 4 + 8;
 
     /* ------------------------- Auction ------------------------- */
 
     @WithSpan
-    public static void setAuction(Jedis jedis, AuctionDao auctionDao) {
-        var key = PREFIX_AUCTION + auctionDao.id;
-        setDao(jedis, key, auctionDao);
+    public static void setAuction(RedisNodes redis, AuctionDao auctionDao) {
+        setAuction(redis, auctionDao, 0);
+    }
+
+    /**
+     * @param recomputeMillis How long it took to load the auction.
+     */
+    @WithSpan
+    public static void setAuction(RedisNodes redis, AuctionDao auctionDao, long recomputeMillis) {
+        var key = key(PREFIX_AUCTION, auctionDao.id);
+        setDao(redis, key, auctionDao, recomputeMillis);
+    }
+
+    @WithSpan
+    public static void setAuctionMany(RedisNodes redis, Collection<AuctionDao> auctionDaos) {
+        setAuctionMany(redis, auctionDaos, 0);
     }
 
+    /**
+     * @param recomputeMillis How long it took to load the auctions.
+     */
     @WithSpan
-    public static void setAuctionMany(Jedis jedis, Collection<AuctionDao> auctionDaos) {
-        try (var pipeline = jedis.pipelined()) {
+    public static void setAuctionMany(RedisNodes redis, Collection<AuctionDao> auctionDaos, long recomputeMillis) {
+        redis.pipelined(pipeline -> {
             for (var auctionDao : auctionDaos) {
-                var key = PREFIX_AUCTION + auctionDao.id;
-                setDao(pipeline, key, auctionDao);
+                var key = key(PREFIX_AUCTION, auctionDao.id);
+                setDao(pipeline, key, auctionDao, recomputeMillis);
             }
-        }
+        });
     }
 
+    /**
+     * Reload cached auctions and store them unless any of them was written
+     * while they were reloaded, the reloaded values could otherwise overwrite
+     * a newer update. Costs two round trips per slot, auctions of each slot
+     * are loaded separately.
+     * 
+     * @param loader Loads the auctions of a slot.
+     * @return false if the auctions of any slot were not stored
+     */
     @WithSpan
-    public static void unsetAuction(Jedis jedis, ObjectId auctionId) {
-        var key = PREFIX_AUCTION + auctionId;
-        unsetDao(jedis, key);
+    public static <E extends Exception> boolean refreshAuctionMany(
+            RedisNodes redis,
+            Collection<ObjectId> auctionIds,
+            DaoLoader<AuctionDao, E> loader) throws E {
+        return refreshDaoMany(redis, PREFIX_AUCTION, auctionIds, loader, auctionDao -> auctionDao.id);
     }
 
+    /**
+     * Cache a newly created auction and add it to the owner's auction list and
+     * to the recent auctions list.
+     */
     @WithSpan
-    public static AuctionDao getAuction(Jedis jedis, ObjectId auctionId) {
-        var key = PREFIX_AUCTION + auctionId;
-        return getDao(jedis, key, AuctionDao.class);
+    public static void createAuction(RedisNodes redis, AuctionDao auctionDao) {
+        redis.pipelined(pipeline -> {
+            setDao(pipeline, key(PREFIX_AUCTION, auctionDao.id), auctionDao);
+            pushUserAuction(pipeline, auctionDao.userId, auctionDao.id);
+            pushRecentAuction(pipeline, auctionDao.id);
+        });
     }
 
+    /**
+     * Cache a closed auction and stop admitting bids for it.
+     */
     @WithSpan
-    public static HashMap<ObjectId, AuctionDao> getAuctionMany(Jedis jedis, Collection<ObjectId> auctionIds) {
-        return getDaoMany(jedis, PREFIX_AUCTION, auctionIds, AuctionDao.class);
+    public static void closeAuction(RedisNodes redis, AuctionDao auctionDao) {
+        var admissionKey = key(PREFIX_BID_ADMISSION, auctionDao.id);
+        redis.pipelined(pipeline -> {
+            setDao(pipeline, key(PREFIX_AUCTION, auctionDao.id), auctionDao);
+            pipeline.on(admissionKey).hset(admissionKey, "status", AuctionDao.Status.CLOSED.toString());
+            pipeline.on(admissionKey).expire(admissionKey, TTL_DAO);
+        });
     }
 
     @WithSpan
-    public static void pushAuctionBid(Jedis jedis, ObjectId auctionId, ObjectId bidId) {
-        var key = PREFIX_AUCTION_BIDS + auctionId;
-        jedis.lpush(key, bidId.toString());
-        jedis.ltrim(key, 0, MAX_AUCTION_BIDS - 1);
-        jedis.expire(key, TTL_DAO);
+    public static void unsetAuction(RedisNodes redis, ObjectId auctionId) {
+        var key = key(PREFIX_AUCTION, auctionId);
+        unsetDao(redis, key);
     }
 
     @WithSpan
-    public static List<ObjectId> getAuctionBids(Jedis jedis, ObjectId auctionId, int skip, int limit) {
-        if (limit > MAX_AUCTION_BIDS)
-            return null;
-        var key = PREFIX_AUCTION_BIDS + auctionId;
-        var bidIds = jedis.lrange(key, skip, skip + limit - 1).stream().map(ObjectId::new).toList();
-        if (bidIds.size() < limit)
-            return null;
-        return bidIds;
+    public static AuctionDao getAuction(RedisNodes redis, ObjectId auctionId) {
+        return getAuction(redis, auctionId, null);
+    }
+
+    /**
+     * @param refreshDue Receives the id if the auction should be refreshed.
+     */
+    @WithSpan
+    public static AuctionDao getAuction(RedisNodes redis, ObjectId auctionId, Collection<ObjectId> refreshDue) {
+        var key = key(PREFIX_AUCTION, auctionId);
+        return getDao(redis, key, AuctionDao.class, auctionId, refreshDue);
+    }
+
+    @WithSpan
+    public static HashMap<ObjectId, AuctionDao> getAuctionMany(RedisNodes redis, Collection<ObjectId> auctionIds) {
+        return getAuctionMany(redis, auctionIds, null);
+    }
+
+    /**
+     * Remember that an auction does not exist for {@link #TTL_MISSING}.
+     */
+    @WithSpan
+    public static void setAuctionMissing(RedisNodes redis, ObjectId auctionId) {
+        setMissing(redis, key(PREFIX_MISSING + PREFIX_AUCTION, auctionId));
+    }
+
+    @WithSpan
+    public static boolean isAuctionMissing(RedisNodes redis, ObjectId auctionId) {
+        return isMissing(redis, key(PREFIX_MISSING + PREFIX_AUCTION, auctionId));
+    }
+
+    /**
+     * @param refreshDue Receives the ids of the auctions that should be
+     *                   refreshed.
+     */
+    @WithSpan
+    public static HashMap<ObjectId, AuctionDao> getAuctionMany(
+            RedisNodes redis,
+            Collection<ObjectId> auctionIds,
+            Collection<ObjectId> refreshDue) {
+        return getDaoMany(redis, PREFIX_AUCTION, auctionIds, AuctionDao.class, refreshDue);
+    }
+
+    /**
+     * Add a bid to the cached bid index of an auction.
+     * Nothing is done if the index is not cached, it would otherwise be missing
+     * the older bids.
+     */
+    @WithSpan
+    public static void pushAuctionBid(RedisNodes redis, ObjectId auctionId, ObjectId bidId) {
+        redis.pipelined(pipeline -> pushAuctionBid(pipeline, auctionId, bidId));
+    }
+
+    /**
+     * Get a page of the cached bid ids of an auction, newest first.
+     * The index is considered stale if its newest bid is not the cached top
+     * bid, this catches bids created while the index was being rebuilt.
+     */
+    @WithSpan
+    public static IndexPage getAuctionBids(RedisNodes redis, ObjectId auctionId, int skip, int limit) {
+        var key = key(PREFIX_AUCTION_BIDS, auctionId);
+        // Head, tail and top bid
+        var entries = new ArrayList<Response<String>>(3);
+        var range = new ArrayList<Response<List<String>>>(1);
+        redis.pipelined(pipeline -> {
+            var node = pipeline.on(key);
+            entries.add(node.lindex(key, 0));
+            entries.add(node.lindex(key, -1));
+            range.add(node.lrange(key, skip, (long) skip + limit - 1));
+            entries.add(node.get(key(PREFIX_TOP_BID, auctionId)));
+        });
+
+        var head = entries.get(0).get();
+        var topBid = entries.get(2).get();
+        if (head == null)
+            return new IndexPage(IndexPage.Status.COLD, null);
+        if (topBid != null && !topBid.equals(head))
+            return new IndexPage(IndexPage.Status.COLD, null);
+        return indexPage(range.get(0).get(), INDEX_END.equals(entries.get(1).get()), limit);
+    }
+
+    /**
+     * Replace the cached bid index of an auction and cache the bids.
+     * 
+     * @param bidDaos  The most recent bids of the auction, newest first.
+     * @param complete Whether bidDaos holds every bid of the auction.
+     */
+    @WithSpan
+    public static void setAuctionBids(RedisNodes redis, ObjectId auctionId, List<BidDao> bidDaos, boolean complete) {
+        var key = key(PREFIX_AUCTION_BIDS, auctionId);
+        var entries = new ArrayList<String>(bidDaos.size() + 1);
+        for (var bidDao : bidDaos)
+            entries.add(compactId(bidDao.id));
+        if (complete)
+            entries.add(INDEX_END);
+
+        redis.pipelined(pipeline -> {
+            for (var bidDao : bidDaos)
+                setDao(pipeline, key(PREFIX_BID, bidDao.id), bidDao);
+            var node = pipeline.on(key);
+            node.del(key);
+            if (!entries.isEmpty()) {
+                node.rpush(key, entries.toArray(String[]::new));
+                node.expire(key, TTL_DAO);
+            }
+        });
     }
 
     @WithSpan
-    public static void setAuctionTopBid(Jedis jedis, ObjectId auctionId, ObjectId bidId) {
-        var key = PREFIX_TOP_BID + auctionId;
-        jedis.set(key, bidId.toHexString());
+    public static void setAuctionTopBid(RedisNodes redis, ObjectId auctionId, ObjectId bidId) {
+        var key = key(PREFIX_TOP_BID, auctionId);
+        command(redis, key, node -> node.setex(key, TTL_DAO, compactId(bidId)));
+    }
+
+    @WithSpan
+    public static void setAuctionTopBidMany(RedisNodes redis, Map<ObjectId, BidDao> topBids) {
+        redis.pipelined(pipeline -> {
+            for (var entry : topBids.entrySet()) {
+                var bidDao = entry.getValue();
+                setDao(pipeline, key(PREFIX_BID, bidDao.id), bidDao);
+                var key = key(PREFIX_TOP_BID, entry.getKey());
+                pipeline.on(key).setex(key, TTL_DAO, compactId(bidDao.id));
+            }
+        });
     }
 
     @WithSpan
-    public static ObjectId getAuctionTopBid(Jedis jedis, ObjectId auctionId) {
-        var key = PREFIX_TOP_BID + auctionId;
-        var bidId = jedis.get(key);
+    public static ObjectId getAuctionTopBid(RedisNodes redis, ObjectId auctionId) {
+        var key = key(PREFIX_TOP_BID, auctionId);
+        var bidId = command(redis, key, node -> node.get(key));
         if (bidId == null)
             return null;
-        return new ObjectId(bidId);
+        return parseId(bidId);
     }
 
     @WithSpan
-    public static Map<ObjectId, ObjectId> getAuctionTopBidMany(Jedis jedis, Collection<ObjectId> auctionIds) {
-        var responses = new HashMap<ObjectId, Response<String>>();
-        try (var pipeline = jedis.pipelined()) {
-            for (var auctionId : auctionIds) {
-                var key = PREFIX_TOP_BID + auctionId;
-                responses.put(auctionId, pipeline.get(key));
-            }
-        }
-        var map = new HashMap<ObjectId, ObjectId>();
-        for (var entry : responses.entrySet()) {
-            var bidId = entry.getValue().get();
-            if (bidId != null)
-                map.put(entry.getKey(), new ObjectId(bidId));
-        }
+    public static Map<ObjectId, ObjectId> getAuctionTopBidMany(RedisNodes redis, Collection<ObjectId> auctionIds) {
+        var values = mget(redis, PREFIX_TOP_BID, auctionIds);
+        var map = new HashMap<ObjectId, ObjectId>(values.size());
+        for (var entry : values.entrySet())
+            map.put(entry.getKey(), parseId(SafeEncoder.encode(entry.getValue())));
         return map;
     }
 
     /* ------------------------- Bid ------------------------- */
 
     @WithSpan
-    public static void setBid(Jedis jedis, BidDao bidDao) {
-        setBidMany(jedis, List.of(bidDao));
+    public static void setBid(RedisNodes redis, BidDao bidDao) {
+        setBidMany(redis, List.of(bidDao));
     }
 
     @WithSpan
-    public static void setBidMany(Jedis jedis, Collection<BidDao> bidDaos) {
-        try (var pipeline = jedis.pipelined()) {
+    public static void setBidMany(RedisNodes redis, Collection<BidDao> bidDaos) {
+        redis.pipelined(pipeline -> {
             for (var bidDao : bidDaos) {
-                var key = PREFIX_BID + bidDao.id;
+                var key = key(PREFIX_BID, bidDao.id);
                 setDao(pipeline, key, bidDao);
             }
-        }
+        });
     }
 
+    /**
+     * Cache a newly created bid, make it the top bid of its auction, add it to
+     * the auction's bid index and record its amount for bid admission.
+     */
     @WithSpan
-    public static void unsetBid(Jedis jedis, ObjectId bidId) {
-        var key = PREFIX_BID + bidId;
-        unsetDao(jedis, key);
+    public static void createBid(RedisNodes redis, BidDao bidDao) {
+        var topBidKey = key(PREFIX_TOP_BID, bidDao.auctionId);
+        redis.pipelined(pipeline -> {
+            setDao(pipeline, key(PREFIX_BID, bidDao.id), bidDao);
+            pipeline.on(topBidKey).setex(topBidKey, TTL_DAO, compactId(bidDao.id));
+            pushAuctionBid(pipeline, bidDao.auctionId, bidDao.id);
+            // Mongo only takes bids on open auctions
+            recordBid(pipeline, bidDao.auctionId, bidDao.amount, AuctionDao.Status.OPEN);
+        });
     }
 
+    public static enum BidAdmission {
+        ADMITTED, REJECTED, UNKNOWN
+    }
+
+    /**
+     * Check whether a bid can beat the cached top bid of an open auction.
+     * Mongo remains the source of truth: admitted and unknown bids must still
+     * be created there, only rejected bids can skip it.
+     */
     @WithSpan
-    public static BidDao getBid(Jedis jedis, ObjectId bidId) {
-        var key = PREFIX_BID + bidId;
-        return getDao(jedis, key, BidDao.class);
+    public static BidAdmission admitBid(RedisNodes redis, ObjectId auctionId, double amount) {
+        RoundTripCounter.increment();
+        var key = key(PREFIX_BID_ADMISSION, auctionId);
+        var result = (Long) redis.withKey(key,
+                jedis -> evalScript(jedis, SCRIPT_ADMIT_BID, List.of(key), List.of(Double.toString(amount))));
+        if (result > 0)
+            return BidAdmission.ADMITTED;
+        if (result < 0)
+            return BidAdmission.REJECTED;
+        return BidAdmission.UNKNOWN;
     }
 
+    /**
+     * Seed the bid admission state of an auction from its document, replacing
+     * the recorded top amount.
+     * 
+     * @param topAmount The amount of the top bid, null if there is none.
+     */
     @WithSpan
-    public static HashMap<ObjectId, BidDao> getBidMany(Jedis jedis, Collection<ObjectId> bidIds) {
-        return getDaoMany(jedis, PREFIX_BID, bidIds, BidDao.class);
+    public static void seedBidAdmission(RedisNodes redis, ObjectId auctionId, AuctionDao.Status status,
+            Double topAmount) {
+        RoundTripCounter.increment();
+        var key = key(PREFIX_BID_ADMISSION, auctionId);
+        redis.withKey(key, jedis -> evalScript(jedis, SCRIPT_SEED_BID_ADMISSION, List.of(key), List.of(
+                status.toString(),
+                topAmount != null ? Double.toString(topAmount) : "",
+                Integer.toString(TTL_DAO))));
+    }
+
+    /**
+     * Forget the bid admission state of an auction, used when its state
+     * cannot be read from Mongo.
+     */
+    @WithSpan
+    public static void resetBidAdmission(RedisNodes redis, ObjectId auctionId) {
+        unsetDao(redis, key(PREFIX_BID_ADMISSION, auctionId));
+    }
+
+    @WithSpan
+    public static void unsetBid(RedisNodes redis, ObjectId bidId) {
+        var key = key(PREFIX_BID, bidId);
+        unsetDao(redis, key);
+    }
+
+    @WithSpan
+    public static BidDao getBid(RedisNodes redis, ObjectId bidId) {
+        var key = key(PREFIX_BID, bidId);
+        return getDao(redis, key, BidDao.class);
+    }
+
+    @WithSpan
+    public static HashMap<ObjectId, BidDao> getBidMany(RedisNodes redis, Collection<ObjectId> bidIds) {
+        return getDaoMany(redis, PREFIX_BID, bidIds, BidDao.class);
     }
 
     /* ------------------------- Question ------------------------- */
 
     @WithSpan
-    public static void setQuestion(Jedis jedis, QuestionDao questionDao) {
-        var key = PREFIX_QUESTION + questionDao.id;
-        setDao(jedis, key, questionDao);
+    public static void setQuestion(RedisNodes redis, QuestionDao questionDao) {
+        var key = key(PREFIX_QUESTION, questionDao.id);
+        setDao(redis, key, questionDao);
+    }
+
+    @WithSpan
+    public static void setQuestionMany(RedisNodes redis, Collection<QuestionDao> questionDaos) {
+        redis.pipelined(pipeline -> {
+            for (var questionDao : questionDaos) {
+                var key = key(PREFIX_QUESTION, questionDao.id);
+                setDao(pipeline, key, questionDao);
+            }
+        });
+    }
+
+    /**
+     * Cache a newly created question and add it to its auction's question
+     * index.
+     */
+    @WithSpan
+    public static void createQuestion(RedisNodes redis, QuestionDao questionDao) {
+        var key = key(PREFIX_AUCTION_QUESTIONS, questionDao.auctionId);
+        var versionKey = key(PREFIX_AUCTION_QUESTIONS_VERSION, questionDao.auctionId);
+        redis.pipelined(pipeline -> {
+            setDao(pipeline, key(PREFIX_QUESTION, questionDao.id), questionDao);
+            var node = pipeline.on(key);
+            node.lpushx(key, compactId(questionDao.id));
+            node.ltrim(key, 0, MAX_AUCTION_QUESTIONS - 1);
+            node.expire(key, TTL_DAO);
+            node.incr(versionKey);
+            node.expire(versionKey, TTL_DAO);
+        });
+    }
+
+    /**
+     * Get a page of the cached question ids of an auction, newest first.
+     */
+    @WithSpan
+    public static IndexPage getAuctionQuestions(RedisNodes redis, ObjectId auctionId, int skip, int limit) {
+        var key = key(PREFIX_AUCTION_QUESTIONS, auctionId);
+        // Head and tail
+        var entries = new ArrayList<Response<String>>(2);
+        var range = new ArrayList<Response<List<String>>>(1);
+        redis.pipelined(pipeline -> {
+            var node = pipeline.on(key);
+            entries.add(node.lindex(key, 0));
+            entries.add(node.lindex(key, -1));
+            range.add(node.lrange(key, skip, (long) skip + limit - 1));
+        });
+
+        if (entries.get(0).get() == null)
+            return new IndexPage(IndexPage.Status.COLD, null);
+        return indexPage(range.get(0).get(), INDEX_END.equals(entries.get(1).get()), limit);
     }
 
+    /**
+     * Get the version of the question index of an auction.
+     * Must be read before loading the questions that will be passed to
+     * {@link #setAuctionQuestions(RedisNodes, ObjectId, List, boolean, String)}.
+     */
     @WithSpan
-    public static void unsetQuestion(Jedis jedis, ObjectId questionId) {
-        var key = PREFIX_QUESTION + questionId;
-        unsetDao(jedis, key);
+    public static String getAuctionQuestionsVersion(RedisNodes redis, ObjectId auctionId) {
+        var key = key(PREFIX_AUCTION_QUESTIONS_VERSION, auctionId);
+        return command(redis, key, node -> node.get(key));
     }
 
+    /**
+     * Replace the cached question index of an auction and cache the questions.
+     * The index is dropped again if a question was created since the version
+     * was read, the questions could otherwise be missing it.
+     * 
+     * @param questionDaos The most recent questions of the auction, newest
+     *                     first.
+     * @param complete     Whether questionDaos holds every question of the
+     *                     auction.
+     * @param version      The version returned by
+     *                     {@link #getAuctionQuestionsVersion(RedisNodes, ObjectId)}.
+     */
     @WithSpan
-    public static QuestionDao getQuestion(Jedis jedis, ObjectId questionId) {
-        var key = PREFIX_QUESTION + questionId;
-        return getDao(jedis, key, QuestionDao.class);
+    public static void setAuctionQuestions(
+            RedisNodes redis,
+            ObjectId auctionId,
+            List<QuestionDao> questionDaos,
+            boolean complete,
+            String version) {
+        var key = key(PREFIX_AUCTION_QUESTIONS, auctionId);
+        var entries = new ArrayList<String>(questionDaos.size() + 1);
+        for (var questionDao : questionDaos)
+            entries.add(compactId(questionDao.id));
+        if (complete)
+            entries.add(INDEX_END);
+
+        var currentVersion = new ArrayList<Response<String>>(1);
+        redis.pipelined(pipeline -> {
+            for (var questionDao : questionDaos)
+                setDao(pipeline, key(PREFIX_QUESTION, questionDao.id), questionDao);
+            // The index and its version share a slot, so they are sent in order
+            var node = pipeline.on(key);
+            node.del(key);
+            if (!entries.isEmpty()) {
+                node.rpush(key, entries.toArray(String[]::new));
+                node.expire(key, TTL_DAO);
+            }
+            currentVersion.add(node.get(key(PREFIX_AUCTION_QUESTIONS_VERSION, auctionId)));
+        });
+
+        if (!Objects.equals(version, currentVersion.get(0).get()))
+            unsetDao(redis, key);
     }
 
     @WithSpan
-    public static HashMap<ObjectId, QuestionDao> getQuestionMany(Jedis jedis, Collection<ObjectId> questionIds) {
-        return getDaoMany(jedis, PREFIX_QUESTION, questionIds, QuestionDao.class);
+    public static void unsetQuestion(RedisNodes redis, ObjectId questionId) {
+        var key = key(PREFIX_QUESTION, questionId);
+        unsetDao(redis, key);
+    }
+
+    @WithSpan
+    public static QuestionDao getQuestion(RedisNodes redis, ObjectId questionId) {
+        var key = key(PREFIX_QUESTION, questionId);
+        return getDao(redis, key, QuestionDao.class);
+    }
+
+    @WithSpan
+    public static HashMap<ObjectId, QuestionDao> getQuestionMany(RedisNodes redis, Collection<ObjectId> questionIds) {
+        return getDaoMany(redis, PREFIX_QUESTION, questionIds, QuestionDao.class);
     }
 
     /* ------------------------- User ------------------------- */
 
+    /**
+     * Result of {@link #lookupUsername(RedisNodes, String)}.
+     * 
+     * @param userId The id of the user, if cached.
+     * @param absent Whether the username is known not to exist.
+     */
+    public static record UsernameLookup(ObjectId userId, boolean absent) {
+    }
+
+    /**
+     * Cache a newly created user and add its username to the username filter.
+     */
+    @WithSpan
+    public static void createUser(RedisNodes redis, UserDao userDao) {
+        redis.pipelined(pipeline -> {
+            setUserKeys(pipeline, userDao, 0);
+            var missingKey = key(PREFIX_MISSING_USERNAME, userDao.username);
+            pipeline.on(missingKey).del(missingKey);
+            var filter = pipeline.on(KEY_USERNAME_FILTER);
+            for (var position : BloomFilter.positions(userDao.username)) {
+                filter.setbit(KEY_USERNAME_FILTER, position, true);
+                filter.setbit(KEY_USERNAME_FILTER_NEXT, position, true);
+            }
+            // Only matters while a rebuild is running, see replaceUsernameFilter
+            filter.expire(KEY_USERNAME_FILTER_NEXT, TTL_DAO);
+        });
+    }
+
+    @WithSpan
+    public static void setUser(RedisNodes redis, UserDao userDao) {
+        setUserMany(redis, List.of(userDao), 0);
+    }
+
+    /**
+     * @param recomputeMillis How long it took to load the user.
+     */
+    @WithSpan
+    public static void setUser(RedisNodes redis, UserDao userDao, long recomputeMillis) {
+        setUserMany(redis, List.of(userDao), recomputeMillis);
+    }
+
+    @WithSpan
+    public static void setUserMany(RedisNodes redis, Collection<UserDao> userDaos) {
+        setUserMany(redis, userDaos, 0);
+    }
+
+    /**
+     * Cache users along with their username to id mapping and display name.
+     * 
+     * @param recomputeMillis How long it took to load the users.
+     */
+    @WithSpan
+    public static void setUserMany(RedisNodes redis, Collection<UserDao> userDaos, long recomputeMillis) {
+        redis.pipelined(pipeline -> {
+            for (var userDao : userDaos)
+                setUserKeys(pipeline, userDao, recomputeMillis);
+        });
+    }
+
     @WithSpan
-    public static void setUser(Jedis jedis, UserDao userDao) {
-        setUserMany(jedis, List.of(userDao));
+    public static void unsetUser(RedisNodes redis, ObjectId userId) {
+        var key = key(PREFIX_USER, userId);
+        unsetDao(redis, key);
     }
 
     @WithSpan
-    public static void setUserMany(Jedis jedis, Collection<UserDao> userDaos) {
-        try (var pipeline = jedis.pipelined()) {
-            for (var userDao : userDaos) {
-                var daoKey = PREFIX_USER + userDao.id;
-                setDao(pipeline, daoKey, userDao);
-                var usernameKey = PREFIX_USERNAME_TO_ID + userDao.username;
-                pipeline.set(usernameKey, userDao.id.toHexString());
+    public static UserDao getUser(RedisNodes redis, ObjectId userId) {
+        return getUser(redis, userId, null);
+    }
+
+    /**
+     * @param refreshDue Receives the id if the user should be refreshed.
+     */
+    @WithSpan
+    public static UserDao getUser(RedisNodes redis, ObjectId userId, Collection<ObjectId> refreshDue) {
+        var key = key(PREFIX_USER, userId);
+        return getDao(redis, key, UserDao.class, userId, refreshDue);
+    }
+
+    @WithSpan
+    public static Map<ObjectId, UserDao> getUserMany(RedisNodes redis, Collection<ObjectId> userIds) {
+        return getUserMany(redis, userIds, null);
+    }
+
+    /**
+     * @param refreshDue Receives the ids of the users that should be refreshed.
+     */
+    @WithSpan
+    public static Map<ObjectId, UserDao> getUserMany(
+            RedisNodes redis,
+            Collection<ObjectId> userIds,
+            Collection<ObjectId> refreshDue) {
+        return getDaoMany(redis, PREFIX_USER, userIds, UserDao.class, refreshDue);
+    }
+
+    /**
+     * Reload cached users, see
+     * {@link #refreshAuctionMany(RedisNodes, Collection, DaoLoader)}.
+     * 
+     * @param loader Loads the users of a slot.
+     * @return false if the users of any slot were not stored
+     */
+    @WithSpan
+    public static <E extends Exception> boolean refreshUserMany(
+            RedisNodes redis,
+            Collection<ObjectId> userIds,
+            DaoLoader<UserDao, E> loader) throws E {
+        return refreshDaoMany(redis, PREFIX_USER, userIds, loader, userDao -> userDao.id);
+    }
+
+    /**
+     * Resolve a username without going to Mongo.
+     * The username is absent if it was recently looked up and not found, or if
+     * the username filter is built and rejects it. Costs one round trip per
+     * node in a cluster, the filter lives on its own slot.
+     */
+    @WithSpan
+    public static UsernameLookup lookupUsername(RedisNodes redis, String username) {
+        var positions = BloomFilter.positions(username);
+        var userIdKey = bucketKey(PREFIX_USERNAME_IDS, username);
+        var missingKey = key(PREFIX_MISSING_USERNAME, username);
+        var userId = new ArrayList<Response<String>>(1);
+        var missing = new ArrayList<Response<Boolean>>(1);
+        // The ready bit first, then the bits of the username
+        var bits = new ArrayList<Response<Boolean>>(positions.length + 1);
+        redis.pipelined(pipeline -> {
+            userId.add(pipeline.on(userIdKey).hget(userIdKey, username));
+            missing.add(pipeline.on(missingKey).exists(missingKey));
+            var filter = pipeline.on(KEY_USERNAME_FILTER);
+            bits.add(filter.getbit(KEY_USERNAME_FILTER, BloomFilter.READY_BIT));
+            for (var position : positions)
+                bits.add(filter.getbit(KEY_USERNAME_FILTER, position));
+        });
+
+        if (userId.get(0).get() != null)
+            return new UsernameLookup(parseId(userId.get(0).get()), false);
+        if (missing.get(0).get())
+            return new UsernameLookup(null, true);
+        if (bits.get(0).get()) {
+            for (var bit : bits.subList(1, bits.size())) {
+                if (!bit.get())
+                    return new UsernameLookup(null, true);
             }
         }
+        return new UsernameLookup(null, false);
+    }
+
+    /**
+     * Remember that a username does not exist for {@link #TTL_MISSING}.
+     */
+    @WithSpan
+    public static void setUsernameMissing(RedisNodes redis, String username) {
+        setMissing(redis, key(PREFIX_MISSING_USERNAME, username));
     }
 
+    /**
+     * Remember that a user does not exist for {@link #TTL_MISSING}.
+     */
     @WithSpan
-    public static void unsetUser(Jedis jedis, ObjectId userId) {
-        var key = PREFIX_USER + userId;
-        unsetDao(jedis, key);
+    public static void setUserMissing(RedisNodes redis, ObjectId userId) {
+        setMissing(redis, key(PREFIX_MISSING + PREFIX_USER, userId));
     }
 
     @WithSpan
-    public static UserDao getUser(Jedis jedis, ObjectId userId) {
-        var key = PREFIX_USER + userId;
-        return getDao(jedis, key, UserDao.class);
+    public static boolean isUserMissing(RedisNodes redis, ObjectId userId) {
+        return isMissing(redis, key(PREFIX_MISSING + PREFIX_USER, userId));
     }
 
+    /**
+     * Replace the username filter with a bitmap built from every username in
+     * Mongo. Usernames created since the previous call to
+     * {@link #beginUsernameFilterRebuild(RedisNodes)} are merged in, so the new
+     * filter is not missing users created while it was being built.
+     * 
+     * @param bitmap The filter bitmap, see {@link BloomFilter}.
+     */
     @WithSpan
-    public static Map<ObjectId, UserDao> getUserMany(Jedis jedis, Collection<ObjectId> userIds) {
-        return getDaoMany(jedis, PREFIX_USER, userIds, UserDao.class);
+    public static void replaceUsernameFilter(RedisNodes redis, byte[] bitmap) {
+        redis.withKey(KEY_USERNAME_FILTER, jedis -> {
+            RoundTripCounter.increment();
+            jedis.set(SafeEncoder.encode(KEY_USERNAME_FILTER_SCAN), bitmap);
+            RoundTripCounter.increment();
+            var transaction = jedis.multi();
+            transaction.bitop(BitOP.OR, KEY_USERNAME_FILTER_NEXT, KEY_USERNAME_FILTER_NEXT, KEY_USERNAME_FILTER_SCAN);
+            transaction.setbit(KEY_USERNAME_FILTER_NEXT, BloomFilter.READY_BIT, true);
+            transaction.rename(KEY_USERNAME_FILTER_NEXT, KEY_USERNAME_FILTER);
+            transaction.persist(KEY_USERNAME_FILTER);
+            transaction.del(KEY_USERNAME_FILTER_SCAN);
+            return transaction.exec();
+        });
     }
 
+    /**
+     * Start collecting created usernames for
+     * {@link #replaceUsernameFilter(RedisNodes, byte[])}. Must be called before
+     * reading the usernames from Mongo.
+     */
     @WithSpan
-    public static ObjectId getUserIdFromUsername(Jedis jedis, String username) {
-        var key = PREFIX_USERNAME_TO_ID + username;
-        var userId = jedis.get(key);
+    public static void beginUsernameFilterRebuild(RedisNodes redis) {
+        unsetDao(redis, KEY_USERNAME_FILTER_NEXT);
+    }
+
+    @WithSpan
+    public static ObjectId getUserIdFromUsername(RedisNodes redis, String username) {
+        var key = bucketKey(PREFIX_USERNAME_IDS, username);
+        var userId = command(redis, key, node -> node.hget(key, username));
         if (userId == null)
             return null;
-        return new ObjectId(userId);
+        return parseId(userId);
     }
 
+    /**
+     * Replace the cached list of auctions created by a user.
+     */
     @WithSpan
-    private static void setUserIdFromUsernameMany(Jedis jedis, Map<String, ObjectId> userIds) {
-        try (var pipeline = jedis.pipelined()) {
-            for (var entry : userIds.entrySet()) {
-                var key = PREFIX_USERNAME_TO_ID + entry.getKey();
-                pipeline.set(key, entry.getValue().toHexString());
-                pipeline.expire(key, TTL_DAO);
-            }
-        }
+    public static void setUserAuctions(RedisNodes redis, ObjectId userId, Collection<ObjectId> auctionIds) {
+        RoundTripCounter.increment();
+        var key = key(PREFIX_USER_AUCTIONS, userId);
+        redis.withKey(key, jedis -> {
+            var transaction = jedis.multi();
+            transaction.del(key);
+            transaction.rpush(key, listEntries(auctionIds));
+            transaction.expire(key, TTL_DAO);
+            return transaction.exec();
+        });
     }
 
+    /**
+     * Append an auction to the cached list of auctions created by a user.
+     * Nothing is done if the list is not cached, it would otherwise be missing
+     * the older auctions.
+     */
     @WithSpan
-    private static void setUserIdFromUsername(Jedis jedis, String username, ObjectId userId) {
-        setUserIdFromUsernameMany(jedis, Map.of(username, userId));
+    public static void pushUserAuction(RedisNodes redis, ObjectId userId, ObjectId auctionId) {
+        redis.pipelined(pipeline -> pushUserAuction(pipeline, userId, auctionId));
     }
 
+    /**
+     * Get the cached list of auctions created by a user.
+     * 
+     * @return the auction ids, or null if the list is not cached
+     */
     @WithSpan
-    public static void setUserAuctions(Jedis jedis, ObjectId userId, Collection<ObjectId> auctionIds) {
-        var key = PREFIX_USER_AUCTIONS + userId;
-        jedis.del(key);
-        jedis.rpush(key, auctionIds.stream().map(ObjectId::toString).toArray(String[]::new));
-        jedis.expire(key, TTL_DAO);
+    public static List<ObjectId> getUserAuctions(RedisNodes redis, ObjectId userId) {
+        return getList(redis, key(PREFIX_USER_AUCTIONS, userId), 0);
     }
 
+    /**
+     * Replace the cached followed auctions of a user with a given status.
+     * 
+     * @param follows The follows with the latest bids, at most
+     *                {@link #MAX_USER_FOLLOWED_AUCTIONS}.
+     */
     @WithSpan
-    public static void pushUserAuction(Jedis jedis, ObjectId userId, ObjectId auctionId) {
-        var key = PREFIX_USER_AUCTIONS + userId;
-        jedis.rpush(key, auctionId.toString());
-        jedis.expire(key, TTL_DAO);
+    public static void setUserFollowedAuctions(RedisNodes redis, ObjectId userId, boolean open,
+            List<FollowDao> follows) {
+        RoundTripCounter.increment();
+        var key = followedKey(userId, open);
+        redis.withKey(key, jedis -> {
+            var scores = new HashMap<String, Double>();
+            for (var followDao : follows)
+                scores.put(compactId(followDao.auctionId), (double) epochMillis(followDao.lastBidTime));
+            // An empty set holds the end marker alone, told apart from a missing one
+            if (scores.isEmpty())
+                scores.put(INDEX_END, 0.0);
+            var transaction = jedis.multi();
+            transaction.del(key);
+            transaction.zadd(key, scores);
+            transaction.expire(key, TTL_DAO);
+            return transaction.exec();
+        });
     }
 
+    /**
+     * Get the cached followed auctions of a user with a given status, latest
+     * bid first.
+     * 
+     * @return the follows, or null if they are not cached
+     */
     @WithSpan
-    public static List<ObjectId> getUserAuctions(Jedis jedis, ObjectId userId) {
-        var key = PREFIX_USER_AUCTIONS + userId;
-        var auctionIds = jedis.lrange(key, 0, -1).stream().map(ObjectId::new).toList();
-        return auctionIds;
+    public static List<FollowDao> getUserFollowedAuctions(RedisNodes redis, ObjectId userId, boolean open,
+            int limit) {
+        var key = followedKey(userId, open);
+        var entries = command(redis, key, node -> node.zrevrangeWithScores(key, 0, limit - 1));
+        if (entries.isEmpty())
+            return null;
+        var status = open ? AuctionDao.Status.OPEN : AuctionDao.Status.CLOSED;
+        var follows = new ArrayList<FollowDao>(entries.size());
+        for (var entry : entries) {
+            if (entry.getElement().equals(INDEX_END))
+                continue;
+            var followDao = new FollowDao();
+            followDao.userId = userId;
+            followDao.auctionId = parseId(entry.getElement());
+            followDao.status = status;
+            followDao.lastBidTime = LocalDateTime.ofInstant(Instant.ofEpochMilli((long) entry.getScore()),
+                    ZoneOffset.UTC);
+            follows.add(followDao);
+        }
+        return follows;
     }
 
+    /**
+     * Record a bid of a user in the cached open auctions the user follows.
+     * Nothing is done if they are not cached.
+     */
     @WithSpan
-    public static void addUserFollowedAuction(Jedis jedis, ObjectId userId, ObjectId auctionId) {
-        addUserFollowedAuctionMany(jedis, userId, List.of(auctionId));
+    public static void recordUserFollowedAuction(RedisNodes redis, ObjectId userId, ObjectId auctionId,
+            LocalDateTime bidTime) {
+        var key = key(PREFIX_USER_FOLLOWED_OPEN, userId);
+        redis.pipelined(pipeline -> pipeline.on(key).eval(SCRIPT_RECORD_FOLLOW.source, List.of(key), List.of(
+                Long.toString(epochMillis(bidTime)),
+                compactId(auctionId),
+                Integer.toString(MAX_USER_FOLLOWED_AUCTIONS),
+                Integer.toString(TTL_DAO))));
     }
 
+    /**
+     * Drop the cached followed auctions of the users that followed a closed
+     * auction, the auction moved from their open to their closed auctions.
+     */
     @WithSpan
-    public static void addUserFollowedAuctionMany(Jedis jedis, ObjectId userId, Collection<ObjectId> auctionIds) {
-        try (var pipeline = jedis.pipelined()) {
-            for (var auctionId : auctionIds) {
-                var key = PREFIX_USER_FOLLOWED_AUCTIONS + userId;
-                jedis.sadd(key, auctionId.toString());
-                jedis.expire(key, TTL_DAO);
+    public static void invalidateUserFollowedAuctionsMany(RedisNodes redis, Collection<ObjectId> userIds) {
+        if (userIds.isEmpty())
+            return;
+        redis.pipelined(pipeline -> {
+            for (var userId : userIds) {
+                var openKey = followedKey(userId, true);
+                pipeline.on(openKey).del(openKey, followedKey(userId, false));
             }
-        }
+        });
     }
 
     @WithSpan
-    public static List<ObjectId> getUserFollowedAuctions(Jedis jedis, ObjectId userId) {
-        // TODO: use ordered set here
-        var key = PREFIX_USER_FOLLOWED_AUCTIONS + userId;
-        var auctionIds = jedis.smembers(key).stream().map(ObjectId::new).toList();
-        return auctionIds;
+    public static void setUserDisplayName(RedisNodes redis, ObjectId userId, String displayName) {
+        setUserDisplayNameMany(redis, Map.of(userId, displayName));
     }
 
     @WithSpan
-    public static void setUserDisplayName(Jedis jedis, ObjectId userId, String displayName) {
-        setUserDisplayNameMany(jedis, Map.of(userId, displayName));
+    public static void setUserDisplayNameMany(RedisNodes redis, Map<ObjectId, String> displayNames) {
+        redis.pipelined(pipeline -> {
+            for (var entry : displayNames.entrySet())
+                setUserDisplayName(pipeline, entry.getKey(), entry.getValue());
+        });
     }
 
     @WithSpan
-    public static void setUserDisplayNameMany(Jedis jedis, Map<ObjectId, String> displayNames) {
-        try (var pipeline = jedis.pipelined()) {
-            for (var entry : displayNames.entrySet()) {
-                var key = PREFIX_USER_DISPLAY_NAME + entry.getKey();
-                jedis.set(key, entry.getValue());
-                jedis.expire(key, TTL_DAO);
-            }
-        }
+    public static String getUserDisplayName(RedisNodes redis, ObjectId userId) {
+        var field = compactId(userId);
+        var key = bucketKey(PREFIX_USER_DISPLAY_NAMES, field);
+        return command(redis, key, node -> node.hget(key, field));
     }
 
     @WithSpan
-    public static String getUserDisplayName(Jedis jedis, ObjectId userId) {
-        var key = PREFIX_USER_DISPLAY_NAME + userId;
-        return jedis.get(key);
+    public static Map<ObjectId, String> getUserDisplayNameMany(RedisNodes redis, Collection<ObjectId> userIds) {
+        var fields = new HashMap<String, ObjectId>(userIds.size());
+        for (var userId : userIds)
+            fields.put(compactId(userId), userId);
+        var values = hmgetBucketed(redis, PREFIX_USER_DISPLAY_NAMES, fields.keySet());
+        var map = new HashMap<ObjectId, String>(values.size());
+        for (var entry : values.entrySet())
+            map.put(fields.get(entry.getKey()), entry.getValue());
+        return map;
     }
 
+    /* ------------------------- Write time ------------------------- */
+
+    /**
+     * Record the Mongo operation time of a write to the listings of an auction
+     * or a user, so that listing reads from secondaries wait for it. Keeps the
+     * latest time of concurrent writes.
+     */
     @WithSpan
-    public static Map<ObjectId, String> getUserDisplayNameMany(Jedis jedis, Iterable<ObjectId> userIds) {
-        var map = new HashMap<ObjectId, String>();
-        for (var userId : userIds) {
-            var key = PREFIX_USER_DISPLAY_NAME + userId;
-            var displayName = jedis.get(key);
-            if (displayName != null)
-                map.put(userId, displayName);
-        }
-        return map;
+    public static void recordWriteTime(RedisNodes redis, ObjectId id, BsonTimestamp time) {
+        var key = key(PREFIX_WRITE_TIME, id);
+        redis.pipelined(pipeline -> pipeline.on(key).eval(SCRIPT_RECORD_WRITE_TIME.source, List.of(key), List.of(
+                Integer.toUnsignedString(time.getTime()),
+                Integer.toUnsignedString(time.getInc()),
+                Integer.toString(TTL_WRITE_TIME))));
+    }
+
+    /**
+     * @return the operation time of the latest recent write to the listings
+     *         of an auction or a user, null if there was none
+     */
+    @WithSpan
+    public static BsonTimestamp getWriteTime(RedisNodes redis, ObjectId id) {
+        var key = key(PREFIX_WRITE_TIME, id);
+        var value = command(redis, key, node -> node.get(key));
+        if (value == null)
+            return null;
+        var parts = value.split(":");
+        return new BsonTimestamp(Integer.parseUnsignedInt(parts[0]), Integer.parseUnsignedInt(parts[1]));
     }
 
     /* ------------------------- Session ------------------------- */
 
+    /**
+     * Store a session and add it to the sessions of its user so that they can
+     * all be revoked.
+     * Costs one round trip per node touched.
+     */
     @WithSpan
-    public static void setSession(Jedis jedis, String username, String token) {
-        var key = PREFIX_USER_TOKEN + token;
-        jedis.setex(key, TTL_SESSION, username);
+    public static void setSession(RedisNodes redis, String username, String token) {
+        var key = key(PREFIX_USER_TOKEN, token);
+        var sessionsKey = key(PREFIX_USER_SESSIONS, username);
+        redis.pipelined(pipeline -> {
+            pipeline.on(key).setex(key, TTL_SESSION, username);
+            pipeline.on(sessionsKey).sadd(sessionsKey, token);
+            pipeline.on(sessionsKey).expire(sessionsKey, TTL_SESSION);
+        });
     }
 
     @WithSpan
-    public static String getSession(Jedis jedis, String token) {
-        var key = PREFIX_USER_TOKEN + token;
-        var username = jedis.get(key);
+    public static String getSession(RedisNodes redis, String token) {
+        var key = key(PREFIX_USER_TOKEN, token);
+        var username = command(redis, key, node -> node.get(key));
         if (username == null)
             return null;
         return username;
     }
 
     @WithSpan
-    public static void removeSession(Jedis jedis, String token) {
-        var key = PREFIX_USER_TOKEN + token;
-        jedis.del(key);
+    public static void removeSession(RedisNodes redis, String token) {
+        var key = key(PREFIX_USER_TOKEN, token);
+        unsetDao(redis, key);
+    }
+
+    /**
+     * Remove every session of a user.
+     * Costs two round trips.
+     */
+    @WithSpan
+    public static void removeUserSessions(RedisNodes redis, String username) {
+        var sessionsKey = key(PREFIX_USER_SESSIONS, username);
+        var tokens = command(redis, sessionsKey, node -> node.smembers(sessionsKey));
+        redis.pipelined(pipeline -> {
+            for (var token : tokens) {
+                var key = key(PREFIX_USER_TOKEN, token);
+                pipeline.on(key).del(key);
+            }
+            pipeline.on(sessionsKey).del(sessionsKey);
+        });
     }
 
     /*
@@ -356,16 +1175,26 @@ public class Redis {
      */
 
     @WithSpan
-    public static void pushRecentAuction(Jedis jedis, ObjectId auctionId) {
-        jedis.lpush(KEY_RECENT_AUCTIONS, auctionId.toHexString());
-        jedis.ltrim(KEY_RECENT_AUCTIONS, 0, AppLogic.MAX_RECENT_AUCTIONS - 1);
+    public static void pushRecentAuction(RedisNodes redis, ObjectId auctionId) {
+        redis.pipelined(pipeline -> pushRecentAuction(pipeline, auctionId));
+    }
+
+    /**
+     * @return the auction ids, or null if the list is not cached
+     */
+    @WithSpan
+    public static List<ObjectId> getRecentAuctionIds(RedisNodes redis) {
+        return getList(redis, KEY_RECENT_AUCTIONS, AppLogic.MAX_RECENT_AUCTIONS);
     }
 
+    /**
+     * Fill the recent auctions list, newest first, unless it already exists.
+     *
+     * @return whether the list was written
+     */
     @WithSpan
-    public static List<ObjectId> getRecentAuctionIds(Jedis jedis) {
-        var auctionIds = jedis.lrange(KEY_RECENT_AUCTIONS, 0, AppLogic.MAX_RECENT_AUCTIONS - 1)
-                .stream().map(ObjectId::new).toList();
-        return auctionIds;
+    public static boolean initRecentAuctions(RedisNodes redis, List<ObjectId> auctionIds) {
+        return initList(redis, KEY_RECENT_AUCTIONS, auctionIds);
     }
 
     /*
@@ -373,89 +1202,459 @@ public class Redis {
      */
 
     @WithSpan
-    public static void setSoonToCloseAuctions(Jedis jedis, Collection<ObjectId> auctionIds) {
-        jedis.del(KEY_AUCTIONS_ABOUNT_TO_CLOSE);
-        jedis.rpush(KEY_AUCTIONS_ABOUNT_TO_CLOSE, auctionIds.stream().map(ObjectId::toString).toArray(String[]::new));
-        jedis.expire(KEY_AUCTIONS_ABOUNT_TO_CLOSE, TTL_DAO);
+    public static void setSoonToCloseAuctions(RedisNodes redis, Collection<ObjectId> auctionIds) {
+        RoundTripCounter.increment();
+        redis.withKey(KEY_AUCTIONS_ABOUNT_TO_CLOSE, jedis -> {
+            var transaction = jedis.multi();
+            transaction.del(KEY_AUCTIONS_ABOUNT_TO_CLOSE);
+            transaction.rpush(KEY_AUCTIONS_ABOUNT_TO_CLOSE, listEntries(auctionIds));
+            transaction.expire(KEY_AUCTIONS_ABOUNT_TO_CLOSE, TTL_DAO);
+            return transaction.exec();
+        });
     }
 
+    /**
+     * @return the auction ids, or null if the list is not cached
+     */
     @WithSpan
-    public static List<ObjectId> getSoonToCloseAuctionIds(Jedis jedis) {
-        var auctionIds = jedis.lrange(KEY_AUCTIONS_ABOUNT_TO_CLOSE, 0, -1)
-                .stream().map(ObjectId::new).toList();
-        return auctionIds;
+    public static List<ObjectId> getSoonToCloseAuctionIds(RedisNodes redis) {
+        return getList(redis, KEY_AUCTIONS_ABOUNT_TO_CLOSE, 0);
     }
 
     /*
      * ----------------------- Auction Popularity Tracking -----------------------
      */
 
+    /**
+     * @return the auction ids, or null if the list is not cached
+     */
+    @WithSpan
+    public static List<ObjectId> getPopularAuctions(RedisNodes redis) {
+        return getList(redis, KEY_POPULAR_AUCTIONS, 0);
+    }
+
+    /**
+     * Fill the popular auctions list, most popular first, unless it already
+     * exists.
+     *
+     * @return whether the list was written
+     */
     @WithSpan
-    public static List<ObjectId> getPopularAuctions(Jedis jedis) {
-        var key = KEY_POPULAR_AUCTIONS;
-        return jedis.lrange(key, 0, -1).stream().map(ObjectId::new).toList();
+    public static boolean initPopularAuctions(RedisNodes redis, List<ObjectId> auctionIds) {
+        return initList(redis, KEY_POPULAR_AUCTIONS, auctionIds);
     }
 
     @WithSpan
-    public static void updatePopularAuctions(Jedis jedis) {
-        var mostPopular = jedis.zrevrange(KEY_POPULAR_AUCTIONS_RANKING, 0, AppLogic.MAX_MOST_POPULAR_AUCTIONS);
+    public static void updatePopularAuctions(RedisNodes redis) {
+        var mostPopular = command(redis, KEY_POPULAR_AUCTIONS_RANKING,
+                node -> node.zrevrange(KEY_POPULAR_AUCTIONS_RANKING, 0, AppLogic.MAX_MOST_POPULAR_AUCTIONS));
         if (mostPopular.size() > 0) {
-            jedis.lpush(KEY_POPULAR_AUCTIONS, mostPopular.toArray(new String[mostPopular.size()]));
-            jedis.ltrim(KEY_POPULAR_AUCTIONS, 0, AppLogic.MAX_MOST_POPULAR_AUCTIONS - 1);
+            redis.pipelined(pipeline -> {
+                var node = pipeline.on(KEY_POPULAR_AUCTIONS);
+                node.lpush(KEY_POPULAR_AUCTIONS, mostPopular.toArray(new String[mostPopular.size()]));
+                node.ltrim(KEY_POPULAR_AUCTIONS, 0, AppLogic.MAX_MOST_POPULAR_AUCTIONS - 1);
+            });
         }
     }
 
     @WithSpan
-    public static void incrementPopularAuction(Jedis jedis, ObjectId auctionId) {
-        jedis.zincrby(KEY_POPULAR_AUCTIONS_RANKING, 1, auctionId.toHexString());
+    public static void incrementPopularAuction(RedisNodes redis, ObjectId auctionId) {
+        command(redis, KEY_POPULAR_AUCTIONS_RANKING,
+                // Hex ids, the ranking has no expiry and predates compact ids
+                node -> node.zincrby(KEY_POPULAR_AUCTIONS_RANKING, 1, auctionId.toHexString()));
     }
     /* ------------------------- Internal ------------------------- */
 
-    private static <T> void setDao(Jedis jedis, String key, T dao) {
-        jedis.set(key, KubeSerde.toJson(dao));
-        jedis.expire(key, TTL_DAO);
+    /**
+     * Send a single command. Auto-pipelined nodes send it along with the
+     * commands of concurrent requests.
+     */
+    private static <T> T command(RedisNodes redis, String key, Function<Pipeline, Response<T>> command) {
+        var response = new ArrayList<Response<T>>(1);
+        redis.pipelined(pipeline -> response.add(command.apply(pipeline.on(key))));
+        return response.get(0).get();
+    }
+
+    /**
+     * The id is the hash tag of the key, every key of the same id is in the
+     * same cluster slot.
+     */
+    private static String followedKey(ObjectId userId, boolean open) {
+        return key(open ? PREFIX_USER_FOLLOWED_OPEN : PREFIX_USER_FOLLOWED_CLOSED, userId);
+    }
+
+    private static long epochMillis(LocalDateTime time) {
+        return time.toInstant(ZoneOffset.UTC).toEpochMilli();
+    }
+
+    private static String key(String prefix, Object id) {
+        if (id instanceof ObjectId objectId)
+            return prefix + "{" + compactId(objectId) + "}";
+        return prefix + "{" + id + "}";
+    }
+
+    /**
+     * The hash that holds a field of a bucketed prefix, see
+     * {@link #NAME_BUCKETS}.
+     */
+    private static String bucketKey(String prefix, String field) {
+        return key(prefix, Math.floorMod(field.hashCode(), NAME_BUCKETS));
+    }
+
+    /**
+     * @return the 12 bytes of the id in unpadded base64url, 16 characters
+     */
+    public static String compactId(ObjectId id) {
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(id.toByteArray());
+    }
+
+    /**
+     * Parse an id written by {@link #compactId(ObjectId)}, or a hex id written
+     * before compact ids were used.
+     */
+    public static ObjectId parseId(String id) {
+        if (id.length() == 24)
+            return new ObjectId(id);
+        return new ObjectId(Base64.getUrlDecoder().decode(id));
+    }
+
+    private static void pushAuctionBid(RoutedPipeline pipeline, ObjectId auctionId, ObjectId bidId) {
+        var key = key(PREFIX_AUCTION_BIDS, auctionId);
+        var node = pipeline.on(key);
+        node.lpushx(key, compactId(bidId));
+        // Trimming drops the end marker once the index is full
+        node.ltrim(key, 0, MAX_AUCTION_BIDS - 1);
+        node.expire(key, TTL_DAO);
+    }
+
+    private static IndexPage indexPage(List<String> entries, boolean complete, int limit) {
+        var ids = new ArrayList<ObjectId>(entries.size());
+        for (var entry : entries) {
+            if (entry.equals(INDEX_END))
+                return new IndexPage(IndexPage.Status.HIT, ids);
+            ids.add(parseId(entry));
+        }
+        if (ids.size() < limit && !complete)
+            return new IndexPage(IndexPage.Status.OUT_OF_WINDOW, null);
+        return new IndexPage(IndexPage.Status.HIT, ids);
+    }
+
+    private static void recordBid(RoutedPipeline pipeline, ObjectId auctionId, double amount,
+            AuctionDao.Status status) {
+        var key = key(PREFIX_BID_ADMISSION, auctionId);
+        pipeline.on(key).eval(SCRIPT_RECORD_BID.source, List.of(key),
+                List.of(Double.toString(amount), status.toString(), Integer.toString(TTL_DAO)));
+    }
+
+    private static Object evalScript(Jedis jedis, LuaScript script, List<String> keys, List<String> args) {
+        try {
+            return jedis.evalsha(script.sha1, keys, args);
+        } catch (JedisNoScriptException e) {
+            return jedis.eval(script.source, keys, args);
+        }
+    }
+
+    private static class LuaScript {
+        final String source;
+        final String sha1;
+
+        LuaScript(String source) {
+            this.source = source;
+            try {
+                var digest = MessageDigest.getInstance("SHA-1").digest(source.getBytes(StandardCharsets.UTF_8));
+                this.sha1 = HexFormat.of().formatHex(digest);
+            } catch (NoSuchAlgorithmException e) {
+                throw new IllegalStateException(e);
+            }
+        }
     }
 
-    private static <T> void setDao(Pipeline jedis, String key, T dao) {
-        jedis.set(key, KubeSerde.toJson(dao));
-        jedis.expire(key, TTL_DAO);
+    private static void setMissing(RedisNodes redis, String key) {
+        command(redis, key, node -> node.setex(key, TTL_MISSING, ""));
     }
 
-    private static void unsetDao(Jedis jedis, String key) {
-        jedis.del(key);
+    private static boolean isMissing(RedisNodes redis, String key) {
+        return command(redis, key, node -> node.exists(key));
     }
 
-    private static <T> T getDao(Jedis jedis, String key, Class<T> clazz) {
-        var json = jedis.get(key);
-        if (json == null)
+    private static void pushUserAuction(RoutedPipeline pipeline, ObjectId userId, ObjectId auctionId) {
+        var key = key(PREFIX_USER_AUCTIONS, userId);
+        var node = pipeline.on(key);
+        node.rpushx(key, compactId(auctionId));
+        node.expire(key, TTL_DAO);
+    }
+
+    /**
+     * Write a list only if the key does not exist, an update that lands
+     * meanwhile wins over the initial contents.
+     */
+    private static boolean initList(RedisNodes redis, String key, List<ObjectId> ids) {
+        return redis.withKey(key, jedis -> {
+            RoundTripCounter.increment();
+            jedis.watch(key);
+            RoundTripCounter.increment();
+            if (jedis.exists(key)) {
+                jedis.unwatch();
+                return false;
+            }
+            RoundTripCounter.increment();
+            var transaction = jedis.multi();
+            transaction.rpush(key, listEntries(ids));
+            return transaction.exec() != null;
+        });
+    }
+
+    /**
+     * Read a listing of ids written by {@link #initList} or
+     * {@link #listEntries}.
+     * 
+     * @param limit The maximum number of ids to read, 0 for all.
+     * @return the ids, or null if the list is missing
+     */
+    private static List<ObjectId> getList(RedisNodes redis, String key, int limit) {
+        var entries = command(redis, key, node -> node.lrange(key, 0, limit - 1));
+        if (entries.isEmpty())
             return null;
-        return KubeSerde.fromJson(json, clazz);
+        return entries.stream().filter(entry -> !entry.equals(INDEX_END)).map(Redis::parseId).toList();
+    }
+
+    /**
+     * The entries of a listing of ids. An empty listing holds a single
+     * {@link #INDEX_END}, so that it is told apart from a missing one.
+     */
+    private static String[] listEntries(Collection<ObjectId> ids) {
+        if (ids.isEmpty())
+            return new String[] { INDEX_END };
+        return ids.stream().map(Redis::compactId).toArray(String[]::new);
+    }
+
+    private static void pushRecentAuction(RoutedPipeline pipeline, ObjectId auctionId) {
+        var node = pipeline.on(KEY_RECENT_AUCTIONS);
+        // A missing list is rebuilt from Mongo, it would otherwise only hold
+        // the auctions created since
+        node.lpushx(KEY_RECENT_AUCTIONS, compactId(auctionId));
+        node.ltrim(KEY_RECENT_AUCTIONS, 0, AppLogic.MAX_RECENT_AUCTIONS - 1);
+    }
+
+    private static void setUserKeys(RoutedPipeline pipeline, UserDao userDao, long recomputeMillis) {
+        setDao(pipeline, key(PREFIX_USER, userDao.id), userDao, recomputeMillis);
+        var usernameKey = bucketKey(PREFIX_USERNAME_IDS, userDao.username);
+        setBucketField(pipeline, usernameKey, userDao.username, compactId(userDao.id));
+        setUserDisplayName(pipeline, userDao.id, Kube.userDisplayName(userDao.username, userDao.status));
+    }
+
+    private static void setUserDisplayName(RoutedPipeline pipeline, ObjectId userId, String displayName) {
+        var field = compactId(userId);
+        setBucketField(pipeline, bucketKey(PREFIX_USER_DISPLAY_NAMES, field), field, displayName);
+    }
+
+    /**
+     * Fields of a bucket expire together, {@link #TTL_DAO} after the bucket
+     * was created. A field is at most that stale, later writes do not extend
+     * the bucket.
+     */
+    private static void setBucketField(RoutedPipeline pipeline, String key, String field, String value) {
+        pipeline.on(key).eval(SCRIPT_SET_BUCKET_FIELD.source, List.of(key),
+                List.of(field, value, Integer.toString(TTL_DAO)));
+    }
+
+    private static <T> void setDao(RedisNodes redis, String key, T dao) {
+        setDao(redis, key, dao, 0);
+    }
+
+    private static <T> void setDao(RedisNodes redis, String key, T dao, long recomputeMillis) {
+        redis.pipelined(pipeline -> setDao(pipeline, key, dao, recomputeMillis));
+    }
+
+    private static <T> void setDao(RoutedPipeline pipeline, String key, T dao) {
+        setDao(pipeline, key, dao, 0);
+    }
+
+    private static <T> void setDao(RoutedPipeline pipeline, String key, T dao, long recomputeMillis) {
+        pipeline.on(key).set(SafeEncoder.encode(key), encodeDao(dao, recomputeMillis),
+                SetParams.setParams().ex(TTL_DAO));
+    }
+
+    /**
+     * Watch the keys of each slot, reload them and store them in a transaction
+     * that fails if any of them was written in the meantime.
+     */
+    private static <T, E extends Exception> boolean refreshDaoMany(
+            RedisNodes redis,
+            String prefix,
+            Collection<ObjectId> ids,
+            DaoLoader<T, E> loader,
+            Function<T, ObjectId> idOf) throws E {
+        var keys = new HashMap<ObjectId, String>(ids.size());
+        for (var id : ids)
+            keys.put(id, key(prefix, id));
+
+        var stored = true;
+        for (var group : redis.groupBySlot(keys)) {
+            stored &= redis.withKey(keys.get(group.get(0)), jedis -> {
+                RoundTripCounter.increment();
+                jedis.watch(group.stream().map(keys::get).toArray(String[]::new));
+                try {
+                    var start = System.nanoTime();
+                    var daos = loader.load(group);
+                    var recomputeMillis = Kube.elapsedMillis(start);
+                    RoundTripCounter.increment();
+                    var transaction = jedis.multi();
+                    for (var dao : daos) {
+                        var key = SafeEncoder.encode(key(prefix, idOf.apply(dao)));
+                        transaction.set(key, encodeDao(dao, recomputeMillis), SetParams.setParams().ex(TTL_DAO));
+                    }
+                    return transaction.exec() != null;
+                } catch (Exception e) {
+                    jedis.unwatch();
+                    throw e;
+                }
+            });
+        }
+        return stored;
+    }
+
+    private static byte[] encodeDao(Object dao, long recomputeMillis) {
+        var payload = codec.encode(dao);
+        var buffer = ByteBuffer.allocate(ENVELOPE_SIZE + payload.length);
+        buffer.put(ENVELOPE_MAGIC);
+        buffer.putInt((int) Math.min(recomputeMillis, Integer.MAX_VALUE));
+        buffer.putLong(System.currentTimeMillis() + TTL_DAO * 1000L);
+        buffer.put(payload);
+        return buffer.array();
+    }
+
+    private static <T> T decodeDao(byte[] data, Class<T> clazz, ObjectId id, Collection<ObjectId> refreshDue) {
+        // Entries written before the envelope was introduced never refresh early
+        if (data.length < ENVELOPE_SIZE || data[0] != ENVELOPE_MAGIC)
+            return codec.decode(data, clazz);
+
+        var buffer = ByteBuffer.wrap(data, 1, ENVELOPE_SIZE - 1);
+        var recomputeMillis = buffer.getInt();
+        var expiryMillis = buffer.getLong();
+        var dao = codec.decode(Arrays.copyOfRange(data, ENVELOPE_SIZE, data.length), clazz);
+        if (dao != null && refreshDue != null && isRefreshDue(recomputeMillis, expiryMillis))
+            refreshDue.add(id);
+        return dao;
+    }
+
+    /**
+     * XFetch: refresh if now - delta * beta * ln(random) is past the expiry.
+     */
+    private static boolean isRefreshDue(long recomputeMillis, long expiryMillis) {
+        if (earlyRefresh.beta <= 0)
+            return false;
+        var delta = Math.max(recomputeMillis, earlyRefresh.minDelta.toMillis());
+        var random = ThreadLocalRandom.current().nextDouble();
+        var gap = -delta * earlyRefresh.beta * Math.log(random);
+        return System.currentTimeMillis() + gap >= expiryMillis;
+    }
+
+    private static void unsetDao(RedisNodes redis, String key) {
+        command(redis, key, node -> node.del(key));
+    }
+
+    private static <T> T getDao(RedisNodes redis, String key, Class<T> clazz) {
+        return getDao(redis, key, clazz, null, null);
+    }
+
+    private static <T> T getDao(RedisNodes redis, String key, Class<T> clazz, ObjectId id,
+            Collection<ObjectId> refreshDue) {
+        var data = command(redis, key, node -> node.get(SafeEncoder.encode(key)));
+        if (data == null)
+            return null;
+        return decodeDao(data, clazz, id, refreshDue);
     }
 
     private static <T> HashMap<ObjectId, T> getDaoMany(
-            Jedis jedis,
+            RedisNodes redis,
             String prefix,
             Collection<ObjectId> ids,
             Class<T> clazz) {
-        var bidResponses = new HashMap<ObjectId, Response<String>>(ids.size());
-        try (var pipeline = jedis.pipelined()) {
-            for (var id : ids) {
-                var key = PREFIX_BID + id;
-                var response = pipeline.get(key);
-                bidResponses.put(id, response);
-            }
+        return getDaoMany(redis, prefix, ids, clazz, null);
+    }
+
+    /**
+     * Costs one round trip per node, nodes are read in parallel.
+     */
+    private static <T> HashMap<ObjectId, T> getDaoMany(
+            RedisNodes redis,
+            String prefix,
+            Collection<ObjectId> ids,
+            Class<T> clazz,
+            Collection<ObjectId> refreshDue) {
+        var values = mget(redis, prefix, ids);
+        var daos = new HashMap<ObjectId, T>(values.size());
+        for (var entry : values.entrySet()) {
+            var id = entry.getKey();
+            var dao = decodeDao(entry.getValue(), clazz, id, refreshDue);
+            if (dao != null)
+                daos.put(id, dao);
         }
+        return daos;
+    }
 
-        var daos = new HashMap<ObjectId, T>(ids.size());
-        for (var entry : bidResponses.entrySet()) {
-            var bidId = entry.getKey();
-            var response = entry.getValue();
-            if (response.get() == null)
-                continue;
-            var dao = KubeSerde.fromJson(response.get(), clazz);
-            daos.put(bidId, dao);
+    /**
+     * Get the keys of many ids with one MGET per slot, sent as a single
+     * pipeline. Costs one round trip per node.
+     *
+     * @return the values of the keys that exist, by id
+     */
+    private static HashMap<ObjectId, byte[]> mget(RedisNodes redis, String prefix, Collection<ObjectId> ids) {
+        var keys = new HashMap<ObjectId, String>(ids.size());
+        for (var id : ids)
+            keys.put(id, key(prefix, id));
+
+        var groups = redis.groupBySlot(keys);
+        var responses = new ArrayList<Response<List<byte[]>>>(groups.size());
+        redis.pipelined(pipeline -> {
+            for (var group : groups) {
+                var groupKeys = group.stream().map(id -> SafeEncoder.encode(keys.get(id))).toArray(byte[][]::new);
+                responses.add(pipeline.on(keys.get(group.get(0))).mget(groupKeys));
+            }
+        });
+
+        var values = new HashMap<ObjectId, byte[]>(ids.size());
+        var groupIterator = groups.iterator();
+        for (var response : responses) {
+            var group = groupIterator.next();
+            var groupValues = response.get();
+            for (var i = 0; i < group.size(); ++i) {
+                if (groupValues.get(i) != null)
+                    values.put(group.get(i), groupValues.get(i));
+            }
         }
+        return values;
+    }
 
-        return daos;
+    /**
+     * Get fields of a bucketed prefix with one HMGET per bucket, sent as a
+     * single pipeline. Costs one round trip per node.
+     *
+     * @return the values of the fields that exist, by field
+     */
+    private static HashMap<String, String> hmgetBucketed(RedisNodes redis, String prefix, Collection<String> fields) {
+        var buckets = new HashMap<String, List<String>>();
+        for (var field : fields)
+            buckets.computeIfAbsent(bucketKey(prefix, field), k -> new ArrayList<>()).add(field);
+
+        var responses = new HashMap<String, Response<List<String>>>(buckets.size());
+        redis.pipelined(pipeline -> {
+            for (var bucket : buckets.entrySet()) {
+                var key = bucket.getKey();
+                responses.put(key, pipeline.on(key).hmget(key, bucket.getValue().toArray(String[]::new)));
+            }
+        });
+
+        var values = new HashMap<String, String>(fields.size());
+        for (var bucket : buckets.entrySet()) {
+            var bucketFields = bucket.getValue();
+            var bucketValues = responses.get(bucket.getKey()).get();
+            for (var i = 0; i < bucketFields.size(); ++i) {
+                if (bucketValues.get(i) != null)
+                    values.put(bucketFields.get(i), bucketValues.get(i));
+            }
+        }
+        return values;
     }
-}
\ No newline at end of file
+}
@@ -3,21 +3,35 @@ package scc.kube;
 import java.util.UUID;
 import java.util.logging.Logger;
 
-import redis.clients.jedis.Jedis;
 import scc.SessionToken;
 import scc.exception.BadCredentialsException;
 import scc.exception.UnauthorizedException;
 import scc.exception.UserNotFoundException;
 
+/**
+ * Sessions stored in Redis.
+ * Validated sessions are trusted for a short window through {@link KubeCache}
+ * so that most validations do not reach Redis, revoking sessions drops them
+ * from the caches of every pod.
+ */
 public class RedisAuth implements Auth {
     private static final Logger logger = Logger.getLogger(RedisAuth.class.getName());
 
-    private final Jedis jedis;
+    private static final int REVOKE_ATTEMPTS = 3;
+    private static final long REVOKE_RETRY_MILLIS = 50;
+
+    private final RedisNodes redis;
     private final Mongo mongo;
+    private final KubeCache cache;
+
+    public RedisAuth(RedisNodes redis, Mongo mongo) {
+        this(redis, mongo, KubeCache.disabled());
+    }
 
-    public RedisAuth(Jedis jedis, Mongo mongo) {
-        this.jedis = jedis;
+    public RedisAuth(RedisNodes redis, Mongo mongo, KubeCache cache) {
+        this.redis = redis;
         this.mongo = mongo;
+        this.cache = cache;
     }
 
     @Override
@@ -27,18 +41,24 @@ public class RedisAuth implements Auth {
         if (!userDao.hashedPassword.equals(Kube.hashUserPassword(password)))
             throw new BadCredentialsException();
         var token = new SessionToken(UUID.randomUUID().toString());
-        Redis.setSession(this.jedis, username, token.getToken());
+        Redis.setSession(this.redis, username, token.getToken());
         return token;
     }
 
     @Override
     public String validate(SessionToken token) throws BadCredentialsException {
         logger.fine("Validating token: " + token.getToken());
-        var username = Redis.getSession(this.jedis, token.getToken());
+        var cached = this.cache.getSession(token.getToken());
+        if (cached != null)
+            return cached;
+
+        var loadToken = this.cache.beginSessionLoad();
+        var username = Redis.getSession(this.redis, token.getToken());
         if (username == null) {
             logger.fine("Token not found");
             throw new BadCredentialsException("Token not found");
         }
+        this.cache.putSession(token.getToken(), username, loadToken);
         logger.fine("Token found, userId: " + username);
         return username;
     }
@@ -51,8 +71,39 @@ public class RedisAuth implements Auth {
         return userId;
     }
 
+    /**
+     * The caches of every pod are dropped first, then the sessions in Redis,
+     * retried a few times.
+     *
+     * @throws RedisBreaker.UnavailableException if the sessions could not be
+     *                                           removed from Redis
+     */
+    @Override
+    public void revokeSessions(String username) {
+        this.cache.revokeSessions(username);
+        for (var attempt = 1;; ++attempt) {
+            try {
+                Redis.removeUserSessions(this.redis, username);
+                return;
+            } catch (RuntimeException e) {
+                if (attempt >= REVOKE_ATTEMPTS)
+                    throw e;
+                logger.warning("Failed to remove sessions of " + username + ", retrying: " + e);
+                sleep(REVOKE_RETRY_MILLIS * attempt);
+            }
+        }
+    }
+
     @Override
     public void close() throws Exception {
     }
 
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
 }
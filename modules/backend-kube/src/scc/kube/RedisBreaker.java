@@ -0,0 +1,216 @@
+package scc.kube;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+import java.util.logging.Logger;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+import redis.clients.jedis.exceptions.JedisConnectionException;
+import redis.clients.jedis.exceptions.JedisExhaustedPoolException;
+import scc.kube.config.RedisBreakerConfig;
+
+/**
+ * Circuit breaker around Redis, shared by every request of a pod.
+ *
+ * A call made through {@link #guard guarded} nodes fails when it cannot reach
+ * Redis, or borrow a connection, or when it takes longer than the call budget.
+ * Once enough of the recent calls have failed the breaker opens: calls are
+ * rejected with {@link UnavailableException} without touching Redis, and
+ * {@link KubeRepo} reads from Mongo and skips cache writes. After the open
+ * duration a few probe calls are let through, the breaker closes if they all
+ * succeed and opens again otherwise.
+ */
+public class RedisBreaker {
+    private static final Logger logger = Logger.getLogger(RedisBreaker.class.getName());
+
+    private static final AttributeKey<String> ATTR_STATE = AttributeKey.stringKey("state");
+
+    private static final LongCounter transitionCounter = GlobalOpenTelemetry.getMeter("scc.kube")
+            .counterBuilder("redis.breaker.transitions")
+            .setDescription("Circuit breaker state changes, by new state")
+            .build();
+    private static final LongCounter rejectedCounter = GlobalOpenTelemetry.getMeter("scc.kube")
+            .counterBuilder("redis.breaker.rejected")
+            .setDescription("Redis calls rejected while the circuit breaker was open")
+            .build();
+
+    /**
+     * Redis could not be used, either the breaker is open or the call could
+     * not reach Redis. Nothing was read or written.
+     */
+    public static class UnavailableException extends RuntimeException {
+        UnavailableException(String message, Throwable cause) {
+            super(message, cause);
+        }
+    }
+
+    private static enum State {
+        CLOSED, OPEN, HALF_OPEN
+    }
+
+    @FunctionalInterface
+    private interface NodesCall<T, E extends Exception> {
+        T apply(RedisNodes nodes) throws E;
+    }
+
+    private final RedisBreakerConfig config;
+    private final long budgetNanos;
+    // Outcomes of the last calls while closed, true if the call failed
+    private final boolean[] outcomes;
+    private int next;
+    private int calls;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openUntil;
+    private int probesLeft;
+    private int probesSucceeded;
+
+    private RedisBreaker(RedisBreakerConfig config) {
+        this.config = config;
+        this.budgetNanos = config == null ? 0 : config.callBudget.toNanos();
+        this.outcomes = config == null ? null : new boolean[config.window];
+    }
+
+    public static RedisBreaker create(RedisBreakerConfig config) {
+        if (config.callBudget.isZero() || config.callBudget.isNegative())
+            return disabled();
+        logger.info("Using Redis circuit breaker with " + config);
+        return new RedisBreaker(config);
+    }
+
+    public static RedisBreaker disabled() {
+        return new RedisBreaker(null);
+    }
+
+    /**
+     * @return nodes whose calls go through the breaker
+     */
+    public RedisNodes guard(RedisNodes nodes) {
+        if (this.config == null)
+            return nodes;
+        return new GuardedNodes(nodes);
+    }
+
+    private synchronized boolean tryAcquire() {
+        switch (this.state) {
+            case CLOSED:
+                return true;
+            case OPEN:
+                if (System.nanoTime() - this.openUntil < 0)
+                    return false;
+                this.transition(State.HALF_OPEN);
+                this.probesLeft = this.config.probes;
+                this.probesSucceeded = 0;
+                // Fall through, this call is the first probe
+            case HALF_OPEN:
+            default:
+                if (this.probesLeft == 0)
+                    return false;
+                this.probesLeft--;
+                return true;
+        }
+    }
+
+    private synchronized void record(boolean failed) {
+        switch (this.state) {
+            case CLOSED:
+                if (this.calls == this.outcomes.length) {
+                    if (this.outcomes[this.next])
+                        this.failures--;
+                } else {
+                    this.calls++;
+                }
+                this.outcomes[this.next] = failed;
+                if (failed)
+                    this.failures++;
+                this.next = (this.next + 1) % this.outcomes.length;
+                if (this.calls == this.outcomes.length
+                        && this.failures >= this.config.failureRatio * this.calls)
+                    this.open();
+                break;
+            case HALF_OPEN:
+                if (failed) {
+                    this.open();
+                } else if (++this.probesSucceeded >= this.config.probes) {
+                    this.transition(State.CLOSED);
+                    this.calls = 0;
+                    this.failures = 0;
+                    this.next = 0;
+                }
+                break;
+            case OPEN:
+            default:
+                // A call that started before the breaker opened
+                break;
+        }
+    }
+
+    private void open() {
+        this.transition(State.OPEN);
+        this.openUntil = System.nanoTime() + this.config.openDuration.toNanos();
+    }
+
+    private void transition(State state) {
+        logger.warning("Redis circuit breaker " + this.state + " -> " + state);
+        this.state = state;
+        transitionCounter.add(1, Attributes.of(ATTR_STATE, state.name().toLowerCase()));
+    }
+
+    private class GuardedNodes implements RedisNodes {
+        private final RedisNodes nodes;
+
+        GuardedNodes(RedisNodes nodes) {
+            this.nodes = nodes;
+        }
+
+        @Override
+        public <T, E extends Exception> T withKey(String key, NodeFunction<T, E> function) throws E {
+            return this.call(nodes -> nodes.withKey(key, function));
+        }
+
+        @Override
+        public void pipelined(Consumer<RoutedPipeline> commands) {
+            this.call(nodes -> {
+                nodes.pipelined(commands);
+                return null;
+            });
+        }
+
+        @Override
+        public <K> Collection<List<K>> groupBySlot(Map<K, String> keys) {
+            return this.nodes.groupBySlot(keys);
+        }
+
+        @Override
+        public boolean supportsConcurrentUse() {
+            return this.nodes.supportsConcurrentUse();
+        }
+
+        @Override
+        public void close() {
+            this.nodes.close();
+        }
+
+        private <T, E extends Exception> T call(NodesCall<T, E> call) throws E {
+            if (!tryAcquire()) {
+                rejectedCounter.add(1);
+                throw new UnavailableException("Redis circuit breaker is open", null);
+            }
+            var start = System.nanoTime();
+            var failed = false;
+            try {
+                return call.apply(this.nodes);
+            } catch (JedisConnectionException | JedisExhaustedPoolException e) {
+                failed = true;
+                throw new UnavailableException("Redis is unreachable", e);
+            } finally {
+                record(failed || System.nanoTime() - start > budgetNanos);
+            }
+        }
+    }
+}
@@ -0,0 +1,66 @@
+package scc.kube;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.Pipeline;
+
+/**
+ * The Redis nodes used by a request, a single node or the masters of a Redis
+ * Cluster. Acquired from {@link KubeRedis} and closed when the request ends.
+ *
+ * Commands are routed by key. A function passed to {@link #withKey} must only
+ * touch keys in the slot of that key, {@link Redis} gives keys that are used
+ * together the same hash tag. A {@link #pipelined} batch may touch any key,
+ * each command is sent to the node that owns its key and the nodes are
+ * flushed in parallel.
+ */
+public interface RedisNodes extends AutoCloseable {
+
+    @FunctionalInterface
+    public interface NodeFunction<T, E extends Exception> {
+        T apply(Jedis jedis) throws E;
+    }
+
+    /**
+     * Pipeline that spans nodes, commands must be sent to the pipeline returned
+     * for their key.
+     */
+    @FunctionalInterface
+    public interface RoutedPipeline {
+        Pipeline on(String key);
+    }
+
+    /**
+     * Run commands on the node that owns a key.
+     * In a cluster the function is run again once if the slot moved while it
+     * ran, it must not have side effects outside of Redis.
+     */
+    <T, E extends Exception> T withKey(String key, NodeFunction<T, E> function) throws E;
+
+    /**
+     * Send commands as one pipeline per node. Responses can be read once this
+     * returns. Counts one round trip per node.
+     */
+    void pipelined(Consumer<RoutedPipeline> commands);
+
+    /**
+     * Group keys that can be used in the same transaction or multi-key
+     * command.
+     *
+     * @param keys The key of each item.
+     * @return the items, grouped
+     */
+    <K> Collection<List<K>> groupBySlot(Map<K, String> keys);
+
+    /**
+     * @return whether the nodes can be used by several threads at once
+     */
+    boolean supportsConcurrentUse();
+
+    @Override
+    void close();
+}
@@ -0,0 +1,72 @@
+package scc.kube.bench;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.Arrays;
+
+import org.bson.types.ObjectId;
+
+import com.mongodb.client.model.Filters;
+
+import scc.exception.BidConflictException;
+import scc.kube.Mongo;
+import scc.kube.config.KubeEnv;
+import scc.kube.dao.AuctionDao;
+import scc.kube.dao.BidDao;
+
+/**
+ * Places a growing number of bids on a single auction in the configured Mongo
+ * database and reports the bid latency as the history grows. With bid buckets
+ * the latency should not depend on how many bids the auction already has.
+ * The auction and its bids are deleted afterwards.
+ *
+ * Usage: BidBenchmark [bids] [bids per report]
+ */
+public class BidBenchmark {
+    public static void main(String[] args) throws BidConflictException {
+        var bids = args.length > 0 ? Integer.parseInt(args[0]) : 20000;
+        var step = args.length > 1 ? Integer.parseInt(args[1]) : 1000;
+
+        try (var mongo = new Mongo(KubeEnv.getMongoConfig())) {
+            var now = LocalDateTime.now(ZoneOffset.UTC);
+            var auctionDao = new AuctionDao();
+            auctionDao.title = "Bid benchmark";
+            auctionDao.description = "Bid benchmark";
+            auctionDao.userId = new ObjectId();
+            auctionDao.createTime = now;
+            auctionDao.closeTime = now.plusDays(1);
+            auctionDao.status = AuctionDao.Status.OPEN;
+            auctionDao = mongo.createAuction(auctionDao);
+
+            try {
+                System.out.printf("%10s %12s %12s %12s%n", "bids", "mean us", "p50 us", "p99 us");
+                var latencies = new long[step];
+                for (var placed = 0; placed < bids;) {
+                    var count = Math.min(step, bids - placed);
+                    for (var i = 0; i < count; ++i) {
+                        var bidDao = new BidDao();
+                        bidDao.userId = new ObjectId();
+                        bidDao.amount = placed + i + 1;
+                        bidDao.createTime = LocalDateTime.now(ZoneOffset.UTC);
+                        var start = System.nanoTime();
+                        mongo.createBid(auctionDao.id, bidDao);
+                        latencies[i] = System.nanoTime() - start;
+                    }
+                    placed += count;
+
+                    var sorted = Arrays.copyOf(latencies, count);
+                    Arrays.sort(sorted);
+                    System.out.printf("%10d %12.1f %12.1f %12.1f%n",
+                            placed,
+                            Arrays.stream(sorted).average().orElse(0) / 1000,
+                            sorted[count / 2] / 1000.0,
+                            sorted[Math.min(count - 1, count * 99 / 100)] / 1000.0);
+                }
+            } finally {
+                mongo.bidCollection.deleteMany(Filters.eq("auction_id", auctionDao.id));
+                mongo.bidLookupCollection.deleteMany(Filters.eq("auction_id", auctionDao.id));
+                mongo.auctionCollection.deleteOne(Filters.eq("_id", auctionDao.id));
+            }
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package scc.kube.bench;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.bson.types.ObjectId;
+
+import scc.kube.codec.BinaryCacheCodec;
+import scc.kube.codec.CacheCodec;
+import scc.kube.codec.JsonCacheCodec;
+import scc.kube.dao.AuctionDao;
+import scc.kube.dao.BidDao;
+import scc.kube.dao.QuestionDao;
+import scc.kube.dao.UserDao;
+
+/**
+ * Compares the cache codecs on a synthetic set of DAOs.
+ * Reports the average encoded size (the Redis value size) and the encode and
+ * decode cost per DAO.
+ *
+ * Usage: CodecBenchmark [iterations]
+ */
+public class CodecBenchmark {
+    private static final int WARMUP_ITERATIONS = 20;
+
+    public static void main(String[] args) {
+        var iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        var daos = sampleDaos(new Random(42), 1000);
+
+        run("json", new JsonCacheCodec(), daos, iterations);
+        run("binary", new BinaryCacheCodec(0), daos, iterations);
+        run("binary+deflate", new BinaryCacheCodec(512), daos, iterations);
+    }
+
+    private static void run(String name, CacheCodec codec, List<Object> daos, int iterations) {
+        var encoded = new ArrayList<byte[]>(daos.size());
+        var totalBytes = 0L;
+        for (var dao : daos) {
+            var data = codec.encode(dao);
+            encoded.add(data);
+            totalBytes += data.length;
+        }
+
+        for (var i = 0; i < WARMUP_ITERATIONS; ++i)
+            roundTrip(codec, daos, encoded);
+
+        var encodeNanos = 0L;
+        var decodeNanos = 0L;
+        var sink = 0L;
+        for (var i = 0; i < iterations; ++i) {
+            var start = System.nanoTime();
+            for (var dao : daos)
+                sink += codec.encode(dao).length;
+            var middle = System.nanoTime();
+            for (var j = 0; j < daos.size(); ++j)
+                sink += codec.decode(encoded.get(j), daos.get(j).getClass()) == null ? 0 : 1;
+            var end = System.nanoTime();
+            encodeNanos += middle - start;
+            decodeNanos += end - middle;
+        }
+
+        var operations = (double) iterations * daos.size();
+        System.out.printf("%-16s avg bytes %8.1f   encode %8.1f ns/op   decode %8.1f ns/op   (%d)%n",
+                name,
+                (double) totalBytes / daos.size(),
+                encodeNanos / operations,
+                decodeNanos / operations,
+                sink);
+    }
+
+    private static void roundTrip(CacheCodec codec, List<Object> daos, List<byte[]> encoded) {
+        for (var j = 0; j < daos.size(); ++j) {
+            codec.encode(daos.get(j));
+            codec.decode(encoded.get(j), daos.get(j).getClass());
+        }
+    }
+
+    private static List<Object> sampleDaos(Random random, int count) {
+        var daos = new ArrayList<Object>(count);
+        var now = LocalDateTime.now(ZoneOffset.UTC);
+        for (var i = 0; i < count; ++i) {
+            switch (i % 4) {
+                case 0 -> {
+                    var dao = new AuctionDao();
+                    dao.id = new ObjectId();
+                    dao.title = "Auction " + random.nextInt(100000);
+                    dao.description = text(random, 64 + random.nextInt(2048));
+                    dao.imageId = Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+                    dao.userId = new ObjectId();
+                    dao.createTime = now;
+                    dao.closeTime = now.plusDays(1);
+                    dao.initialPrice = random.nextInt(1000);
+                    dao.status = AuctionDao.Status.OPEN;
+                    daos.add(dao);
+                }
+                case 1 -> {
+                    var dao = new BidDao();
+                    dao.id = new ObjectId();
+                    dao.auctionId = new ObjectId();
+                    dao.userId = new ObjectId();
+                    dao.amount = random.nextInt(10000);
+                    dao.createTime = now;
+                    daos.add(dao);
+                }
+                case 2 -> {
+                    var dao = new QuestionDao();
+                    dao.id = new ObjectId();
+                    dao.auctionId = new ObjectId();
+                    dao.userId = new ObjectId();
+                    dao.question = text(random, 32 + random.nextInt(128));
+                    dao.createTime = now;
+                    if (random.nextBoolean()) {
+                        dao.reply = new QuestionDao.Reply();
+                        dao.reply.reply = text(random, 32 + random.nextInt(128));
+                        dao.reply.createTime = now;
+                        dao.reply.userId = new ObjectId();
+                    }
+                    daos.add(dao);
+                }
+                default -> {
+                    var dao = new UserDao();
+                    dao.id = new ObjectId();
+                    dao.username = "user" + random.nextInt(1000000);
+                    dao.name = "User " + random.nextInt(1000000);
+                    dao.hashedPassword = Long.toHexString(random.nextLong()) + Long.toHexString(random.nextLong());
+                    dao.status = UserDao.Status.ACTIVE;
+                    dao.createTime = now;
+                    daos.add(dao);
+                }
+            }
+        }
+        return daos;
+    }
+
+    private static String text(Random random, int length) {
+        var words = new String[] { "vintage", "mint", "condition", "rare", "original", "box", "signed", "the",
+                "with", "and", "includes", "shipping", "collector", "edition", "new" };
+        var builder = new StringBuilder(length + 16);
+        while (builder.length() < length)
+            builder.append(words[random.nextInt(words.length)]).append(' ');
+        return builder.toString();
+    }
+}
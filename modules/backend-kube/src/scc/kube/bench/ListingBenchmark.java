@@ -0,0 +1,135 @@
+package scc.kube.bench;
+
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+
+import com.mongodb.client.model.Filters;
+
+import scc.exception.BidConflictException;
+import scc.exception.BidNotFoundException;
+import scc.exception.UserAlreadyExistsException;
+import scc.exception.UserNotFoundException;
+import scc.kube.AsyncMongo;
+import scc.kube.KubeCache;
+import scc.kube.KubeRedis;
+import scc.kube.KubeRefresher;
+import scc.kube.KubeRepo;
+import scc.kube.Mongo;
+import scc.kube.config.KubeEnv;
+import scc.kube.dao.AuctionDao;
+import scc.kube.dao.BidDao;
+import scc.kube.dao.UserDao;
+
+/**
+ * Assembles listings of auctions on cold caches and reports their latency
+ * with the Mongo misses loaded one after another and at once.
+ * Every listing is of auctions, owners and bidders that no listing has
+ * touched before, so every lookup misses Redis and goes to Mongo. The
+ * auctions, bids and users are deleted afterwards, what was cached in Redis
+ * expires on its own.
+ *
+ * Usage: ListingBenchmark [listings] [auctions per listing] [threads]
+ */
+public class ListingBenchmark {
+    public static void main(String[] args)
+            throws UserAlreadyExistsException, BidConflictException, UserNotFoundException, BidNotFoundException {
+        var listings = args.length > 0 ? Integer.parseInt(args[0]) : 100;
+        var size = args.length > 1 ? Integer.parseInt(args[1]) : 20;
+        var threads = args.length > 2 ? Integer.parseInt(args[2]) : KubeEnv.getMongoAsyncThreads();
+
+        try (var mongo = new Mongo(KubeEnv.getMongoConfig());
+                var redis = KubeRedis.create(KubeEnv.getRedisConfig());
+                var asyncMongo = AsyncMongo.create(mongo, threads)) {
+            var userIds = new ArrayList<ObjectId>();
+            var auctionIds = new ArrayList<ObjectId>();
+            try {
+                System.out.println("Creating " + 2 * listings * size + " auctions");
+                var syncListings = createListings(mongo, listings, size, userIds, auctionIds);
+                var asyncListings = createListings(mongo, listings, size, userIds, auctionIds);
+
+                System.out.printf("%10s %12s %12s %12s%n", "mode", "mean ms", "p50 ms", "p99 ms");
+                run(mongo, redis, AsyncMongo.sync(mongo), "sync", syncListings);
+                run(mongo, redis, asyncMongo, "async", asyncListings);
+            } finally {
+                mongo.bidCollection.deleteMany(Filters.in("auction_id", auctionIds));
+                mongo.bidLookupCollection.deleteMany(Filters.in("auction_id", auctionIds));
+                mongo.auctionCollection.deleteMany(Filters.in("_id", auctionIds));
+                mongo.userCollection.deleteMany(Filters.in("_id", userIds));
+            }
+        }
+    }
+
+    private static void run(Mongo mongo, KubeRedis redis, AsyncMongo asyncMongo, String mode,
+            List<List<AuctionDao>> listings) throws UserNotFoundException, BidNotFoundException {
+        var latencies = new long[listings.size()];
+        try (var nodes = redis.acquire()) {
+            var repo = new KubeRepo(nodes, mongo, KubeCache.disabled(), KubeRefresher.disabled(), asyncMongo);
+            for (var i = 0; i < listings.size(); ++i) {
+                var start = System.nanoTime();
+                repo.getAuctionListing(listings.get(i));
+                latencies[i] = System.nanoTime() - start;
+            }
+        }
+
+        Arrays.sort(latencies);
+        var count = latencies.length;
+        System.out.printf("%10s %12.2f %12.2f %12.2f%n",
+                mode,
+                Arrays.stream(latencies).average().orElse(0) / 1e6,
+                latencies[count / 2] / 1e6,
+                latencies[Math.min(count - 1, count * 99 / 100)] / 1e6);
+    }
+
+    /**
+     * Create listings of auctions, each with its own owner and a top bid by its
+     * own bidder.
+     */
+    private static List<List<AuctionDao>> createListings(Mongo mongo, int listings, int size,
+            List<ObjectId> userIds, List<ObjectId> auctionIds) throws UserAlreadyExistsException, BidConflictException {
+        var now = LocalDateTime.now(ZoneOffset.UTC);
+        var created = new ArrayList<List<AuctionDao>>(listings);
+        for (var l = 0; l < listings; ++l) {
+            var listing = new ArrayList<AuctionDao>(size);
+            for (var i = 0; i < size; ++i) {
+                var owner = createUser(mongo, now);
+                var bidder = createUser(mongo, now);
+                userIds.add(owner.id);
+                userIds.add(bidder.id);
+
+                var auctionDao = new AuctionDao();
+                auctionDao.title = "Listing benchmark";
+                auctionDao.description = "Listing benchmark";
+                auctionDao.userId = owner.id;
+                auctionDao.createTime = now;
+                auctionDao.closeTime = now.plusDays(1);
+                auctionDao.status = AuctionDao.Status.OPEN;
+                auctionDao = mongo.createAuction(auctionDao);
+                auctionIds.add(auctionDao.id);
+
+                var bidDao = new BidDao();
+                bidDao.userId = bidder.id;
+                bidDao.amount = 1;
+                bidDao.createTime = now;
+                mongo.createBid(auctionDao.id, bidDao);
+                listing.add(auctionDao);
+            }
+            created.add(listing);
+        }
+        return created;
+    }
+
+    private static UserDao createUser(Mongo mongo, LocalDateTime now) throws UserAlreadyExistsException {
+        var userDao = new UserDao();
+        userDao.username = "listing-benchmark-" + new ObjectId().toHexString();
+        userDao.name = "Listing benchmark";
+        userDao.hashedPassword = "-";
+        userDao.status = UserDao.Status.ACTIVE;
+        userDao.createTime = now;
+        return mongo.createUser(userDao);
+    }
+}
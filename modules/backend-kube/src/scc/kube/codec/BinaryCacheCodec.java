@@ -0,0 +1,367 @@
+package scc.kube.codec;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+import org.bson.types.ObjectId;
+
+import scc.kube.dao.AuctionDao;
+import scc.kube.dao.BidDao;
+import scc.kube.dao.QuestionDao;
+import scc.kube.dao.UserDao;
+
+/**
+ * Compact, versioned binary encoding of the DAOs.
+ *
+ * Layout: magic byte, version byte, type byte, followed by the fields of the
+ * DAO in declaration order. Object ids are stored as their 12 raw bytes, times
+ * as epoch seconds plus nanos and strings as a tag, a varint length and UTF-8
+ * bytes. Strings marked as compressible (auction descriptions) are deflated
+ * when they are longer than the compression threshold.
+ *
+ * Any change to the layout must bump {@link #VERSION}; entries written with a
+ * different version decode as a cache miss, as do truncated or corrupt ones.
+ */
+public class BinaryCacheCodec implements CacheCodec {
+    private static final byte MAGIC = (byte) 0xB1;
+    private static final byte VERSION = 1;
+    private static final int HEADER_SIZE = 3;
+
+    private static final byte TYPE_AUCTION = 1;
+    private static final byte TYPE_BID = 2;
+    private static final byte TYPE_QUESTION = 3;
+    private static final byte TYPE_USER = 4;
+
+    private static final byte STRING_NULL = 0;
+    private static final byte STRING_PLAIN = 1;
+    private static final byte STRING_DEFLATED = 2;
+
+    // Largest ratio deflate can reach, bounds the inflated length of a string
+    private static final int MAX_DEFLATE_RATIO = 1032;
+
+    private final int compressThreshold;
+
+    /**
+     * @param compressThreshold Minimum length in bytes of compressible strings to
+     *                          be deflated. Zero or negative disables
+     *                          compression.
+     */
+    public BinaryCacheCodec(int compressThreshold) {
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public byte[] encode(Object dao) {
+        var buffer = new ByteArrayOutputStream(128);
+        try (var out = new DataOutputStream(buffer)) {
+            out.writeByte(MAGIC);
+            out.writeByte(VERSION);
+            if (dao instanceof AuctionDao auctionDao) {
+                out.writeByte(TYPE_AUCTION);
+                this.writeAuction(out, auctionDao);
+            } else if (dao instanceof BidDao bidDao) {
+                out.writeByte(TYPE_BID);
+                this.writeBid(out, bidDao);
+            } else if (dao instanceof QuestionDao questionDao) {
+                out.writeByte(TYPE_QUESTION);
+                this.writeQuestion(out, questionDao);
+            } else if (dao instanceof UserDao userDao) {
+                out.writeByte(TYPE_USER);
+                this.writeUser(out, userDao);
+            } else {
+                throw new IllegalArgumentException("Unsupported DAO type: " + dao.getClass());
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return buffer.toByteArray();
+    }
+
+    @Override
+    public <T> T decode(byte[] data, Class<T> clazz) {
+        if (data.length < HEADER_SIZE || data[0] != MAGIC || data[1] != VERSION)
+            return null;
+
+        var in = new DataInputStream(new ByteArrayInputStream(data, HEADER_SIZE, data.length - HEADER_SIZE));
+        try {
+            Object dao = switch (data[2]) {
+                case TYPE_AUCTION -> this.readAuction(in);
+                case TYPE_BID -> this.readBid(in);
+                case TYPE_QUESTION -> this.readQuestion(in);
+                case TYPE_USER -> this.readUser(in);
+                default -> null;
+            };
+            if (!clazz.isInstance(dao))
+                return null;
+            return clazz.cast(dao);
+        } catch (IOException | RuntimeException e) {
+            // A truncated or corrupt entry is reloaded like any other miss
+            return null;
+        }
+    }
+
+    /* ------------------------- DAOs ------------------------- */
+
+    private void writeAuction(DataOutputStream out, AuctionDao dao) throws IOException {
+        writeObjectId(out, dao.id);
+        this.writeString(out, dao.title, false);
+        this.writeString(out, dao.description, true);
+        this.writeString(out, dao.imageId, false);
+        writeObjectId(out, dao.userId);
+        writeTime(out, dao.createTime);
+        writeTime(out, dao.closeTime);
+        out.writeDouble(dao.initialPrice);
+        writeEnum(out, dao.status);
+    }
+
+    private AuctionDao readAuction(DataInputStream in) throws IOException {
+        var dao = new AuctionDao();
+        dao.id = readObjectId(in);
+        dao.title = readString(in);
+        dao.description = readString(in);
+        dao.imageId = readString(in);
+        dao.userId = readObjectId(in);
+        dao.createTime = readTime(in);
+        dao.closeTime = readTime(in);
+        dao.initialPrice = in.readDouble();
+        dao.status = readEnum(in, AuctionDao.Status.values());
+        return dao;
+    }
+
+    private void writeBid(DataOutputStream out, BidDao dao) throws IOException {
+        writeObjectId(out, dao.id);
+        writeObjectId(out, dao.auctionId);
+        writeObjectId(out, dao.userId);
+        out.writeDouble(dao.amount);
+        writeTime(out, dao.createTime);
+    }
+
+    private BidDao readBid(DataInputStream in) throws IOException {
+        var dao = new BidDao();
+        dao.id = readObjectId(in);
+        dao.auctionId = readObjectId(in);
+        dao.userId = readObjectId(in);
+        dao.amount = in.readDouble();
+        dao.createTime = readTime(in);
+        return dao;
+    }
+
+    private void writeQuestion(DataOutputStream out, QuestionDao dao) throws IOException {
+        writeObjectId(out, dao.id);
+        writeObjectId(out, dao.auctionId);
+        writeObjectId(out, dao.userId);
+        this.writeString(out, dao.question, false);
+        writeTime(out, dao.createTime);
+        out.writeBoolean(dao.reply != null);
+        if (dao.reply != null) {
+            this.writeString(out, dao.reply.reply, false);
+            writeTime(out, dao.reply.createTime);
+            writeObjectId(out, dao.reply.userId);
+        }
+    }
+
+    private QuestionDao readQuestion(DataInputStream in) throws IOException {
+        var dao = new QuestionDao();
+        dao.id = readObjectId(in);
+        dao.auctionId = readObjectId(in);
+        dao.userId = readObjectId(in);
+        dao.question = readString(in);
+        dao.createTime = readTime(in);
+        if (in.readBoolean()) {
+            dao.reply = new QuestionDao.Reply();
+            dao.reply.reply = readString(in);
+            dao.reply.createTime = readTime(in);
+            dao.reply.userId = readObjectId(in);
+        }
+        return dao;
+    }
+
+    private void writeUser(DataOutputStream out, UserDao dao) throws IOException {
+        writeObjectId(out, dao.id);
+        this.writeString(out, dao.username, false);
+        this.writeString(out, dao.name, false);
+        this.writeString(out, dao.hashedPassword, false);
+        this.writeString(out, dao.profileImageId, false);
+        writeEnum(out, dao.status);
+        writeTime(out, dao.createTime);
+    }
+
+    private UserDao readUser(DataInputStream in) throws IOException {
+        var dao = new UserDao();
+        dao.id = readObjectId(in);
+        dao.username = readString(in);
+        dao.name = readString(in);
+        dao.hashedPassword = readString(in);
+        dao.profileImageId = readString(in);
+        dao.status = readEnum(in, UserDao.Status.values());
+        dao.createTime = readTime(in);
+        return dao;
+    }
+
+    /* ------------------------- Fields ------------------------- */
+
+    private static void writeObjectId(DataOutputStream out, ObjectId id) throws IOException {
+        out.writeBoolean(id != null);
+        if (id != null)
+            out.write(id.toByteArray());
+    }
+
+    private static ObjectId readObjectId(DataInputStream in) throws IOException {
+        if (!in.readBoolean())
+            return null;
+        var bytes = new byte[12];
+        in.readFully(bytes);
+        return new ObjectId(bytes);
+    }
+
+    private static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeBoolean(time != null);
+        if (time != null) {
+            out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(time.getNano());
+        }
+    }
+
+    private static LocalDateTime readTime(DataInputStream in) throws IOException {
+        if (!in.readBoolean())
+            return null;
+        var seconds = in.readLong();
+        var nanos = in.readInt();
+        return LocalDateTime.ofEpochSecond(seconds, nanos, ZoneOffset.UTC);
+    }
+
+    private static void writeEnum(DataOutputStream out, Enum<?> value) throws IOException {
+        out.writeByte(value == null ? -1 : value.ordinal());
+    }
+
+    private static <E extends Enum<E>> E readEnum(DataInputStream in, E[] values) throws IOException {
+        var ordinal = in.readByte();
+        if (ordinal == -1)
+            return null;
+        if (ordinal < 0 || ordinal >= values.length)
+            throw new IOException("Invalid ordinal: " + ordinal);
+        return values[ordinal];
+    }
+
+    private void writeString(DataOutputStream out, String value, boolean compressible) throws IOException {
+        if (value == null) {
+            out.writeByte(STRING_NULL);
+            return;
+        }
+
+        var bytes = value.getBytes(StandardCharsets.UTF_8);
+        if (compressible && this.compressThreshold > 0 && bytes.length >= this.compressThreshold) {
+            var deflated = deflate(bytes);
+            if (deflated.length < bytes.length) {
+                out.writeByte(STRING_DEFLATED);
+                writeVarInt(out, bytes.length);
+                writeVarInt(out, deflated.length);
+                out.write(deflated);
+                return;
+            }
+        }
+
+        out.writeByte(STRING_PLAIN);
+        writeVarInt(out, bytes.length);
+        out.write(bytes);
+    }
+
+    private static String readString(DataInputStream in) throws IOException {
+        var tag = in.readByte();
+        switch (tag) {
+            case STRING_NULL:
+                return null;
+            case STRING_PLAIN: {
+                var bytes = new byte[readLength(in, in.available())];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            case STRING_DEFLATED: {
+                var length = readVarInt(in);
+                var deflated = new byte[readLength(in, in.available())];
+                in.readFully(deflated);
+                if (length < 0 || length > (long) deflated.length * MAX_DEFLATE_RATIO)
+                    throw new IOException("Invalid inflated length: " + length);
+                return new String(inflate(deflated, length), StandardCharsets.UTF_8);
+            }
+            default:
+                throw new IOException("Invalid string tag: " + tag);
+        }
+    }
+
+    private static void writeVarInt(DataOutputStream out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    private static int readVarInt(DataInputStream in) throws IOException {
+        var value = 0;
+        var shift = 0;
+        while (true) {
+            var b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0)
+                return value;
+            shift += 7;
+            if (shift > 28)
+                throw new IOException("Malformed varint");
+        }
+    }
+
+    /**
+     * Read a length that must not exceed max, a corrupt one would otherwise
+     * allocate an arbitrarily large array.
+     */
+    private static int readLength(DataInputStream in, int max) throws IOException {
+        var length = readVarInt(in);
+        if (length < 0 || length > max)
+            throw new IOException("Invalid length: " + length);
+        return length;
+    }
+
+    private static byte[] deflate(byte[] bytes) {
+        var deflater = new Deflater(Deflater.BEST_SPEED);
+        try {
+            deflater.setInput(bytes);
+            deflater.finish();
+            var out = new ByteArrayOutputStream(bytes.length / 2);
+            var chunk = new byte[512];
+            while (!deflater.finished()) {
+                var n = deflater.deflate(chunk);
+                out.write(chunk, 0, n);
+            }
+            return out.toByteArray();
+        } finally {
+            deflater.end();
+        }
+    }
+
+    private static byte[] inflate(byte[] bytes, int length) throws IOException {
+        var inflater = new Inflater();
+        try {
+            inflater.setInput(bytes);
+            var result = new byte[length];
+            var n = inflater.inflate(result);
+            if (n != length)
+                throw new IOException("Truncated deflated string");
+            return result;
+        } catch (DataFormatException e) {
+            throw new IOException(e);
+        } finally {
+            inflater.end();
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package scc.kube.codec;
+
+import scc.kube.config.CacheCodecConfig;
+
+/**
+ * Encoding used for DAOs stored in Redis.
+ */
+public interface CacheCodec {
+    public static final String JSON = "json";
+    public static final String BINARY = "binary";
+
+    byte[] encode(Object dao);
+
+    /**
+     * Decode a DAO.
+     * 
+     * @param data  The encoded DAO.
+     * @param clazz The class of the DAO.
+     * @return the decoded DAO, or null if the data was not produced by this codec
+     *         (or by an incompatible version of it) or is corrupt
+     */
+    <T> T decode(byte[] data, Class<T> clazz);
+
+    public static CacheCodec fromConfig(CacheCodecConfig config) {
+        return switch (config.codec) {
+            case JSON -> new JsonCacheCodec();
+            case BINARY -> new BinaryCacheCodec(config.compressThreshold);
+            default -> throw new IllegalArgumentException("Unknown cache codec: " + config.codec);
+        };
+    }
+}
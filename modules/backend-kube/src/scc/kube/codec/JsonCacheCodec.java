@@ -0,0 +1,23 @@
+package scc.kube.codec;
+
+import scc.kube.KubeSerde;
+
+public class JsonCacheCodec implements CacheCodec {
+
+    @Override
+    public byte[] encode(Object dao) {
+        return KubeSerde.toJsonBytes(dao);
+    }
+
+    @Override
+    public <T> T decode(byte[] data, Class<T> clazz) {
+        if (data.length == 0 || data[0] != '{')
+            return null;
+        try {
+            return KubeSerde.fromJson(data, clazz);
+        } catch (RuntimeException e) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,16 @@
+package scc.kube.config;
+
+public class CacheCodecConfig {
+    public final String codec;
+    public final int compressThreshold;
+
+    public CacheCodecConfig(String codec, int compressThreshold) {
+        this.codec = codec;
+        this.compressThreshold = compressThreshold;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheCodecConfig [codec=" + codec + ", compressThreshold=" + compressThreshold + "]";
+    }
+}
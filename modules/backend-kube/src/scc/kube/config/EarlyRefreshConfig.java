@@ -0,0 +1,20 @@
+package scc.kube.config;
+
+import java.time.Duration;
+
+public class EarlyRefreshConfig {
+    public final double beta;
+    public final Duration minDelta;
+    public final int threads;
+
+    public EarlyRefreshConfig(double beta, Duration minDelta, int threads) {
+        this.beta = beta;
+        this.minDelta = minDelta;
+        this.threads = threads;
+    }
+
+    @Override
+    public String toString() {
+        return "EarlyRefreshConfig [beta=" + beta + ", minDelta=" + minDelta + ", threads=" + threads + "]";
+    }
+}
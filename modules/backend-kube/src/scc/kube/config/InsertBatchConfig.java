@@ -0,0 +1,19 @@
+package scc.kube.config;
+
+import java.time.Duration;
+
+public class InsertBatchConfig {
+    // Zero disables batching
+    public final int maxDocuments;
+    public final Duration window;
+
+    public InsertBatchConfig(int maxDocuments, Duration window) {
+        this.maxDocuments = maxDocuments;
+        this.window = window;
+    }
+
+    @Override
+    public String toString() {
+        return "InsertBatchConfig [maxDocuments=" + maxDocuments + ", window=" + window + "]";
+    }
+}
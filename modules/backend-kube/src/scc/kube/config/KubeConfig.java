@@ -5,6 +5,7 @@ public class KubeConfig {
     private final MongoConfig mongoConfig;
     private final RedisConfig redisConfig;
     private final RabbitmqConfig rabbitmqConfig;
+    private final NearCacheConfig nearCacheConfig;
     private final boolean enableCaching;
 
     public KubeConfig(
@@ -12,11 +13,13 @@ public class KubeConfig {
             MongoConfig mongoConfig,
             RedisConfig redisConfig,
             RabbitmqConfig rabbitmqConfig,
+            NearCacheConfig nearCacheConfig,
             boolean enableCaching) {
         this.mediaConfig = mediaConfig;
         this.mongoConfig = mongoConfig;
         this.redisConfig = redisConfig;
         this.rabbitmqConfig = rabbitmqConfig;
+        this.nearCacheConfig = nearCacheConfig;
         this.enableCaching = enableCaching;
     }
 
@@ -36,6 +39,10 @@ public class KubeConfig {
         return rabbitmqConfig;
     }
 
+    public NearCacheConfig getNearCacheConfig() {
+        return nearCacheConfig;
+    }
+
     public boolean isCachingEnabled() {
         return enableCaching;
     }
@@ -43,7 +50,8 @@ public class KubeConfig {
     @Override
     public String toString() {
         return "KubeConfig [mediaConfig=" + mediaConfig + ", mongoConfig=" + mongoConfig + ", redisConfig="
-                + redisConfig + ", rabbitmqConfig=" + rabbitmqConfig + ", enableCaching=" + enableCaching + "]";
+                + redisConfig + ", rabbitmqConfig=" + rabbitmqConfig + ", nearCacheConfig=" + nearCacheConfig
+                + ", enableCaching=" + enableCaching + "]";
     }
 
 }
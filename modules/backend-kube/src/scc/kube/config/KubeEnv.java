@@ -1,5 +1,7 @@
 package scc.kube.config;
 
+import java.time.Duration;
+
 public class KubeEnv {
 
     public static final String KUBE_CACHING_ENABLED = "KUBE_CACHING_ENABLED";
@@ -10,21 +12,51 @@ public class KubeEnv {
     public static final String KUBE_MONGO_DATABASE_NAME = "KUBE_MONGO_DATABASE_NAME";
     public static final String KUBE_MONGO_AUCTION_COLLECTION = "KUBE_MONGO_AUCTION_COLLECTION";
     public static final String KUBE_MONGO_BID_COLLECTION = "KUBE_MONGO_BID_COLLECTION";
+    public static final String KUBE_MONGO_BID_LOOKUP_COLLECTION = "KUBE_MONGO_BID_LOOKUP_COLLECTION";
     public static final String KUBE_MONGO_QUESTION_COLLECTION = "KUBE_MONGO_QUESTION_COLLECTION";
+    public static final String KUBE_MONGO_FOLLOW_COLLECTION = "KUBE_MONGO_FOLLOW_COLLECTION";
     public static final String KUBE_MONGO_USER_COLLECTION = "KUBE_MONGO_USER_COLLECTION";
+    public static final String KUBE_MONGO_LISTING_READ_PREFERENCE = "KUBE_MONGO_LISTING_READ_PREFERENCE";
+    public static final String KUBE_MONGO_MAX_STALENESS_SECONDS = "KUBE_MONGO_MAX_STALENESS_SECONDS";
+    public static final String KUBE_MONGO_ASYNC_THREADS = "KUBE_MONGO_ASYNC_THREADS";
+    public static final String KUBE_MONGO_INSERT_BATCH_MAX_DOCUMENTS = "KUBE_MONGO_INSERT_BATCH_MAX_DOCUMENTS";
+    public static final String KUBE_MONGO_INSERT_BATCH_WINDOW_MILLIS = "KUBE_MONGO_INSERT_BATCH_WINDOW_MILLIS";
 
     public static final String KUBE_REDIS_URL = "KUBE_REDIS_URL";
     public static final String KUBE_REDIS_PORT = "KUBE_REDIS_PORT";
+    public static final String KUBE_REDIS_CLUSTER = "KUBE_REDIS_CLUSTER";
+    public static final String KUBE_REDIS_AUTO_PIPELINE_CONNECTIONS = "KUBE_REDIS_AUTO_PIPELINE_CONNECTIONS";
+    public static final String KUBE_REDIS_CODEC = "KUBE_REDIS_CODEC";
+    public static final String KUBE_REDIS_CODEC_COMPRESS_THRESHOLD = "KUBE_REDIS_CODEC_COMPRESS_THRESHOLD";
+    public static final String KUBE_REDIS_EARLY_REFRESH_BETA = "KUBE_REDIS_EARLY_REFRESH_BETA";
+    public static final String KUBE_REDIS_EARLY_REFRESH_MIN_DELTA_MILLIS = "KUBE_REDIS_EARLY_REFRESH_MIN_DELTA_MILLIS";
+    public static final String KUBE_REDIS_EARLY_REFRESH_THREADS = "KUBE_REDIS_EARLY_REFRESH_THREADS";
+    public static final String KUBE_REDIS_BREAKER_BUDGET_MILLIS = "KUBE_REDIS_BREAKER_BUDGET_MILLIS";
+    public static final String KUBE_REDIS_BREAKER_WINDOW = "KUBE_REDIS_BREAKER_WINDOW";
+    public static final String KUBE_REDIS_BREAKER_FAILURE_RATIO = "KUBE_REDIS_BREAKER_FAILURE_RATIO";
+    public static final String KUBE_REDIS_BREAKER_OPEN_MILLIS = "KUBE_REDIS_BREAKER_OPEN_MILLIS";
+    public static final String KUBE_REDIS_BREAKER_PROBES = "KUBE_REDIS_BREAKER_PROBES";
 
     public static final String KUBE_RABBITMQ_HOST = "KUBE_RABBITMQ_HOST";
     public static final String KUBE_RABBITMQ_PORT = "KUBE_RABBITMQ_PORT";
 
+    public static final String KUBE_NEAR_CACHE_MAX_BYTES = "KUBE_NEAR_CACHE_MAX_BYTES";
+    public static final String KUBE_NEAR_CACHE_MAX_AGE_SECONDS = "KUBE_NEAR_CACHE_MAX_AGE_SECONDS";
+
+    public static final String KUBE_SESSION_CACHE_MAX_BYTES = "KUBE_SESSION_CACHE_MAX_BYTES";
+    public static final String KUBE_SESSION_CACHE_TRUST_MILLIS = "KUBE_SESSION_CACHE_TRUST_MILLIS";
+
+    public static final String KUBE_FRONT_PAGE_REFRESH_MILLIS = "KUBE_FRONT_PAGE_REFRESH_MILLIS";
+
+    public static final String KUBE_WARMUP_ENABLED = "KUBE_WARMUP_ENABLED";
+
     public static KubeConfig getKubeConfig() {
         return new KubeConfig(
                 getKubeMediaConfig(),
                 getMongoConfig(),
                 getRedisConfig(),
                 getRabbitmqConfig(),
+                getNearCacheConfig(),
                 getEnableCaching());
     }
 
@@ -38,14 +70,60 @@ public class KubeEnv {
                 getEnvVar(KUBE_MONGO_DATABASE_NAME),
                 getEnvVar(KUBE_MONGO_AUCTION_COLLECTION),
                 getEnvVar(KUBE_MONGO_BID_COLLECTION),
+                getEnvVar(KUBE_MONGO_BID_LOOKUP_COLLECTION),
                 getEnvVar(KUBE_MONGO_QUESTION_COLLECTION),
-                getEnvVar(KUBE_MONGO_USER_COLLECTION));
+                getEnvVar(KUBE_MONGO_FOLLOW_COLLECTION),
+                getEnvVar(KUBE_MONGO_USER_COLLECTION),
+                getEnvVar(KUBE_MONGO_LISTING_READ_PREFERENCE, "primary"),
+                Long.parseLong(getEnvVar(KUBE_MONGO_MAX_STALENESS_SECONDS, "0")));
+    }
+
+    /**
+     * @return how many Mongo queries of listings may run at once, zero runs
+     *         them one after another on the request thread
+     */
+    public static int getMongoAsyncThreads() {
+        return Integer.parseInt(getEnvVar(KUBE_MONGO_ASYNC_THREADS, "16"));
+    }
+
+    /**
+     * @return how question and auction inserts are batched, off unless a
+     *         maximum number of documents is set
+     */
+    public static InsertBatchConfig getInsertBatchConfig() {
+        return new InsertBatchConfig(
+                Integer.parseInt(getEnvVar(KUBE_MONGO_INSERT_BATCH_MAX_DOCUMENTS, "0")),
+                Duration.ofMillis(Long.parseLong(getEnvVar(KUBE_MONGO_INSERT_BATCH_WINDOW_MILLIS, "2"))));
     }
 
     public static RedisConfig getRedisConfig() {
         return new RedisConfig(
                 getEnvVar(KUBE_REDIS_URL),
-                Integer.parseInt(getEnvVar(KUBE_REDIS_PORT)));
+                Integer.parseInt(getEnvVar(KUBE_REDIS_PORT)),
+                Boolean.parseBoolean(getEnvVar(KUBE_REDIS_CLUSTER, "false")),
+                Integer.parseInt(getEnvVar(KUBE_REDIS_AUTO_PIPELINE_CONNECTIONS, "0")));
+    }
+
+    public static CacheCodecConfig getCacheCodecConfig() {
+        return new CacheCodecConfig(
+                getEnvVar(KUBE_REDIS_CODEC, "binary"),
+                Integer.parseInt(getEnvVar(KUBE_REDIS_CODEC_COMPRESS_THRESHOLD, "512")));
+    }
+
+    public static EarlyRefreshConfig getEarlyRefreshConfig() {
+        return new EarlyRefreshConfig(
+                Double.parseDouble(getEnvVar(KUBE_REDIS_EARLY_REFRESH_BETA, "1.0")),
+                Duration.ofMillis(Long.parseLong(getEnvVar(KUBE_REDIS_EARLY_REFRESH_MIN_DELTA_MILLIS, "1000"))),
+                Integer.parseInt(getEnvVar(KUBE_REDIS_EARLY_REFRESH_THREADS, "2")));
+    }
+
+    public static RedisBreakerConfig getRedisBreakerConfig() {
+        return new RedisBreakerConfig(
+                Duration.ofMillis(Long.parseLong(getEnvVar(KUBE_REDIS_BREAKER_BUDGET_MILLIS, "100"))),
+                Integer.parseInt(getEnvVar(KUBE_REDIS_BREAKER_WINDOW, "100")),
+                Double.parseDouble(getEnvVar(KUBE_REDIS_BREAKER_FAILURE_RATIO, "0.5")),
+                Duration.ofMillis(Long.parseLong(getEnvVar(KUBE_REDIS_BREAKER_OPEN_MILLIS, "5000"))),
+                Integer.parseInt(getEnvVar(KUBE_REDIS_BREAKER_PROBES, "5")));
     }
 
     public static RabbitmqConfig getRabbitmqConfig() {
@@ -54,6 +132,32 @@ public class KubeEnv {
                 Integer.parseInt(getEnvVar(KUBE_RABBITMQ_PORT)));
     }
 
+    public static NearCacheConfig getNearCacheConfig() {
+        return new NearCacheConfig(
+                Long.parseLong(getEnvVar(KUBE_NEAR_CACHE_MAX_BYTES, String.valueOf(32 * 1024 * 1024))),
+                Duration.ofSeconds(Long.parseLong(getEnvVar(KUBE_NEAR_CACHE_MAX_AGE_SECONDS, "30"))));
+    }
+
+    public static SessionCacheConfig getSessionCacheConfig() {
+        return new SessionCacheConfig(
+                Long.parseLong(getEnvVar(KUBE_SESSION_CACHE_MAX_BYTES, String.valueOf(4 * 1024 * 1024))),
+                Duration.ofMillis(Long.parseLong(getEnvVar(KUBE_SESSION_CACHE_TRUST_MILLIS, "5000"))));
+    }
+
+    /**
+     * @return how often the front-page listings are rebuilt, zero disables them
+     */
+    public static Duration getFrontPageRefreshInterval() {
+        return Duration.ofMillis(Long.parseLong(getEnvVar(KUBE_FRONT_PAGE_REFRESH_MILLIS, "1000")));
+    }
+
+    /**
+     * @return whether Redis is warmed up from Mongo on startup
+     */
+    public static boolean getEnableWarmup() {
+        return Boolean.parseBoolean(getEnvVar(KUBE_WARMUP_ENABLED, "true"));
+    }
+
     public static boolean getEnableCaching() {
         return Boolean.parseBoolean(getEnvVar(KUBE_CACHING_ENABLED));
     }
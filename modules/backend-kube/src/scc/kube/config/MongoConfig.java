@@ -5,23 +5,36 @@ public class MongoConfig {
     public final String databaseName;
     public final String auctionCollection;
     public final String bidCollection;
+    public final String bidLookupCollection;
     public final String questionCollection;
+    public final String followCollection;
     public final String userCollection;
+    // Read preference of listing queries, see Mongo.Listing
+    public final String listingReadPreference;
+    // Zero for no bound on how far behind a secondary may be
+    public final long maxStalenessSeconds;
 
     public MongoConfig(String connectionUri, String databaseName, String auctionCollection, String bidCollection,
-            String questionCollection, String userCollection) {
+            String bidLookupCollection, String questionCollection, String followCollection, String userCollection,
+            String listingReadPreference, long maxStalenessSeconds) {
         this.connectionUri = connectionUri;
         this.databaseName = databaseName;
         this.auctionCollection = auctionCollection;
         this.bidCollection = bidCollection;
+        this.bidLookupCollection = bidLookupCollection;
         this.questionCollection = questionCollection;
+        this.followCollection = followCollection;
         this.userCollection = userCollection;
+        this.listingReadPreference = listingReadPreference;
+        this.maxStalenessSeconds = maxStalenessSeconds;
     }
 
     @Override
     public String toString() {
         return "MongoConfig [connectionUri=" + connectionUri + ", databaseName=" + databaseName + ", auctionCollection="
-                + auctionCollection + ", bidCollection=" + bidCollection + ", questionCollection=" + questionCollection
-                + ", userCollection=" + userCollection + "]";
+                + auctionCollection + ", bidCollection=" + bidCollection + ", bidLookupCollection="
+                + bidLookupCollection + ", questionCollection=" + questionCollection + ", followCollection="
+                + followCollection + ", userCollection=" + userCollection + ", listingReadPreference="
+                + listingReadPreference + ", maxStalenessSeconds=" + maxStalenessSeconds + "]";
     }
 }
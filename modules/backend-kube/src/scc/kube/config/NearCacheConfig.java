@@ -0,0 +1,18 @@
+package scc.kube.config;
+
+import java.time.Duration;
+
+public class NearCacheConfig {
+    public final long maxBytes;
+    public final Duration maxAge;
+
+    public NearCacheConfig(long maxBytes, Duration maxAge) {
+        this.maxBytes = maxBytes;
+        this.maxAge = maxAge;
+    }
+
+    @Override
+    public String toString() {
+        return "NearCacheConfig [maxBytes=" + maxBytes + ", maxAge=" + maxAge + "]";
+    }
+}
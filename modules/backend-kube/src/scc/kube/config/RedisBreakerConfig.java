@@ -0,0 +1,31 @@
+package scc.kube.config;
+
+import java.time.Duration;
+
+public class RedisBreakerConfig {
+    // Calls slower than this count as failures, zero disables the breaker
+    public final Duration callBudget;
+    // How many of the most recent calls are considered
+    public final int window;
+    // Share of failed calls in the window that opens the breaker
+    public final double failureRatio;
+    // How long the breaker stays open before probing Redis again
+    public final Duration openDuration;
+    // Calls that must succeed in a row to close the breaker again
+    public final int probes;
+
+    public RedisBreakerConfig(Duration callBudget, int window, double failureRatio, Duration openDuration,
+            int probes) {
+        this.callBudget = callBudget;
+        this.window = window;
+        this.failureRatio = failureRatio;
+        this.openDuration = openDuration;
+        this.probes = probes;
+    }
+
+    @Override
+    public String toString() {
+        return "RedisBreakerConfig [callBudget=" + callBudget + ", window=" + window + ", failureRatio="
+                + failureRatio + ", openDuration=" + openDuration + ", probes=" + probes + "]";
+    }
+}
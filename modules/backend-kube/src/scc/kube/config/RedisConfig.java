@@ -3,15 +3,23 @@ package scc.kube.config;
 public class RedisConfig {
     public final String url;
     public final int port;
+    // Whether url and port are a seed node of a Redis Cluster
+    public final boolean cluster;
+    // Shared connections that pipeline the commands of every request, 0 to
+    // give each request a connection of its own
+    public final int autoPipelineConnections;
 
-    public RedisConfig(String url, int port) {
+    public RedisConfig(String url, int port, boolean cluster, int autoPipelineConnections) {
         this.url = url;
         this.port = port;
+        this.cluster = cluster;
+        this.autoPipelineConnections = autoPipelineConnections;
     }
 
     @Override
     public String toString() {
-        return "RedisConfig [url=" + url + ", port=" + port + "]";
+        return "RedisConfig [url=" + url + ", port=" + port + ", cluster=" + cluster + ", autoPipelineConnections="
+                + autoPipelineConnections + "]";
     }
 
-}
\ No newline at end of file
+}
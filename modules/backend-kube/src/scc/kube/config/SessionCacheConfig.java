@@ -0,0 +1,20 @@
+package scc.kube.config;
+
+import java.time.Duration;
+
+public class SessionCacheConfig {
+    public final long maxBytes;
+    // How long a validated session is trusted without asking Redis again, zero
+    // disables the cache
+    public final Duration trustWindow;
+
+    public SessionCacheConfig(long maxBytes, Duration trustWindow) {
+        this.maxBytes = maxBytes;
+        this.trustWindow = trustWindow;
+    }
+
+    @Override
+    public String toString() {
+        return "SessionCacheConfig [maxBytes=" + maxBytes + ", trustWindow=" + trustWindow + "]";
+    }
+}
@@ -0,0 +1,30 @@
+package scc.kube.dao;
+
+import java.util.List;
+
+import org.bson.codecs.pojo.annotations.BsonProperty;
+import org.bson.types.ObjectId;
+
+/**
+ * A fixed-size slice of the bid history of an auction, bids in increasing
+ * amount. Bucket n holds bids n * size to (n + 1) * size - 1 of the auction.
+ */
+public class BidBucketDao {
+    public ObjectId id;
+
+    @BsonProperty(value = "auction_id")
+    public ObjectId auctionId;
+
+    public int seq;
+
+    public int count;
+
+    // Lowest bid of the bucket, the cursor of a bid page seeks on it
+    @BsonProperty(value = "min_amount")
+    public double minAmount;
+
+    public List<BidDao> bids;
+
+    public BidBucketDao() {
+    }
+}
@@ -0,0 +1,28 @@
+package scc.kube.dao;
+
+import java.time.LocalDateTime;
+
+import org.bson.codecs.pojo.annotations.BsonProperty;
+import org.bson.types.ObjectId;
+
+/**
+ * An auction a user has bid on, one per user and auction.
+ */
+public class FollowDao {
+    public ObjectId id;
+
+    @BsonProperty(value = "user_id")
+    public ObjectId userId;
+
+    @BsonProperty(value = "auction_id")
+    public ObjectId auctionId;
+
+    // Status of the auction, open and closed auctions are listed apart
+    public AuctionDao.Status status;
+
+    @BsonProperty(value = "last_bid_time")
+    public LocalDateTime lastBidTime;
+
+    public FollowDao() {
+    }
+}
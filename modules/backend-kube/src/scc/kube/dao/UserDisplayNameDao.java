@@ -0,0 +1,16 @@
+package scc.kube.dao;
+
+import org.bson.types.ObjectId;
+
+/**
+ * The fields of a user needed for its display name, read instead of the whole
+ * {@link UserDao} where only names are shown.
+ */
+public class UserDisplayNameDao {
+    public ObjectId id;
+    public String username;
+    public UserDao.Status status;
+
+    public UserDisplayNameDao() {
+    }
+}
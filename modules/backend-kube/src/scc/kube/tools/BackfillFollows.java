@@ -0,0 +1,54 @@
+package scc.kube.tools;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.logging.Logger;
+
+import org.bson.types.ObjectId;
+
+import scc.exception.AuctionNotFoundException;
+import scc.kube.Mongo;
+import scc.kube.config.KubeEnv;
+import scc.kube.dao.AuctionDao;
+import scc.kube.dao.FollowDao;
+
+/**
+ * Fills the follow collection from the bids already in the bid buckets.
+ * The followed auctions consumer only records bids created while it runs, so
+ * this should run once when it is first deployed. It can be rerun at any
+ * time, follows are only created or moved to a later bid.
+ *
+ * Usage: BackfillFollows
+ */
+public class BackfillFollows {
+    private static final Logger logger = Logger.getLogger(BackfillFollows.class.getName());
+
+    public static void main(String[] args) {
+        try (var mongo = new Mongo(KubeEnv.getMongoConfig())) {
+            var follows = new ArrayList<FollowDao>();
+            mongo.forEachFollowInBids(follows::add);
+            logger.info("Backfilling " + follows.size() + " follows");
+
+            var statuses = new HashMap<ObjectId, AuctionDao.Status>();
+            var recorded = 0L;
+            var skipped = 0L;
+            for (var followDao : follows) {
+                var status = statuses.get(followDao.auctionId);
+                if (status == null) {
+                    try {
+                        status = mongo.getAuction(followDao.auctionId).status;
+                        statuses.put(followDao.auctionId, status);
+                    } catch (AuctionNotFoundException e) {
+                        skipped++;
+                        continue;
+                    }
+                }
+                mongo.recordFollow(followDao.userId, followDao.auctionId, followDao.lastBidTime);
+                if (status == AuctionDao.Status.CLOSED)
+                    mongo.closeFollow(followDao.userId, followDao.auctionId);
+                recorded++;
+            }
+            logger.info("Backfilled " + recorded + " follows, " + skipped + " of deleted auctions skipped");
+        }
+    }
+}
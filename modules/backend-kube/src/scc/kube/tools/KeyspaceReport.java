@@ -0,0 +1,111 @@
+package scc.kube.tools;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+
+import redis.clients.jedis.Jedis;
+import redis.clients.jedis.params.ScanParams;
+import scc.kube.KubeRedis;
+import scc.kube.config.KubeEnv;
+
+/**
+ * Samples the Redis keyspace and reports memory per key prefix.
+ * Keys are grouped by what comes before their hash tag (or their last ':'),
+ * each master node is sampled separately and its counts are scaled to the
+ * number of keys it holds. Run it before and after a change to the key layout
+ * to measure it.
+ *
+ * Usage: KeyspaceReport [sampled keys per node]
+ */
+public class KeyspaceReport {
+    private static final int SCAN_COUNT = 1000;
+
+    private static class PrefixStats {
+        long sampledKeys;
+        long sampledBytes;
+        double estimatedKeys;
+        double estimatedBytes;
+    }
+
+    public static void main(String[] args) {
+        var samplesPerNode = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        var stats = new HashMap<String, PrefixStats>();
+        var totalKeys = new long[1];
+
+        try (var kubeRedis = KubeRedis.create(KubeEnv.getRedisConfig())) {
+            kubeRedis.forEachMaster(jedis -> {
+                var keys = jedis.dbSize();
+                totalKeys[0] += keys;
+                sampleNode(jedis, samplesPerNode, keys, stats);
+            });
+        }
+
+        var rows = new ArrayList<>(stats.entrySet());
+        rows.sort(Comparator.comparingDouble(e -> -e.getValue().estimatedBytes));
+        var totalBytes = rows.stream().mapToDouble(e -> e.getValue().estimatedBytes).sum();
+
+        System.out.printf("%-28s %10s %10s %14s %14s %7s%n",
+                "prefix", "sampled", "avg bytes", "est. keys", "est. bytes", "share");
+        for (var row : rows) {
+            var s = row.getValue();
+            System.out.printf("%-28s %10d %10.1f %14.0f %14.0f %6.1f%%%n",
+                    row.getKey(),
+                    s.sampledKeys,
+                    (double) s.sampledBytes / s.sampledKeys,
+                    s.estimatedKeys,
+                    s.estimatedBytes,
+                    totalBytes > 0 ? 100 * s.estimatedBytes / totalBytes : 0);
+        }
+        System.out.printf("%-28s %10s %10s %14d %14.0f%n", "total", "", "", totalKeys[0], totalBytes);
+    }
+
+    private static void sampleNode(Jedis jedis, int samples, long keys, HashMap<String, PrefixStats> stats) {
+        var nodeStats = new HashMap<String, PrefixStats>();
+        var sampled = 0L;
+        var cursor = ScanParams.SCAN_POINTER_START;
+        var params = new ScanParams().count(SCAN_COUNT);
+        do {
+            var result = jedis.scan(cursor, params);
+            cursor = result.getCursor();
+            for (var key : result.getResult()) {
+                if (sampled >= samples)
+                    break;
+                var bytes = jedis.memoryUsage(key);
+                // Expired or deleted since the scan
+                if (bytes == null)
+                    continue;
+                var s = nodeStats.computeIfAbsent(prefixOf(key), p -> new PrefixStats());
+                s.sampledKeys++;
+                s.sampledBytes += bytes;
+                sampled++;
+            }
+        } while (sampled < samples && !cursor.equals(ScanParams.SCAN_POINTER_START));
+
+        if (sampled == 0)
+            return;
+        var scale = (double) keys / sampled;
+        for (var entry : nodeStats.entrySet()) {
+            var node = entry.getValue();
+            var s = stats.computeIfAbsent(entry.getKey(), p -> new PrefixStats());
+            s.sampledKeys += node.sampledKeys;
+            s.sampledBytes += node.sampledBytes;
+            s.estimatedKeys += node.sampledKeys * scale;
+            s.estimatedBytes += node.sampledBytes * scale;
+        }
+    }
+
+    private static String prefixOf(String key) {
+        // Keys that start with their tag, such as the username filter, are
+        // singletons
+        var tag = key.indexOf('{');
+        if (tag == 0)
+            return key;
+        if (tag > 0)
+            return key.substring(0, tag);
+        var separator = key.lastIndexOf(':');
+        if (separator >= 0)
+            return key.substring(0, separator + 1);
+        return key;
+    }
+}
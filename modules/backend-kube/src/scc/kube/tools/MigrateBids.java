@@ -0,0 +1,50 @@
+package scc.kube.tools;
+
+import java.util.ArrayList;
+import java.util.logging.Logger;
+
+import org.bson.types.ObjectId;
+
+import scc.kube.Mongo;
+import scc.kube.config.KubeEnv;
+
+/**
+ * Moves the bids embedded in auction documents to the bid bucket and bid
+ * lookup collections and records the top bid and bid count of each auction.
+ * Runs as an init container of the backend, so every auction is migrated
+ * before a pod serves it. Auctions it misses, such as ones bid on by an older
+ * pod during a rollout, are migrated by their next bid. It can be rerun at any
+ * time, auctions that got a bid while being migrated are retried.
+ *
+ * Usage: MigrateBids
+ */
+public class MigrateBids {
+    private static final Logger logger = Logger.getLogger(MigrateBids.class.getName());
+
+    private static final int MAX_ATTEMPTS = 3;
+
+    public static void main(String[] args) {
+        try (var mongo = new Mongo(KubeEnv.getMongoConfig())) {
+            var auctionIds = new ArrayList<ObjectId>();
+            mongo.forEachAuctionWithInlineBids(auctionIds::add);
+            logger.info("Migrating bids of " + auctionIds.size() + " auctions");
+
+            var auctions = 0L;
+            var bids = 0L;
+            var failed = 0L;
+            for (var auctionId : auctionIds) {
+                var moved = -1;
+                for (var attempt = 0; attempt < MAX_ATTEMPTS && moved < 0; ++attempt)
+                    moved = mongo.migrateInlineBids(auctionId);
+                if (moved < 0) {
+                    logger.warning("Failed to migrate bids of auction " + auctionId);
+                    failed++;
+                    continue;
+                }
+                auctions++;
+                bids += moved;
+            }
+            logger.info("Migrated " + bids + " bids of " + auctions + " auctions, " + failed + " failed");
+        }
+    }
+}
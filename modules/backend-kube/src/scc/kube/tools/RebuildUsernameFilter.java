@@ -0,0 +1,40 @@
+package scc.kube.tools;
+
+import java.util.logging.Logger;
+
+import scc.kube.KubeRedis;
+import scc.kube.Mongo;
+import scc.kube.Redis;
+import scc.kube.config.KubeEnv;
+import scc.kube.utils.BloomFilter;
+
+/**
+ * Rebuilds the username filter from the user collection.
+ * Lookups of unknown usernames are only rejected by the filter once it has
+ * been built, so this must run once after deploying and can be rerun at any
+ * time, for example when the filter gets too full.
+ *
+ * Usage: RebuildUsernameFilter
+ */
+public class RebuildUsernameFilter {
+    private static final Logger logger = Logger.getLogger(RebuildUsernameFilter.class.getName());
+
+    public static void main(String[] args) {
+        try (var mongo = new Mongo(KubeEnv.getMongoConfig());
+                var kubeRedis = KubeRedis.create(KubeEnv.getRedisConfig());
+                var redis = kubeRedis.acquire()) {
+            Redis.beginUsernameFilterRebuild(redis);
+
+            var bitmap = BloomFilter.newBitmap();
+            var count = new long[1];
+            mongo.forEachUsername(username -> {
+                for (var position : BloomFilter.positions(username))
+                    BloomFilter.set(bitmap, position);
+                count[0]++;
+            });
+
+            Redis.replaceUsernameFilter(redis, bitmap);
+            logger.info("Rebuilt username filter with " + count[0] + " usernames");
+        }
+    }
+}
@@ -0,0 +1,60 @@
+package scc.kube.utils;
+
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Bit positions of a Bloom filter stored as a Redis bitmap.
+ *
+ * Bit 0 is reserved: it is set once the filter has been fully built, a filter
+ * without it may be missing values and must not be used to reject lookups.
+ * Positions use Redis bit order (most significant bit of each byte first) so
+ * that bitmaps built locally with {@link #set(byte[], long)} can be uploaded
+ * as is.
+ *
+ * Sized for about 1.7 million values at a 1% false positive rate.
+ */
+public class BloomFilter {
+    public static final long READY_BIT = 0;
+    public static final long BITS = 1L << 24;
+    public static final int HASHES = 7;
+
+    /**
+     * @param value The value to hash.
+     * @return the {@link #HASHES} bit positions of the value
+     */
+    public static long[] positions(String value) {
+        var h1 = fnv1a(value.getBytes(StandardCharsets.UTF_8));
+        var h2 = mix(h1) | 1;
+        var positions = new long[HASHES];
+        for (var i = 0; i < HASHES; ++i)
+            positions[i] = 1 + Math.floorMod(h1 + i * h2, BITS - 1);
+        return positions;
+    }
+
+    public static byte[] newBitmap() {
+        return new byte[(int) (BITS / 8)];
+    }
+
+    public static void set(byte[] bitmap, long position) {
+        bitmap[(int) (position >>> 3)] |= (byte) (0x80 >>> (position & 7));
+    }
+
+    private static long fnv1a(byte[] bytes) {
+        var hash = 0xcbf29ce484222325L;
+        for (var b : bytes) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Finalizer of MurmurHash3
+    private static long mix(long hash) {
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        hash *= 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return hash;
+    }
+}
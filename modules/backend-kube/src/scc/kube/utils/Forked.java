@@ -0,0 +1,83 @@
+package scc.kube.utils;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+
+/**
+ * A load started ahead of the code that needs its result, so that it runs
+ * concurrently with the caller's other loads.
+ */
+public class Forked<V, E extends Exception> {
+    private final CompletableFuture<V> future;
+    // Round trips made by the thread that ran the load, handed to the joiner
+    private final long[] roundTrips;
+
+    private Forked(CompletableFuture<V> future, long[] roundTrips) {
+        this.future = future;
+        this.roundTrips = roundTrips;
+    }
+
+    /**
+     * @param executor Runs the loader, or null to run it right away on the
+     *                 calling thread.
+     * @param loader   The load to run.
+     */
+    public static <V, E extends Exception> Forked<V, E> run(Executor executor, SingleFlight.Loader<V, E> loader) {
+        if (executor == null) {
+            var future = new CompletableFuture<V>();
+            try {
+                future.complete(loader.load());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+            return new Forked<>(future, new long[1]);
+        }
+
+        var roundTrips = new long[1];
+        return new Forked<>(CompletableFuture.supplyAsync(() -> {
+            var snapshot = RoundTripCounter.current();
+            try {
+                return loader.load();
+            } catch (RuntimeException e) {
+                throw e;
+            } catch (Exception e) {
+                throw new CompletionException(e);
+            } finally {
+                roundTrips[0] = RoundTripCounter.current() - snapshot;
+            }
+        }, executor), roundTrips);
+    }
+
+    /**
+     * A load that completed already, for when there turns out to be nothing to
+     * load.
+     */
+    public static <V, E extends Exception> Forked<V, E> done(V value) {
+        return new Forked<>(CompletableFuture.completedFuture(value), new long[1]);
+    }
+
+    /**
+     * Wait for the load to complete.
+     * Round trips made by the load are counted on the calling thread.
+     *
+     * @return the loaded value
+     */
+    @SuppressWarnings("unchecked")
+    public V join() throws E {
+        try {
+            return this.future.join();
+        } catch (CompletionException e) {
+            var cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (cause instanceof Error error)
+                throw error;
+            // The loader only throws E
+            throw (E) cause;
+        } finally {
+            RoundTripCounter.add(this.roundTrips[0]);
+            this.roundTrips[0] = 0;
+        }
+    }
+}
@@ -0,0 +1,217 @@
+package scc.kube.utils;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import org.bson.BsonTimestamp;
+
+import com.mongodb.ClientSessionOptions;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.MongoWriteException;
+import com.mongodb.WriteError;
+import com.mongodb.client.MongoClient;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.InsertManyOptions;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+
+/**
+ * Groups concurrent inserts into a collection into a single insertMany.
+ *
+ * The first insert of a batch waits at most the batch window for others to
+ * join it, a batch is flushed early once it holds the maximum number of
+ * documents. Inserts that arrive while a batch is being written wait for the
+ * next one. The batch is unordered: each caller gets its own outcome, a
+ * document that fails does not fail the others.
+ */
+public class InsertBatcher<T> implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(InsertBatcher.class.getName());
+
+    // How often an idle flusher checks whether it was closed
+    private static final long CLOSE_POLL_MILLIS = 100;
+
+    private static final AttributeKey<String> ATTR_COLLECTION = AttributeKey.stringKey("collection");
+
+    private static final DoubleHistogram sizeHistogram = GlobalOpenTelemetry.getMeter("scc.kube")
+            .histogramBuilder("mongo.insert_batch.size")
+            .setDescription("Documents written by each batched insert")
+            .build();
+    private static final DoubleHistogram waitHistogram = GlobalOpenTelemetry.getMeter("scc.kube")
+            .histogramBuilder("mongo.insert_batch.wait")
+            .setDescription("Time inserts waited for their batch to be written")
+            .setUnit("ms")
+            .build();
+
+    private static class Pending<T> {
+        final T document;
+        final long enqueuedAt;
+        final CompletableFuture<BsonTimestamp> done = new CompletableFuture<>();
+
+        Pending(T document) {
+            this.document = document;
+            this.enqueuedAt = System.nanoTime();
+        }
+    }
+
+    private final MongoClient client;
+    private final MongoCollection<T> collection;
+    private final int maxDocuments;
+    private final long windowNanos;
+    private final Attributes attributes;
+    private final LinkedBlockingQueue<Pending<T>> queue = new LinkedBlockingQueue<>();
+    private final Thread flusher;
+    private volatile boolean closed;
+
+    /**
+     * @param maxDocuments Documents at which a batch is flushed right away.
+     * @param window       How long the first insert of a batch waits for
+     *                     others.
+     */
+    public InsertBatcher(MongoClient client, MongoCollection<T> collection, int maxDocuments, Duration window) {
+        this.client = client;
+        this.collection = collection;
+        this.maxDocuments = maxDocuments;
+        this.windowNanos = window.toNanos();
+        this.attributes = Attributes.of(ATTR_COLLECTION, collection.getNamespace().getCollectionName());
+        this.flusher = new Thread(this::run, "mongo-insert-batcher-" + collection.getNamespace().getCollectionName());
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    /**
+     * Queue a document for insertion, its id is set once it was written.
+     *
+     * @return completes with the operation time of the batch once it was
+     *         written, null if the server does not report one
+     */
+    public CompletableFuture<BsonTimestamp> submit(T document) {
+        var pending = new Pending<T>(document);
+        if (this.closed) {
+            pending.done.completeExceptionally(new IllegalStateException("Insert batcher is closed"));
+            return pending.done;
+        }
+        this.queue.add(pending);
+        return pending.done;
+    }
+
+    /**
+     * Insert a document and wait for its batch to be written.
+     *
+     * @return the operation time of the batch, null if the server does not
+     *         report one
+     */
+    public BsonTimestamp insert(T document) {
+        try {
+            return this.submit(document).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            throw e;
+        }
+    }
+
+    /**
+     * Write the queued documents and stop.
+     */
+    @Override
+    public void close() {
+        this.closed = true;
+        try {
+            this.flusher.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // Queued after the flusher saw the last batch
+        Pending<T> pending;
+        while ((pending = this.queue.poll()) != null)
+            pending.done.completeExceptionally(new IllegalStateException("Insert batcher is closed"));
+    }
+
+    private void run() {
+        var batch = new ArrayList<Pending<T>>(this.maxDocuments);
+        while (true) {
+            try {
+                var first = this.queue.poll(CLOSE_POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    if (this.closed)
+                        return;
+                    continue;
+                }
+                batch.add(first);
+                var deadline = first.enqueuedAt + this.windowNanos;
+                while (batch.size() < this.maxDocuments) {
+                    var next = this.queue.poll(Math.max(0, deadline - System.nanoTime()), TimeUnit.NANOSECONDS);
+                    if (next == null)
+                        break;
+                    batch.add(next);
+                }
+                this.flush(batch);
+            } catch (InterruptedException e) {
+                failAll(batch, new IllegalStateException("Insert batcher was interrupted"));
+                return;
+            } finally {
+                batch.clear();
+            }
+        }
+    }
+
+    private void flush(List<Pending<T>> batch) {
+        var start = System.nanoTime();
+        for (var pending : batch)
+            waitHistogram.record((start - pending.enqueuedAt) / 1e6, this.attributes);
+        sizeHistogram.record(batch.size(), this.attributes);
+
+        var documents = new ArrayList<T>(batch.size());
+        for (var pending : batch)
+            documents.add(pending.document);
+
+        var failed = new HashMap<Integer, RuntimeException>();
+        // Also reported when some documents failed
+        BsonTimestamp operationTime = null;
+        var sessionOptions = ClientSessionOptions.builder().causallyConsistent(true).build();
+        try (var session = this.client.startSession(sessionOptions)) {
+            try {
+                this.collection.insertMany(session, documents, new InsertManyOptions().ordered(false));
+            } finally {
+                operationTime = session.getOperationTime();
+            }
+        } catch (MongoBulkWriteException e) {
+            if (e.getWriteConcernError() != null) {
+                failAll(batch, e);
+                return;
+            }
+            for (var error : e.getWriteErrors()) {
+                var writeError = new WriteError(error.getCode(), error.getMessage(), error.getDetails());
+                failed.put(error.getIndex(), new MongoWriteException(writeError, e.getServerAddress()));
+            }
+        } catch (RuntimeException e) {
+            logger.warning("Batched insert of " + batch.size() + " documents failed: " + e.getMessage());
+            failAll(batch, e);
+            return;
+        }
+
+        for (var i = 0; i < batch.size(); ++i) {
+            var pending = batch.get(i);
+            var error = failed.get(i);
+            if (error == null)
+                pending.done.complete(operationTime);
+            else
+                pending.done.completeExceptionally(error);
+        }
+    }
+
+    private static <T> void failAll(List<Pending<T>> batch, RuntimeException e) {
+        for (var pending : batch)
+            pending.done.completeExceptionally(e);
+    }
+}
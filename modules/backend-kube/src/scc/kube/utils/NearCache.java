@@ -0,0 +1,180 @@
+package scc.kube.utils;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiPredicate;
+import java.util.function.ToLongFunction;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.DoubleHistogram;
+import io.opentelemetry.api.metrics.LongCounter;
+
+/**
+ * Bounded, size-aware, in-process LRU cache.
+ *
+ * Entries are weighed when inserted and the least recently used entries are
+ * evicted once the total weight goes above the configured maximum. Entries
+ * older than the maximum age are treated as misses, this bounds staleness in
+ * case an invalidation is lost.
+ *
+ * Loads that race with an invalidation must not repopulate the cache with the
+ * value they read before the invalidation, so callers obtain a token with
+ * {@link #beginLoad()} before reading from the backing store and pass it to
+ * {@link #put(Object, Object, long)}.
+ */
+public class NearCache<K, V> {
+    private static final AttributeKey<String> ATTR_CACHE = AttributeKey.stringKey("cache");
+
+    private static final LongCounter hitCounter = GlobalOpenTelemetry.getMeter("scc.kube")
+            .counterBuilder("near_cache.hits").build();
+    private static final LongCounter missCounter = GlobalOpenTelemetry.getMeter("scc.kube")
+            .counterBuilder("near_cache.misses").build();
+    private static final LongCounter evictionCounter = GlobalOpenTelemetry.getMeter("scc.kube")
+            .counterBuilder("near_cache.evictions").build();
+    private static final DoubleHistogram hitAgeHistogram = GlobalOpenTelemetry.getMeter("scc.kube")
+            .histogramBuilder("near_cache.hit_age")
+            .setDescription("Age of the entries returned by hits, how stale a hit may be")
+            .setUnit("ms")
+            .build();
+
+    private static class Entry<V> {
+        final V value;
+        final long weight;
+        final long insertTime;
+
+        Entry(V value, long weight, long insertTime) {
+            this.value = value;
+            this.weight = weight;
+            this.insertTime = insertTime;
+        }
+    }
+
+    private final LinkedHashMap<K, Entry<V>> entries = new LinkedHashMap<>(256, 0.75f, true);
+    private final AtomicLong invalidations = new AtomicLong();
+    private final ToLongFunction<V> weigher;
+    private final long maxWeight;
+    private final long maxAgeNanos;
+    private final Attributes attributes;
+    private long weight;
+
+    public NearCache(String name, long maxWeight, Duration maxAge, ToLongFunction<V> weigher) {
+        this.weigher = weigher;
+        this.maxWeight = maxWeight;
+        this.maxAgeNanos = maxAge.toNanos();
+        this.attributes = Attributes.of(ATTR_CACHE, name);
+
+        GlobalOpenTelemetry.getMeter("scc.kube")
+                .gaugeBuilder("near_cache.weight").ofLongs()
+                .buildWithCallback(m -> m.record(this.weight(), this.attributes));
+        GlobalOpenTelemetry.getMeter("scc.kube")
+                .gaugeBuilder("near_cache.size").ofLongs()
+                .buildWithCallback(m -> m.record(this.size(), this.attributes));
+    }
+
+    /**
+     * Get a cached value.
+     *
+     * @param key The key to lookup.
+     * @return the cached value, or null if it is not present or too old
+     */
+    public V get(K key) {
+        synchronized (this) {
+            var entry = this.entries.get(key);
+            var age = entry != null ? System.nanoTime() - entry.insertTime : 0;
+            if (entry != null && age <= this.maxAgeNanos) {
+                hitCounter.add(1, this.attributes);
+                hitAgeHistogram.record(age / 1e6, this.attributes);
+                return entry.value;
+            }
+            if (entry != null)
+                this.removeEntry(key);
+        }
+        missCounter.add(1, this.attributes);
+        return null;
+    }
+
+    /**
+     * Obtain a token to be used with {@link #put(Object, Object, long)}.
+     *
+     * @return the load token
+     */
+    public long beginLoad() {
+        return this.invalidations.get();
+    }
+
+    /**
+     * Insert a value loaded from the backing store.
+     * The value is dropped if any invalidation happened since the token was
+     * obtained.
+     *
+     * @param key   The key of the value.
+     * @param value The value.
+     * @param token The token returned by {@link #beginLoad()}.
+     */
+    public synchronized void put(K key, V value, long token) {
+        if (this.invalidations.get() != token)
+            return;
+
+        var entryWeight = this.weigher.applyAsLong(value);
+        if (entryWeight > this.maxWeight)
+            return;
+
+        var previous = this.entries.put(key, new Entry<>(value, entryWeight, System.nanoTime()));
+        if (previous != null)
+            this.weight -= previous.weight;
+        this.weight += entryWeight;
+
+        var iterator = this.entries.entrySet().iterator();
+        while (this.weight > this.maxWeight && iterator.hasNext()) {
+            var eldest = iterator.next();
+            iterator.remove();
+            this.weight -= eldest.getValue().weight;
+            evictionCounter.add(1, this.attributes);
+        }
+    }
+
+    public synchronized void invalidate(K key) {
+        this.invalidations.incrementAndGet();
+        this.removeEntry(key);
+    }
+
+    /**
+     * Invalidate every entry that matches a predicate.
+     * Goes through every entry, meant for rare invalidations that can not be
+     * expressed by key.
+     */
+    public synchronized void invalidateIf(BiPredicate<K, V> predicate) {
+        this.invalidations.incrementAndGet();
+        var iterator = this.entries.entrySet().iterator();
+        while (iterator.hasNext()) {
+            var entry = iterator.next();
+            if (predicate.test(entry.getKey(), entry.getValue().value)) {
+                iterator.remove();
+                this.weight -= entry.getValue().weight;
+            }
+        }
+    }
+
+    public synchronized void invalidateAll() {
+        this.invalidations.incrementAndGet();
+        this.entries.clear();
+        this.weight = 0;
+    }
+
+    public synchronized long weight() {
+        return this.weight;
+    }
+
+    public synchronized int size() {
+        return this.entries.size();
+    }
+
+    private void removeEntry(K key) {
+        var removed = this.entries.remove(key);
+        if (removed != null)
+            this.weight -= removed.weight;
+    }
+}
@@ -0,0 +1,77 @@
+package scc.kube.utils;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongHistogram;
+import io.opentelemetry.api.trace.Span;
+import scc.utils.AutoCloseableFn;
+
+/**
+ * Counts network round trips made to Redis by the current thread.
+ *
+ * Helpers in {@link scc.kube.Redis} call {@link #increment()} once per
+ * exchange, a pipeline or transaction counts as one. A pipeline that spans
+ * the nodes of a cluster counts one per node. Repository operations
+ * take a snapshot with {@link #current()} before running and call
+ * {@link #record(String, long)} after, which exports the number of round trips
+ * the operation needed. Loads forked to other threads hand their round trips
+ * back to the thread that joins them, see {@link Forked}.
+ *
+ * Round trips are also set as the {@code redis.round_trips} attribute of the
+ * current span, so that regressions show up in traces.
+ */
+public class RoundTripCounter {
+    private static final AttributeKey<String> ATTR_OPERATION = AttributeKey.stringKey("operation");
+    private static final AttributeKey<Long> ATTR_ROUND_TRIPS = AttributeKey.longKey("redis.round_trips");
+
+    private static final ThreadLocal<long[]> counter = ThreadLocal.withInitial(() -> new long[1]);
+
+    private static final LongHistogram histogram = GlobalOpenTelemetry.getMeter("scc.kube")
+            .histogramBuilder("redis.round_trips")
+            .setDescription("Redis round trips per repository operation")
+            .ofLongs()
+            .build();
+
+    public static void increment() {
+        counter.get()[0]++;
+    }
+
+    /**
+     * Count round trips made on behalf of the current thread by another one.
+     */
+    public static void add(long roundTrips) {
+        counter.get()[0] += roundTrips;
+    }
+
+    public static long current() {
+        return counter.get()[0];
+    }
+
+    /**
+     * Record the round trips made since the snapshot was taken.
+     *
+     * @param operation The name of the operation.
+     * @param snapshot  The value of {@link #current()} when the operation started.
+     * @return the number of round trips made by the operation
+     */
+    public static long record(String operation, long snapshot) {
+        var roundTrips = current() - snapshot;
+        histogram.record(roundTrips, Attributes.of(ATTR_OPERATION, operation));
+        Span.current().setAttribute(ATTR_ROUND_TRIPS, roundTrips);
+        return roundTrips;
+    }
+
+    /**
+     * Start counting the round trips of a request.
+     * The request must be served by the calling thread, the returned resource
+     * records them under the given operation when it is closed on that thread.
+     *
+     * @param operation The name of the operation, such as the service used.
+     * @return the resource to close once the request ends
+     */
+    public static AutoCloseableFn request(String operation) {
+        var snapshot = current();
+        return new AutoCloseableFn(() -> record(operation, snapshot));
+    }
+}
@@ -0,0 +1,150 @@
+package scc.kube.utils;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+
+import io.opentelemetry.api.GlobalOpenTelemetry;
+import io.opentelemetry.api.common.AttributeKey;
+import io.opentelemetry.api.common.Attributes;
+import io.opentelemetry.api.metrics.LongCounter;
+
+/**
+ * Coalesces concurrent loads of the same key.
+ *
+ * The first caller to request a key runs the loader, callers that request the
+ * same key while the load is in flight wait for its result instead of loading
+ * it again. Failures are propagated to every waiting caller. Nothing is
+ * cached once the load completes.
+ *
+ * Loaders must not request keys from the same instance, a caller leading a
+ * load only waits on other flights after its own load completed.
+ */
+public class SingleFlight<K, V> {
+    private static final AttributeKey<String> ATTR_FLIGHT = AttributeKey.stringKey("flight");
+
+    private static final LongCounter coalescedCounter = GlobalOpenTelemetry.getMeter("scc.kube")
+            .counterBuilder("single_flight.coalesced")
+            .setDescription("Loads that waited on an in-flight load of the same key")
+            .build();
+
+    @FunctionalInterface
+    public interface Loader<V, E extends Exception> {
+        V load() throws E;
+    }
+
+    @FunctionalInterface
+    public interface BatchLoader<K, V, E extends Exception> {
+        /**
+         * @param keys The keys to load.
+         * @return the loaded values, keys without a value may be left out
+         */
+        Map<K, V> load(Set<K> keys) throws E;
+    }
+
+    private final ConcurrentHashMap<K, CompletableFuture<V>> flights = new ConcurrentHashMap<>();
+    private final Attributes attributes;
+
+    public SingleFlight(String name) {
+        this.attributes = Attributes.of(ATTR_FLIGHT, name);
+    }
+
+    /**
+     * Load a key, or wait for the load already in flight.
+     *
+     * @param key    The key to load.
+     * @param loader Loads the value if no load is in flight.
+     * @return the loaded value
+     */
+    public <E extends Exception> V run(K key, Loader<V, E> loader) throws E {
+        var flight = new CompletableFuture<V>();
+        var existing = this.flights.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalescedCounter.add(1, this.attributes);
+            return await(existing);
+        }
+
+        try {
+            var value = loader.load();
+            flight.complete(value);
+            return value;
+        } catch (Throwable t) {
+            flight.completeExceptionally(t);
+            throw t;
+        } finally {
+            this.flights.remove(key, flight);
+        }
+    }
+
+    /**
+     * Load many keys at once. Keys not in flight are loaded with a single call
+     * to the loader, the others are waited for.
+     *
+     * @param keys   The keys to load.
+     * @param loader Loads the keys that are not in flight.
+     * @return the loaded values, keys without a value are left out
+     */
+    public <E extends Exception> Map<K, V> runMany(Collection<K> keys, BatchLoader<K, V, E> loader) throws E {
+        var led = new HashMap<K, CompletableFuture<V>>();
+        var joined = new HashMap<K, CompletableFuture<V>>();
+        for (var key : keys) {
+            if (led.containsKey(key) || joined.containsKey(key))
+                continue;
+            var flight = new CompletableFuture<V>();
+            var existing = this.flights.putIfAbsent(key, flight);
+            if (existing == null)
+                led.put(key, flight);
+            else
+                joined.put(key, existing);
+        }
+        if (!joined.isEmpty())
+            coalescedCounter.add(joined.size(), this.attributes);
+
+        var values = new HashMap<K, V>();
+        if (!led.isEmpty()) {
+            try {
+                var loaded = loader.load(Collections.unmodifiableSet(led.keySet()));
+                for (var entry : led.entrySet()) {
+                    var value = loaded.get(entry.getKey());
+                    entry.getValue().complete(value);
+                    if (value != null)
+                        values.put(entry.getKey(), value);
+                }
+            } catch (Throwable t) {
+                for (var flight : led.values())
+                    flight.completeExceptionally(t);
+                throw t;
+            } finally {
+                for (var entry : led.entrySet())
+                    this.flights.remove(entry.getKey(), entry.getValue());
+            }
+        }
+
+        for (var entry : joined.entrySet()) {
+            V value = await(entry.getValue());
+            if (value != null)
+                values.put(entry.getKey(), value);
+        }
+        return values;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static <V, E extends Exception> V await(CompletableFuture<V> flight) throws E {
+        try {
+            return flight.join();
+        } catch (CompletionException e) {
+            var cause = e.getCause();
+            if (cause instanceof RuntimeException runtimeException)
+                throw runtimeException;
+            if (cause instanceof Error error)
+                throw error;
+            // The leader ran the same kind of loader, so it failed with E
+            throw (E) cause;
+        }
+    }
+}
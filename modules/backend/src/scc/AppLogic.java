@@ -48,6 +48,11 @@ public class AppLogic {
      */
     public static final int MAX_QUESTION_QUERY_RESULTS = 20;
 
+    /**
+     * The maximum number of items in a page of bids, questions or auctions.
+     */
+    public static final int MAX_PAGE_SIZE = 100;
+
     /**
      * The reserved user id and name for the deleted user.
      */
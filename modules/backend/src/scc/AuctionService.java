@@ -71,14 +71,13 @@ public interface AuctionService extends AutoCloseable {
         BidItem createBid(SessionToken token, CreateBidParams params) throws ServiceException;
 
         /**
-         * Lists all bids for the auction with the given id.
+         * Lists the bids for the auction with the given id, newest first.
          * 
          * @param auctionId the id of the auction to list bids for
-         * @param skip      the number of bids to skip
-         * @param limit     the maximum number of bids to return
+         * @param window    the page of bids to return
          * @return the bids for the auction with the given id
          */
-        List<BidItem> listAuctionBids(String auctionId, PagingWindow window) throws ServiceException;
+        Page<BidItem> listAuctionBids(String auctionId, PagingWindow window) throws ServiceException;
 
         record CreateQuestionParams(
                         String auctionId,
@@ -116,31 +115,36 @@ public interface AuctionService extends AutoCloseable {
         ReplyItem createReply(SessionToken token, CreateReplyParams params) throws ServiceException;
 
         /**
-         * Lists all questions for the auction with the given id.
+         * Lists the questions for the auction with the given id, newest first.
          * 
          * @param auctionId the id of the auction to list questions for
+         * @param window    the page of questions to return
          * @return the questions for the auction with the given id
          */
-        List<QuestionItem> listAuctionQuestions(String auctionId, PagingWindow window) throws ServiceException;
+        Page<QuestionItem> listAuctionQuestions(String auctionId, PagingWindow window) throws ServiceException;
 
         /**
-         * Lists all auctions created by the user with the given id.
+         * Lists the auctions created by the user with the given id, newest first.
          * 
          * @param username the id of the user to list auctions for
          * @param open     whether to list only open auctions
+         * @param window   the page of auctions to return
          * @return the auctions created by the user with the given id
          */
-        List<AuctionItem> listUserAuctions(String username, boolean open) throws ServiceException;
+        Page<AuctionItem> listUserAuctions(String username, boolean open, PagingWindow window)
+                        throws ServiceException;
 
         /**
-         * Lists all auctions that are currently open and the user with the given id has
-         * placed a bid on.
+         * Lists the auctions that the user with the given id has placed a bid on,
+         * most recently bid on first. Open and closed auctions are listed apart.
          * 
          * @param username the id of the user to list auctions for
-         * @return the auctions that are currently open and the user with the given id
-         *         has
+         * @param open     whether to list open or closed auctions
+         * @param window   the page of auctions to return
+         * @return the auctions that the user with the given id has bid on
          */
-        List<AuctionItem> listAuctionsFollowedByUser(String username) throws ServiceException;
+        Page<AuctionItem> listAuctionsFollowedByUser(String username, boolean open, PagingWindow window)
+                        throws ServiceException;
 
         /**
          * Lists a number of auctions that are close to ending.
@@ -0,0 +1,12 @@
+package scc;
+
+import java.util.List;
+
+/**
+ * A page of a listing.
+ *
+ * @param items The items of the page.
+ * @param next  The cursor of the next page, or null if this is the last one.
+ */
+public record Page<T>(List<T> items, String next) {
+}
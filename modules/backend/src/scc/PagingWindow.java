@@ -1,24 +1,28 @@
 package scc;
 
-// TODO: replace skip,limit in methods with this class
+/**
+ * A page of a listing: at most limit items following the cursor.
+ * The first page has no cursor, the cursor of the next page is returned with
+ * the previous one in {@link Page#next}. Cursors are opaque to callers.
+ */
 public class PagingWindow {
-    public final int skip;
+    public final String cursor;
     public final int limit;
 
-    public PagingWindow(int skip, int limit) {
-        this.skip = skip;
+    public PagingWindow(String cursor, int limit) {
+        this.cursor = cursor;
         this.limit = limit;
     }
 
-    public PagingWindow() {
-        this(0, Integer.MAX_VALUE);
+    public PagingWindow(int limit) {
+        this(null, limit);
     }
 
     @Override
     public int hashCode() {
         final int prime = 31;
         int result = 1;
-        result = prime * result + skip;
+        result = prime * result + ((cursor == null) ? 0 : cursor.hashCode());
         result = prime * result + limit;
         return result;
     }
@@ -32,7 +36,10 @@ public class PagingWindow {
         if (getClass() != obj.getClass())
             return false;
         PagingWindow other = (PagingWindow) obj;
-        if (skip != other.skip)
+        if (cursor == null) {
+            if (other.cursor != null)
+                return false;
+        } else if (!cursor.equals(other.cursor))
             return false;
         if (limit != other.limit)
             return false;
@@ -41,6 +48,6 @@ public class PagingWindow {
 
     @Override
     public String toString() {
-        return "PagingWindow [skip=" + skip + ", limit=" + limit + "]";
+        return "PagingWindow [cursor=" + cursor + ", limit=" + limit + "]";
     }
 }
@@ -3,6 +3,7 @@ package scc.utils;
 import java.util.List;
 
 import scc.AuctionService;
+import scc.Page;
 import scc.PagingWindow;
 import scc.SessionToken;
 import scc.UpdateAuctionOps;
@@ -49,7 +50,7 @@ public class AuctionServiceWithResources implements AuctionService {
     }
 
     @Override
-    public List<BidItem> listAuctionBids(String auctionId, PagingWindow window) throws ServiceException {
+    public Page<BidItem> listAuctionBids(String auctionId, PagingWindow window) throws ServiceException {
         return this.auctionService.listAuctionBids(auctionId, window);
     }
 
@@ -64,18 +65,20 @@ public class AuctionServiceWithResources implements AuctionService {
     }
 
     @Override
-    public List<QuestionItem> listAuctionQuestions(String auctionId, PagingWindow window) throws ServiceException {
+    public Page<QuestionItem> listAuctionQuestions(String auctionId, PagingWindow window) throws ServiceException {
         return this.auctionService.listAuctionQuestions(auctionId, window);
     }
 
     @Override
-    public List<AuctionItem> listUserAuctions(String username, boolean open) throws ServiceException {
-        return this.auctionService.listUserAuctions(username, open);
+    public Page<AuctionItem> listUserAuctions(String username, boolean open, PagingWindow window)
+            throws ServiceException {
+        return this.auctionService.listUserAuctions(username, open, window);
     }
 
     @Override
-    public List<AuctionItem> listAuctionsFollowedByUser(String username) throws ServiceException {
-        return this.auctionService.listAuctionsFollowedByUser(username);
+    public Page<AuctionItem> listAuctionsFollowedByUser(String username, boolean open, PagingWindow window)
+            throws ServiceException {
+        return this.auctionService.listAuctionsFollowedByUser(username, open, window);
     }
 
     @Override
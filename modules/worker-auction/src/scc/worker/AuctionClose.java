@@ -16,12 +16,16 @@ import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.DeliverCallback;
 import com.rabbitmq.client.Delivery;
 
+import scc.AppLogic;
 import scc.exception.AuctionNotFoundException;
-import scc.kube.Kube;
+import scc.kube.KubeCache;
+import scc.kube.KubeRedis;
 import scc.kube.KubeRepo;
 import scc.kube.KubeSerde;
+import scc.kube.KubeWarmup;
 import scc.kube.Mongo;
 import scc.kube.Rabbitmq;
+import scc.kube.Redis;
 import scc.kube.config.KubeEnv;
 
 public class AuctionClose {
@@ -50,11 +54,15 @@ public class AuctionClose {
         var redisConfig = KubeEnv.getRedisConfig();
         var connection = Rabbitmq.createConnectionFromConfig(rabbitConfig);
         var mongo = new Mongo(mongoConfig);
+        var kubeRedis = KubeRedis.create(redisConfig);
+
+        if (KubeEnv.getEnableWarmup())
+            KubeWarmup.run(kubeRedis, mongo);
 
         {
             logger.info("Spawning auction close worker");
             var rabbitmq = new Rabbitmq(connection);
-            new Thread(new CloseAuctionWorker(mongo, rabbitmq)).start();
+            new Thread(new CloseAuctionWorker(mongo, kubeRedis, rabbitmq)).start();
         }
 
         {
@@ -71,8 +79,9 @@ public class AuctionClose {
 
         {
             logger.info("Spawning auction close consumer");
-            var jedis = Kube.createJedis(redisConfig);
-            var repo = new KubeRepo(jedis, mongo);
+            var redis = kubeRedis.acquire();
+            var cache = KubeCache.broadcastOnly(connection);
+            var repo = new KubeRepo(redis, mongo, cache);
             var channel = connection.createChannel();
             var closeAuctionCallback = new CloseAuctionCallback(channel, repo);
             Rabbitmq.declareAuctionCloseQueue(channel);
@@ -118,10 +127,12 @@ class CloseAuctionWorker implements Runnable {
     private static final Logger logger = Logger.getLogger(CloseAuctionWorker.class.getName());
 
     private final Mongo mongo;
+    private final KubeRedis kubeRedis;
     private final Rabbitmq rabbitmq;
 
-    public CloseAuctionWorker(Mongo mongo, Rabbitmq rabbitmq) {
+    public CloseAuctionWorker(Mongo mongo, KubeRedis kubeRedis, Rabbitmq rabbitmq) {
         this.mongo = mongo;
+        this.kubeRedis = kubeRedis;
         this.rabbitmq = rabbitmq;
     }
 
@@ -147,6 +158,7 @@ class CloseAuctionWorker implements Runnable {
                     pending.put(auction.id, Instant.now().plus(ttc));
                     logger.info("Found auction " + auction.id + " closing in " + ttc);
                 }
+                this.updateSoonToCloseList();
                 nextLookup = Instant.now().plus(AuctionClose.LOOKUP_INTERVAL);
             }
 
@@ -161,6 +173,17 @@ class CloseAuctionWorker implements Runnable {
         }
     }
 
+    // Keep the listing that warm-up filled current
+    private void updateSoonToCloseList() {
+        try (var redis = this.kubeRedis.acquire()) {
+            var auctionIds = this.mongo.getAuctionsClosingFirst(AppLogic.MAX_ABOUT_TO_CLOSE_AUCTIONS)
+                    .stream().map(auction -> auction.id).toList();
+            Redis.setSoonToCloseAuctions(redis, auctionIds);
+        } catch (Exception e) {
+            logger.warning("Failed to update soon to close auctions: " + e);
+        }
+    }
+
     private static void sleep(Duration duration) {
         try {
             var millis = duration.toMillis();
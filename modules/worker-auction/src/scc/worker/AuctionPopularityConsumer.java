@@ -2,11 +2,11 @@ package scc.worker;
 
 import com.rabbitmq.client.DeliverCallback;
 import com.rabbitmq.client.Delivery;
-import redis.clients.jedis.Jedis;
-import scc.kube.Kube;
+import scc.kube.KubeRedis;
 import scc.kube.KubeSerde;
 import scc.kube.Rabbitmq;
 import scc.kube.Redis;
+import scc.kube.RedisNodes;
 import scc.kube.config.KubeEnv;
 
 import java.io.IOException;
@@ -18,13 +18,13 @@ public class AuctionPopularityConsumer {
     public static void main(String[] args) throws IOException, TimeoutException {
         var config = KubeEnv.getKubeConfig();
 
-        var jedis = Kube.createJedis(config.getRedisConfig());
+        var redis = KubeRedis.create(config.getRedisConfig()).acquire();
         var connection = Rabbitmq.createConnectionFromConfig(config.getRabbitmqConfig());
         var channel = connection.createChannel();
         Rabbitmq.declareBroadcastBidsExchange(channel);
         var queue = channel.queueDeclare("", false, true, true, null).getQueue();
         channel.queueBind(queue, Rabbitmq.EXCHANGE_BROADCAST_BIDS, "");
-        channel.basicConsume(queue, true, new BidCallback(jedis), consumerTag -> {
+        channel.basicConsume(queue, true, new BidCallback(redis), consumerTag -> {
         });
     }
 
@@ -32,17 +32,17 @@ public class AuctionPopularityConsumer {
     static class BidCallback implements DeliverCallback {
         private static final Logger logger = Logger.getLogger(BidCallback.class.getName());
 
-        private final Jedis jedis;
+        private final RedisNodes redis;
 
-        public BidCallback(Jedis jedis) {
-            this.jedis = jedis;
+        public BidCallback(RedisNodes redis) {
+            this.redis = redis;
         }
 
         @Override
         public void handle(String consumerTag, Delivery message) throws IOException {
             try {
                 var createdBid = KubeSerde.fromJson(message.getBody(), Rabbitmq.CreatedBid.class);
-                Redis.incrementPopularAuction(this.jedis, createdBid.auctionId());
+                Redis.incrementPopularAuction(this.redis, createdBid.auctionId());
 
             } catch (Exception e) {
                 e.printStackTrace();
@@ -1,6 +1,6 @@
 package scc.worker;
 
-import scc.kube.Kube;
+import scc.kube.KubeRedis;
 import scc.kube.Redis;
 import scc.kube.config.KubeEnv;
 
@@ -8,7 +8,9 @@ public class AuctionPopularityUpdater {
     public static void main(String[] args) {
         var config = KubeEnv.getKubeConfig();
 
-        var jedis = Kube.createJedis(config.getRedisConfig());
-        Redis.updatePopularAuctions(jedis);
+        try (var kubeRedis = KubeRedis.create(config.getRedisConfig());
+                var redis = kubeRedis.acquire()) {
+            Redis.updatePopularAuctions(redis);
+        }
     }
 }
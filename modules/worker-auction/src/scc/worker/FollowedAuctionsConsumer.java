@@ -0,0 +1,118 @@
+package scc.worker;
+
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.TimeoutException;
+import java.util.logging.Logger;
+
+import com.rabbitmq.client.Channel;
+import com.rabbitmq.client.DeliverCallback;
+import com.rabbitmq.client.Delivery;
+
+import scc.exception.BidNotFoundException;
+import scc.kube.KubeRedis;
+import scc.kube.KubeRepo;
+import scc.kube.KubeSerde;
+import scc.kube.Mongo;
+import scc.kube.Rabbitmq;
+import scc.kube.config.KubeEnv;
+
+public class FollowedAuctionsConsumer {
+
+    public static void main(String[] args) throws IOException, TimeoutException {
+        var config = KubeEnv.getKubeConfig();
+
+        var mongo = new Mongo(config.getMongoConfig());
+        var redis = KubeRedis.create(config.getRedisConfig()).acquire();
+        var connection = Rabbitmq.createConnectionFromConfig(config.getRabbitmqConfig());
+        var repo = new KubeRepo(redis, mongo);
+        var channel = connection.createChannel();
+        Rabbitmq.declareFollowedAuctionsQueue(channel);
+        channel.basicQos(16);
+        channel.basicConsume(Rabbitmq.QUEUE_FOLLOWED_AUCTIONS, false, new BidCallback(channel, mongo, repo),
+                consumerTag -> {
+                });
+    }
+
+    // Record every bid as a follow of its auction by the bidder
+    static class BidCallback implements DeliverCallback {
+        private static final Logger logger = Logger.getLogger(BidCallback.class.getName());
+
+        // Attempts to record a bid before it is dropped
+        private static final int MAX_ATTEMPTS = 10;
+
+        private final Channel channel;
+        private final Mongo mongo;
+        private final KubeRepo repo;
+
+        public BidCallback(Channel channel, Mongo mongo, KubeRepo repo) {
+            this.channel = channel;
+            this.mongo = mongo;
+            this.repo = repo;
+        }
+
+        @Override
+        public void handle(String consumerTag, Delivery message) throws IOException {
+            var deliveryTag = message.getEnvelope().getDeliveryTag();
+            Rabbitmq.CreatedBid createdBid;
+            try {
+                createdBid = KubeSerde.fromJson(message.getBody(), Rabbitmq.CreatedBid.class);
+            } catch (RuntimeException e) {
+                // It will not decode later either
+                logger.severe("Dropping bid that cannot be decoded: " + e.getMessage());
+                this.channel.basicNack(deliveryTag, false, false);
+                return;
+            }
+
+            try {
+                var userId = createdBid.userId();
+                var createTime = createdBid.createTime();
+                // Bids broadcast before the bidder was part of the message
+                if (userId == null || createTime == null) {
+                    var bidDao = this.mongo.getBidMany(List.of(createdBid.bidId())).get(createdBid.bidId());
+                    userId = bidDao.userId;
+                    createTime = bidDao.createTime != null ? bidDao.createTime
+                            : LocalDateTime.ofInstant(createdBid.bidId().getDate().toInstant(), ZoneOffset.UTC);
+                }
+                this.repo.recordFollow(userId, createdBid.auctionId(), createTime);
+                this.channel.basicAck(deliveryTag, false);
+            } catch (BidNotFoundException e) {
+                logger.severe("Dropping bid " + createdBid.bidId() + " that no longer exists");
+                this.channel.basicNack(deliveryTag, false, false);
+            } catch (Exception e) {
+                var attempts = attempts(message) + 1;
+                if (attempts >= MAX_ATTEMPTS) {
+                    logger.severe("Dropping bid " + createdBid.bidId() + " after " + attempts + " attempts: "
+                            + e.getMessage());
+                    this.channel.basicNack(deliveryTag, false, false);
+                    return;
+                }
+                // Mongo or Redis may be briefly unavailable, the follow is
+                // retried after a delay. Recording a follow twice is harmless
+                // if the ack below is lost.
+                logger.warning("Failed to record followed auction, retrying: " + e.getMessage());
+                this.retry(message, attempts);
+                this.channel.basicAck(deliveryTag, false);
+            }
+        }
+
+        private void retry(Delivery message, int attempts) throws IOException {
+            var properties = message.getProperties();
+            var headers = properties.getHeaders() != null ? new HashMap<>(properties.getHeaders())
+                    : new HashMap<String, Object>();
+            headers.put(Rabbitmq.HEADER_ATTEMPTS, attempts);
+            this.channel.basicPublish("", Rabbitmq.QUEUE_FOLLOWED_AUCTIONS_RETRY,
+                    properties.builder().headers(headers).build(), message.getBody());
+        }
+
+        private static int attempts(Delivery message) {
+            var headers = message.getProperties().getHeaders();
+            if (headers == null || !(headers.get(Rabbitmq.HEADER_ATTEMPTS) instanceof Number attempts))
+                return 0;
+            return attempts.intValue();
+        }
+    }
+}
@@ -7,10 +7,10 @@ import com.rabbitmq.client.Channel;
 import com.rabbitmq.client.DeliverCallback;
 import com.rabbitmq.client.Delivery;
 
-import redis.clients.jedis.Jedis;
-import scc.kube.Kube;
+import scc.kube.KubeRedis;
 import scc.kube.Mongo;
 import scc.kube.Rabbitmq;
+import scc.kube.RedisNodes;
 import scc.kube.config.KubeEnv;
 
 /**
@@ -27,11 +27,11 @@ public class UserScrub {
         var connection = Rabbitmq.createConnectionFromConfig(rabbitConfig);
         var channel = connection.createChannel();
         var mongo = new Mongo(mongoConfig);
-        var jedis = Kube.createJedis(redisConfig);
+        var redis = KubeRedis.create(redisConfig).acquire();
 
         channel.basicQos(1);
 
-        var deleteUserCallback = new DeleteUserCallback(channel, mongo, jedis);
+        var deleteUserCallback = new DeleteUserCallback(channel, mongo, redis);
         Rabbitmq.declareUserDeleteQueue(channel);
         channel.basicConsume(Rabbitmq.ROUTING_KEY_USER_DELETE, false, deleteUserCallback, consumerTag -> {
         });
@@ -41,12 +41,12 @@ public class UserScrub {
 class DeleteUserCallback implements DeliverCallback {
     private final Channel channel;
     private final Mongo mongo;
-    private final Jedis jedis;
+    private final RedisNodes redis;
 
-    public DeleteUserCallback(Channel channel, Mongo mongo, Jedis jedis) {
+    public DeleteUserCallback(Channel channel, Mongo mongo, RedisNodes redis) {
         this.channel = channel;
         this.mongo = mongo;
-        this.jedis = jedis;
+        this.redis = redis;
     }
 
     @Override
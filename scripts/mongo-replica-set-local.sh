@@ -0,0 +1,30 @@
+#!/bin/sh
+# Starts a local MongoDB replica set with 3 members on ports 27101-27103.
+# Run the backend against it with:
+#   KUBE_MONGO_CONNECTION_URI=mongodb://localhost:27101,localhost:27102,localhost:27103/?replicaSet=scc-rs
+#   KUBE_MONGO_LISTING_READ_PREFERENCE=secondaryPreferred
+# Stop it with: scripts/mongo-replica-set-local.sh stop
+
+RUNTIME=${RUNTIME:-docker}
+IMAGE=docker.io/mongo:5.0.14
+PORTS="27101 27102 27103"
+
+if [ "$1" = "stop" ]; then
+    for port in $PORTS; do
+        $RUNTIME rm -f scc-mongo-$port
+    done
+    exit 0
+fi
+
+members=""
+id=0
+for port in $PORTS; do
+    $RUNTIME run -d --rm --network host --name scc-mongo-$port $IMAGE \
+        mongod --port $port --replSet scc-rs --bind_ip localhost || exit 1
+    members="$members{_id: $id, host: 'localhost:$port'},"
+    id=$((id + 1))
+done
+
+sleep 2
+$RUNTIME exec scc-mongo-27101 mongo --port 27101 --quiet \
+    --eval "rs.initiate({_id: 'scc-rs', members: [$members]})" || exit 1
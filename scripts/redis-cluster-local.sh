@@ -0,0 +1,27 @@
+#!/bin/sh
+# Starts a local Redis Cluster with 3 masters and 3 replicas on ports 7000-7005.
+# Run the backend against it with:
+#   KUBE_REDIS_URL=localhost KUBE_REDIS_PORT=7000 KUBE_REDIS_CLUSTER=true
+# Stop it with: scripts/redis-cluster-local.sh stop
+
+RUNTIME=${RUNTIME:-docker}
+IMAGE=docker.io/redis:7.0.5
+PORTS="7000 7001 7002 7003 7004 7005"
+
+if [ "$1" = "stop" ]; then
+    for port in $PORTS; do
+        $RUNTIME rm -f scc-redis-$port
+    done
+    exit 0
+fi
+
+nodes=""
+for port in $PORTS; do
+    $RUNTIME run -d --rm --network host --name scc-redis-$port $IMAGE \
+        redis-server --port $port --cluster-enabled yes --cluster-config-file nodes-$port.conf \
+        --appendonly no || exit 1
+    nodes="$nodes 127.0.0.1:$port"
+done
+
+sleep 1
+$RUNTIME exec scc-redis-7000 redis-cli --cluster create $nodes --cluster-replicas 1 --cluster-yes || exit 1